@@ -0,0 +1,308 @@
+package no.ion.modulec.bench;
+
+import no.ion.modulec.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.TemporaryDirectory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
+import static no.ion.modulec.util.Exceptions.uncheckInterrupted;
+
+/**
+ * Measures the latency of building a generated module with the launch mechanisms compared in README.md:  The shell
+ * script, the wrapper script, the raw java command, the shebang program, a Java loop over
+ * {@link ModuleCompiler#mainApi(String...)} in one JVM, and modco.
+ *
+ * <p>Each variant is run in a clean mode, where the output directory is removed before each build, and in a no-op
+ * mode, where the module has already been built.  The removal is not part of the measured latency.  The in-JVM loop
+ * is run in a fresh JVM for each iteration count, so its latency of iteration i shows the JIT warmup curve.</p>
+ *
+ * <p>The results are written to OUTPUT/samples.csv (the latency of each iteration), OUTPUT/summary.csv, and
+ * OUTPUT/summary.json (mean, p50, p99, and the mean latency of iterations 1, 2-10, 11-100, etc.).  No network
+ * access is needed.</p>
+ */
+public class LauncherBenchmark {
+    private static final String USAGE = """
+            Usage: LauncherBenchmark [OPTION...]
+            Benchmark the launch mechanisms of modulec.
+
+            Options:
+              --iterations N,...   The number of back-to-back builds [10,100].
+              --modes M,...        clean and/or noop [clean,noop].
+              --modulec DIR        The no.ion.modulec directory, with target/classes and
+                                   target/modco built [../no.ion.modulec].
+              --output DIR         The directory to write results to [target/launcher].
+              --source-files N     The number of source files of the module [10].
+              --variants V,...     Any of script, wrapper, java, shebang, in-jvm, and
+                                   modco [all].
+            """;
+
+    public enum Mode { CLEAN, NOOP }
+
+    public enum Variant {
+        /** bin/modulec.sh, which invokes javac and jar. */
+        SCRIPT("script"),
+        /** bin/modulec-wrapper.sh, which is what ~/bin/modulec is a symlink to. */
+        WRAPPER("wrapper"),
+        /** The java command of bin/modulec-wrapper.sh, to measure the overhead of bash. */
+        JAVA("java"),
+        /** A single-file source-code program like bin/modulec-shebang, written from the current sources. */
+        SHEBANG("shebang"),
+        /** A Java loop over ModuleCompiler.mainApi() in one JVM. */
+        IN_JVM("in-jvm"),
+        /** target/modco */
+        MODCO("modco");
+
+        private final String id;
+
+        Variant(String id) { this.id = id; }
+
+        public String id() { return id; }
+
+        public static Variant fromId(String id) {
+            return Stream.of(values())
+                         .filter(variant -> variant.id.equals(id))
+                         .findFirst()
+                         .orElseThrow(() -> new IllegalArgumentException("Unknown variant: " + id));
+        }
+    }
+
+    public record Result(Variant variant, Mode mode, int iterations, long[] nanos) {
+        public double meanMillis() { return Arrays.stream(nanos).average().orElse(0) / 1_000_000d; }
+        public double p50Millis() { return percentileMillis(50); }
+        public double p99Millis() { return percentileMillis(99); }
+
+        /** The nearest-rank percentile. */
+        public double percentileMillis(int percentile) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100d * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1_000_000d;
+        }
+
+        /** The mean latency of iterations 1, 2-10, 11-100, 101-1000, etc. */
+        public List<Bucket> warmup() {
+            List<Bucket> buckets = new ArrayList<>();
+            for (int from = 1, to = 1; from <= nanos.length; from = to + 1, to = Math.min(nanos.length, to * 10)) {
+                double mean = Arrays.stream(nanos, from - 1, to).average().orElse(0) / 1_000_000d;
+                buckets.add(new Bucket(from, to, mean));
+            }
+            return buckets;
+        }
+    }
+
+    public record Bucket(int fromIteration, int toIteration, double meanMillis) {}
+
+    private final Pathname modulec;
+    private final Pathname javaHome = Pathname.of(Path.of(System.getProperty("java.home")));
+    private Pathname src;
+    private Pathname out;
+    private Pathname shebangProgram;
+
+    public static void main(String... args) {
+        if (args.length >= 1 && args[0].equals("--in-jvm-loop")) {
+            inJvmLoop(Mode.valueOf(args[1]), Integer.parseInt(args[2]), Arrays.copyOfRange(args, 3, args.length));
+            return;
+        }
+
+        List<Integer> iterations = List.of(10, 100);
+        List<Mode> modes = List.of(Mode.values());
+        Pathname modulec = Pathname.of(Path.of("../no.ion.modulec"));
+        Pathname output = Pathname.of(Path.of("target/launcher"));
+        int sourceFiles = 10;
+        List<Variant> variants = List.of(Variant.values());
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--iterations" -> iterations = Stream.of(args[++i].split(",")).map(Integer::parseInt).toList();
+                case "--modes" -> modes = Stream.of(args[++i].split(",")).map(mode -> Mode.valueOf(mode.toUpperCase(Locale.ROOT))).toList();
+                case "--modulec" -> modulec = Pathname.of(Path.of(args[++i]));
+                case "--output" -> output = Pathname.of(Path.of(args[++i]));
+                case "--source-files" -> sourceFiles = Integer.parseInt(args[++i]);
+                case "--variants" -> variants = Stream.of(args[++i].split(",")).map(Variant::fromId).toList();
+                case "-h", "--help" -> {
+                    System.out.print(USAGE);
+                    return;
+                }
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        List<Result> results = new LauncherBenchmark(modulec).run(variants, modes, iterations, sourceFiles);
+        write(output.makeDirectories(), results);
+        System.out.print(summaryCsv(results));
+    }
+
+    public LauncherBenchmark(Pathname modulec) {
+        this.modulec = Pathname.of(modulec.path().toAbsolutePath().normalize());
+        if (!this.modulec.resolve("target/classes/no/ion/modulec/ModuleCompiler.class").isFile())
+            throw new IllegalArgumentException("Missing " + this.modulec + "/target/classes: Build no.ion.modulec first");
+    }
+
+    public List<Result> run(List<Variant> variants, List<Mode> modes, List<Integer> iterationCounts, int sourceFiles) {
+        List<Result> results = new ArrayList<>();
+        try (TemporaryDirectory temporaryDirectory = Pathname.makeTmpdir("bench.", "", null)) {
+            src = ProjectGenerator.ofSourceFiles(sourceFiles, 1).generate(temporaryDirectory.directory()).module(0).src();
+            out = temporaryDirectory.directory().resolve("out");
+            shebangProgram = writeShebangProgram(temporaryDirectory.directory().resolve("modulec-shebang"));
+
+            for (Variant variant : variants) {
+                for (Mode mode : modes) {
+                    for (int iterations : iterationCounts) {
+                        System.err.printf("%s %s %d%n", variant.id(), mode.name().toLowerCase(Locale.ROOT), iterations);
+                        results.add(new Result(variant, mode, iterations, measure(variant, mode, iterations)));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private long[] measure(Variant variant, Mode mode, int iterations) {
+        out.deleteRecursively();
+
+        if (variant == Variant.IN_JVM) {
+            // A fresh JVM, so that earlier measurements do not warm up this one.
+            List<String> command = new ArrayList<>(List.of(javaHome.resolve("bin/java").toString(),
+                                                           "-cp", System.getProperty("java.class.path"),
+                                                           LauncherBenchmark.class.getName(),
+                                                           "--in-jvm-loop", mode.name(), Integer.toString(iterations)));
+            command.addAll(modulecArguments());
+            String output = execute(command);
+            long[] nanos = output.lines().filter(line -> line.startsWith("nanos ")).mapToLong(line -> Long.parseLong(line.substring(6))).toArray();
+            if (nanos.length != iterations)
+                throw new IllegalStateException("Expected " + iterations + " samples from the in-JVM loop: " + output);
+            return nanos;
+        }
+
+        List<String> command = command(variant);
+        if (mode == Mode.NOOP)
+            execute(command);
+
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; ++i) {
+            if (mode == Mode.CLEAN)
+                out.deleteRecursively();
+            long start = System.nanoTime();
+            execute(command);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static void inJvmLoop(Mode mode, int iterations, String... arguments) {
+        Pathname out = Pathname.of(Path.of(arguments[Arrays.asList(arguments).indexOf("-o") + 1]));
+        if (mode == Mode.NOOP)
+            ModuleCompiler.mainApi(arguments);
+
+        for (int i = 0; i < iterations; ++i) {
+            if (mode == Mode.CLEAN)
+                out.deleteRecursively();
+            long start = System.nanoTime();
+            ModuleCompiler.mainApi(arguments);
+            System.out.println("nanos " + (System.nanoTime() - start));
+        }
+    }
+
+    private List<String> modulecArguments() { return List.of("-v", "1.0.0", "-o", out.toString(), src.toString()); }
+
+    private List<String> command(Variant variant) {
+        List<String> command = new ArrayList<>(switch (variant) {
+            case SCRIPT -> List.of(modulec.resolve("bin/modulec.sh").toString());
+            case WRAPPER -> List.of(modulec.resolve("bin/modulec-wrapper.sh").toString());
+            case JAVA -> List.of(javaHome.resolve("bin/java").toString(), "-cp", modulec.resolve("target/classes").toString(),
+                                 ModuleCompiler.class.getName());
+            case SHEBANG -> List.of(shebangProgram.toString());
+            case MODCO -> List.of(modulec.resolve("target/modco").toString(), "-N", "-s", src.toString(),
+                                  "-v", "1.0.0", "-o", out.toString());
+            case IN_JVM -> throw new IllegalArgumentException("The in-JVM variant has no command");
+        });
+        if (variant != Variant.MODCO)
+            command.addAll(modulecArguments());
+        return command;
+    }
+
+    /**
+     * bin/modulec-shebang has the interpreter of the author's machine, and predates ModuleCompilerException being
+     * a separate class.  A single source file may declare several top-level classes, so both are included.
+     */
+    private Pathname writeShebangProgram(Pathname program) {
+        Pathname sourceDirectory = modulec.resolve("src/main/java/no/ion/modulec");
+        String exception = sourceDirectory.resolve("ModuleCompilerException.java")
+                                          .readUtf8()
+                                          .replaceFirst("package [a-z.]+;", "")
+                                          .replaceFirst("public class", "class");
+        program.writeUtf8("#!" + javaHome.resolve("bin/java") + " --source " + Runtime.version().feature() + "\n\n" +
+                          sourceDirectory.resolve("ModuleCompiler.java").readUtf8() + exception);
+        program.chmod(0755);
+        return program;
+    }
+
+    private String execute(List<String> command) {
+        var processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        // The scripts invoke java, javac, and jar from PATH.
+        processBuilder.environment().merge("PATH", javaHome.resolve("bin").toString(), (path, bin) -> bin + ":" + path);
+        Process process = uncheckIO(processBuilder::start);
+        String output = new String(uncheckIO(() -> process.getInputStream().readAllBytes()), StandardCharsets.UTF_8);
+        int exitCode = uncheckInterrupted(() -> process.waitFor());
+        if (exitCode != 0)
+            throw new IllegalStateException("Command failed with exit code " + exitCode + ": " + String.join(" ", command) +
+                                            "\n" + output);
+        return output;
+    }
+
+    private static void write(Pathname output, List<Result> results) {
+        var samples = new StringBuilder("variant,mode,iterations,iteration,nanos\n");
+        for (Result result : results)
+            for (int i = 0; i < result.nanos().length; ++i)
+                samples.append(prefix(result)).append(',').append(i + 1).append(',').append(result.nanos()[i]).append('\n');
+
+        output.resolve("samples.csv").writeUtf8(samples.toString());
+        output.resolve("summary.csv").writeUtf8(summaryCsv(results));
+        output.resolve("summary.json").writeUtf8(summaryJson(results));
+    }
+
+    private static String prefix(Result result) {
+        return result.variant().id() + ',' + result.mode().name().toLowerCase(Locale.ROOT) + ',' + result.iterations();
+    }
+
+    private static String summaryCsv(List<Result> results) {
+        return results.stream()
+                      .map(result -> String.join(",", prefix(result), millis(result.meanMillis()),
+                                                 millis(result.p50Millis()), millis(result.p99Millis())))
+                      .collect(Collectors.joining("\n", "variant,mode,iterations,meanMillis,p50Millis,p99Millis\n", "\n"));
+    }
+
+    private static String summaryJson(List<Result> results) {
+        var json = new StringBuilder("[");
+        for (int i = 0; i < results.size(); ++i) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                .append("  {\"variant\": \"").append(result.variant().id())
+                .append("\", \"mode\": \"").append(result.mode().name().toLowerCase(Locale.ROOT))
+                .append("\", \"iterations\": ").append(result.iterations())
+                .append(", \"meanMillis\": ").append(millis(result.meanMillis()))
+                .append(", \"p50Millis\": ").append(millis(result.p50Millis()))
+                .append(", \"p99Millis\": ").append(millis(result.p99Millis()))
+                .append(", \"warmup\": [")
+                .append(result.warmup()
+                              .stream()
+                              .map(bucket -> "{\"fromIteration\": " + bucket.fromIteration() +
+                                             ", \"toIteration\": " + bucket.toIteration() +
+                                             ", \"meanMillis\": " + millis(bucket.meanMillis()) + "}")
+                              .collect(Collectors.joining(", ")))
+                .append("]}");
+        }
+        return json.append(results.isEmpty() ? "]\n" : "\n]\n").toString();
+    }
+
+    private static String millis(double millis) { return String.format(Locale.ROOT, "%.3f", millis); }
+}
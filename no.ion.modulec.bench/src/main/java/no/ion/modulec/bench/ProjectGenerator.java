@@ -0,0 +1,259 @@
+package no.ion.modulec.bench;
+
+import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.file.Pathname;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Generates synthetic modules, or a workspace of modules, for benchmarking and scale testing.
+ *
+ * <p>Module {@code i} of a workspace is named {@code PREFIX.mI} with I in base 26 (a-z), and requires the (up to)
+ * {@code fanOut} modules preceding it, so the modules are in topological order.  Each module has {@code packages} packages
+ * {@code PREFIX.mI.pJ}, each with {@code classes} public classes {@code CK}.  A class refers to the previous class of
+ * its package, to the first class of the previous package, and to the first class of each required module, so
+ * javac has to resolve references within the package, the module, and across modules.  Each class declares
+ * {@code nestedClasses} static nested classes, which compile to separate class files.</p>
+ *
+ * <p>A module is written to {@code DIRECTORY/MODULE/src}, with {@code resources} files per package in
+ * {@code DIRECTORY/MODULE/rsrc}, and {@code tests} JUnit 5 test classes per package in {@code DIRECTORY/MODULE/test}.
+ * The tests are compiled by patching the module, and require org.junit.jupiter.api on the module path.</p>
+ */
+public class ProjectGenerator {
+    private String prefix = "bench";
+    private int modules = 1;
+    private int packages = 1;
+    private int classes = 10;
+    private int fanOut = 1;
+    private int nestedClasses = 0;
+    private int resources = 0;
+    private int tests = 0;
+
+    public record Module(String name, Pathname src, Optional<Pathname> resources, Optional<Pathname> test,
+                         List<String> requires, int sourceFiles) {
+        /** Compile the module to the class directory with javac, bypassing modulec.  Requires no other modules. */
+        public Pathname compileTo(Pathname classDirectory) {
+            if (!requires.isEmpty())
+                throw new IllegalStateException("Module " + name + " requires other modules: " + requires);
+
+            List<String> arguments = new ArrayList<>(List.of("-d", classDirectory.toString()));
+            src.find(true, (pathname, attributes) -> attributes.isFile() && pathname.filename().endsWith(".java") ?
+                                                     Optional.of(pathname.toString()) :
+                                                     Optional.<String>empty())
+               .forEach(arguments::add);
+
+            var output = new ByteArrayOutputStream();
+            int exitCode = ToolProvider.getSystemJavaCompiler().run(null, output, output, arguments.toArray(String[]::new));
+            if (exitCode != 0)
+                throw new ModuleCompilerException("javac failed: " + output);
+            return classDirectory;
+        }
+    }
+
+    public record Workspace(Pathname directory, List<Module> modules) {
+        /** The total number of source files, excluding tests. */
+        public int sourceFiles() { return modules.stream().mapToInt(Module::sourceFiles).sum(); }
+        public Module module(int index) { return modules.get(index); }
+    }
+
+    /**
+     * Returns a generator of {@code modules} modules with a total of about {@code sourceFiles} source files
+     * (including module-info.java), with at most 100 classes per package.
+     */
+    public static ProjectGenerator ofSourceFiles(int sourceFiles, int modules) {
+        if (modules < 1 || sourceFiles < 2 * modules)
+            throw new IllegalArgumentException("Need at least 2 source files per module: " + sourceFiles + " source files, " +
+                                               modules + " modules");
+
+        // The number of classes per module, rounded up
+        int classesPerModule = (sourceFiles - 1) / modules;
+        int packages = (classesPerModule + 99) / 100;
+        int classes = (classesPerModule + packages - 1) / packages;
+        return new ProjectGenerator().setModules(modules).setPackages(packages).setClasses(classes);
+    }
+
+    public ProjectGenerator() {}
+
+    /** The prefix of the module names, defaults to "bench". */
+    public ProjectGenerator setPrefix(String prefix) {
+        this.prefix = Objects.requireNonNull(prefix, "prefix cannot be null");
+        return this;
+    }
+
+    public ProjectGenerator setModules(int modules) {
+        this.modules = requireAtLeast(1, modules, "modules");
+        return this;
+    }
+
+    /** The number of packages per module. */
+    public ProjectGenerator setPackages(int packages) {
+        this.packages = requireAtLeast(1, packages, "packages");
+        return this;
+    }
+
+    /** The number of top-level classes per package. */
+    public ProjectGenerator setClasses(int classes) {
+        this.classes = requireAtLeast(1, classes, "classes");
+        return this;
+    }
+
+    /** The maximum number of modules required by a module, defaults to 1. */
+    public ProjectGenerator setFanOut(int fanOut) {
+        this.fanOut = requireAtLeast(0, fanOut, "fanOut");
+        return this;
+    }
+
+    /** The number of static nested classes per class. */
+    public ProjectGenerator setNestedClasses(int nestedClasses) {
+        this.nestedClasses = requireAtLeast(0, nestedClasses, "nestedClasses");
+        return this;
+    }
+
+    /** The number of resource files per package. */
+    public ProjectGenerator setResources(int resources) {
+        this.resources = requireAtLeast(0, resources, "resources");
+        return this;
+    }
+
+    /** The number of test classes per package, at most the number of classes per package. */
+    public ProjectGenerator setTests(int tests) {
+        this.tests = requireAtLeast(0, tests, "tests");
+        return this;
+    }
+
+    /** Write the modules to the directory. */
+    public Workspace generate(Pathname directory) {
+        if (tests > classes)
+            throw new IllegalArgumentException("There cannot be more tests (" + tests + ") than classes (" + classes + ")");
+
+        List<Module> generated = new ArrayList<>();
+        for (int index = 0; index < modules; ++index)
+            generated.add(generateModule(directory, index));
+        return new Workspace(directory, List.copyOf(generated));
+    }
+
+    private Module generateModule(Pathname directory, int index) {
+        String name = moduleName(index);
+        List<String> requires = new ArrayList<>();
+        for (int required = Math.max(0, index - fanOut); required < index; ++required)
+            requires.add(moduleName(required));
+
+        Pathname moduleDirectory = directory.resolve(name);
+        Pathname src = moduleDirectory.resolve("src");
+        List<String> packageNames = new ArrayList<>();
+        for (int p = 0; p < packages; ++p) {
+            String packageName = name + ".p" + p;
+            packageNames.add(packageName);
+            for (int c = 0; c < classes; ++c)
+                writeClass(src, packageName, c, p == 0 ? null : name + ".p" + (p - 1), requires);
+        }
+        src.resolve("module-info.java").writeUtf8(moduleInfo("module " + name, requires, packageNames));
+
+        Optional<Pathname> rsrc = Optional.empty();
+        if (resources > 0) {
+            rsrc = Optional.of(moduleDirectory.resolve("rsrc"));
+            for (String packageName : packageNames) {
+                for (int r = 0; r < resources; ++r) {
+                    rsrc.get().resolve(packageName.replace('.', '/') + "/resource" + r + ".properties")
+                        .makeParentDirectories()
+                        .writeUtf8("package=" + packageName + "\nindex=" + r + "\n");
+                }
+            }
+        }
+
+        Optional<Pathname> test = Optional.empty();
+        if (tests > 0) {
+            test = Optional.of(moduleDirectory.resolve("test"));
+            for (String packageName : packageNames)
+                for (int c = 0; c < tests; ++c)
+                    writeTest(test.get(), packageName, c);
+            List<String> testRequires = new ArrayList<>(requires);
+            testRequires.add("org.junit.jupiter.api");
+            test.get().resolve("module-info.java").writeUtf8(moduleInfo("open module " + name, testRequires, packageNames));
+        }
+
+        return new Module(name, src, rsrc, test, List.copyOf(requires), 1 + packages * classes);
+    }
+
+    /** Module names should not end in digits (javac -Xlint:module), so the index is written with the letters a-z. */
+    private String moduleName(int index) {
+        var name = new StringBuilder();
+        do {
+            name.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return prefix + ".m" + name.reverse();
+    }
+
+    private static String moduleInfo(String declaration, List<String> requires, List<String> packageNames) {
+        var moduleInfo = new StringBuilder(declaration).append(" {\n");
+        requires.forEach(required -> moduleInfo.append("    requires ").append(required).append(";\n"));
+        packageNames.forEach(packageName -> moduleInfo.append("    exports ").append(packageName).append(";\n"));
+        return moduleInfo.append("}\n").toString();
+    }
+
+    private void writeClass(Pathname src, String packageName, int index, String previousPackage, List<String> requires) {
+        var fields = new StringBuilder();
+        if (index > 0)
+            fields.append("    private C").append(index - 1).append(" previous;\n");
+        if (previousPackage != null)
+            fields.append("    private ").append(previousPackage).append(".C0 previousPackage;\n");
+        for (int i = 0; i < requires.size(); ++i)
+            fields.append("    private ").append(requires.get(i)).append(".p0.C0 required").append(i).append(";\n");
+
+        var nested = new StringBuilder();
+        for (int n = 0; n < nestedClasses; ++n) {
+            nested.append("""
+
+                              public static class Nested%d {
+                                  public Nested%d() {}
+
+                                  public int value() { return %d; }
+                              }
+                          """.formatted(n, n, n));
+        }
+
+        src.resolve(packageName.replace('.', '/') + "/C" + index + ".java")
+           .makeParentDirectories()
+           .writeUtf8("""
+                      package %s;
+
+                      public class C%d {
+                      %s
+                          public C%d() {}
+
+                          public int value() { return %d; }
+                      %s}
+                      """.formatted(packageName, index, fields, index, index, nested));
+    }
+
+    private static void writeTest(Pathname test, String packageName, int index) {
+        test.resolve(packageName.replace('.', '/') + "/C" + index + "Test.java")
+            .makeParentDirectories()
+            .writeUtf8("""
+                       package %s;
+
+                       import org.junit.jupiter.api.Test;
+
+                       import static org.junit.jupiter.api.Assertions.assertEquals;
+
+                       class C%dTest {
+                           @Test
+                           void value() {
+                               assertEquals(%d, new C%d().value());
+                           }
+                       }
+                       """.formatted(packageName, index, index, index));
+    }
+
+    private static int requireAtLeast(int minimum, int value, String name) {
+        if (value < minimum)
+            throw new IllegalArgumentException(name + " must be at least " + minimum + ": " + value);
+        return value;
+    }
+}
@@ -0,0 +1,15 @@
+package no.ion.modulec.bench;
+
+import no.ion.modulec.Context;
+import no.ion.modulec.MessageSink;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+
+/** A context that discards all messages, to avoid measuring the terminal. */
+public class QuietContext implements Context {
+    private final MessageSink log = (type, message) -> {};
+
+    @Override public FileSystem fileSystem() { return FileSystems.getDefault(); }
+    @Override public MessageSink log() { return log; }
+}
@@ -0,0 +1,134 @@
+package no.ion.modulec.bench;
+
+import no.ion.modulec.compiler.ModulePath;
+import no.ion.modulec.compiler.Release;
+import no.ion.modulec.compiler.multi.MultiModuleCompilationAndPackaging;
+import no.ion.modulec.compiler.multi.MultiModuleCompilationAndPackagingResult;
+import no.ion.modulec.compiler.multi.MultiModuleCompiler;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds of a generated workspace of 10, 1k, and 50k source files, spread over one or several modules, with the
+ * single-module compiler (one {@code make} per module, in dependency order) and the multi-module compiler (one javac
+ * invocation for all modules).  A single-module build also writes the time spent scanning, checking whether the
+ * classes are up to date, and packaging to {@code build-report.json} in the output directory of each module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ScaleBenchmark {
+    private static final ModuleDescriptor.Version VERSION = ModuleDescriptor.Version.parse("1.0.0");
+
+    @Param({"10", "1000", "50000"})
+    public int sourceFiles;
+
+    @Param({"1", "5"})
+    public int modules;
+
+    private TemporaryDirectory temporaryDirectory;
+    private ProjectGenerator.Workspace workspace;
+    private Pathname out;
+    private final ModuleCompiler moduleCompiler = new ModuleCompiler(new QuietContext());
+    private final List<ModuleCompiler.MakeParams> singleModuleParams = new ArrayList<>();
+    private final MultiModuleCompiler multiModuleCompiler = new MultiModuleCompiler();
+
+    @Setup
+    public void setUp() {
+        temporaryDirectory = Pathname.makeTmpdir("bench.", "", null);
+        workspace = ProjectGenerator.ofSourceFiles(sourceFiles, modules)
+                                    .setFanOut(2)
+                                    .setNestedClasses(1)
+                                    .setResources(1)
+                                    .generate(temporaryDirectory.directory().resolve("workspace"));
+        out = temporaryDirectory.directory().resolve("out");
+
+        var context = new QuietContext();
+        var modulePath = new ModulePath();
+        for (ProjectGenerator.Module module : workspace.modules()) {
+            Pathname moduleOut = out.resolve(module.name());
+            var params = new ModuleCompiler.MakeParams(context)
+                    .setOut(moduleOut)
+                    .setVersion(VERSION)
+                    .addSourceDirectories(List.of(module.src()))
+                    .addToModulePath(new ModulePath().addFrom(modulePath));
+            module.resources().ifPresent(params::addResourceDirectory);
+            singleModuleParams.add(params);
+            modulePath.addModularJar(moduleOut.resolve(module.name() + "@" + VERSION + ".jar").path());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        temporaryDirectory.close();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Clean {
+        @Setup(Level.Invocation)
+        public void removeOutput(ScaleBenchmark benchmark) {
+            benchmark.out.deleteRecursively();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Built {
+        @Setup(Level.Trial)
+        public void build(ScaleBenchmark benchmark) {
+            benchmark.out.deleteRecursively();
+            benchmark.singleModuleMake();
+        }
+    }
+
+    @Benchmark
+    public void singleModuleClean(Clean clean) {
+        singleModuleMake();
+    }
+
+    @Benchmark
+    public void singleModuleNoop(Built built) {
+        singleModuleMake();
+    }
+
+    @Benchmark
+    public MultiModuleCompilationAndPackagingResult multiModuleClean(Clean clean) {
+        var compilation = new MultiModuleCompilationAndPackaging(Release.ofJre())
+                .setBuildDirectory(out.makeDirectories().path());
+        for (ProjectGenerator.Module module : workspace.modules())
+            compilation.addModule()
+                       .setName(module.name())
+                       .addSourceDirectories(List.of(module.src().path()))
+                       .setVersion(VERSION);
+
+        MultiModuleCompilationAndPackagingResult result = multiModuleCompiler.make(compilation);
+        if (!result.cResult().success())
+            throw new IllegalStateException("Compilation failed: " + result.cResult().message());
+        return result;
+    }
+
+    private void singleModuleMake() {
+        singleModuleParams.forEach(moduleCompiler::make);
+    }
+}
@@ -0,0 +1,69 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.modulec.bench.QuietContext;
+import no.ion.modulec.bench.ProjectGenerator;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.TemporaryDirectory;
+import no.ion.modulec.report.BuildReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The up-to-date check of a class directory against its source directory, which is the whole of a no-op build
+ * except for packaging.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompilerBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sourceFiles;
+
+    private TemporaryDirectory temporaryDirectory;
+    private Compiler compiler;
+    private Pathname src;
+    private Pathname classes;
+    private int expectedSourceFiles;
+
+    @Setup
+    public void setUp() {
+        temporaryDirectory = Pathname.makeTmpdir("bench.", "", null);
+        ProjectGenerator.Module project = ProjectGenerator.ofSourceFiles(sourceFiles, 1)
+                                                          .generate(temporaryDirectory.directory())
+                                                          .module(0);
+        src = project.src();
+        expectedSourceFiles = project.sourceFiles();
+        classes = project.compileTo(temporaryDirectory.directory().resolve("classes"));
+        compiler = new Compiler(new QuietContext());
+    }
+
+    @TearDown
+    public void tearDown() {
+        temporaryDirectory.close();
+    }
+
+    @Benchmark
+    public Compiler.ClassDirectory prepareClassDirectory() {
+        Compiler.ClassDirectory classDirectory = compiler.prepareClassDirectory(classes, List.of(src), null, 0,
+                                                                                new BuildReport(), "");
+        if (classDirectory.paths().size() != expectedSourceFiles)
+            throw new IllegalStateException("Expected " + expectedSourceFiles + " source files: " + classDirectory.paths().size());
+        return classDirectory;
+    }
+}
@@ -0,0 +1,94 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.modulec.bench.QuietContext;
+import no.ion.modulec.bench.ProjectGenerator;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end builds of a module with {@link ModuleCompiler#make(ModuleCompiler.MakeParams)}:  A clean build
+ * compiles and packages everything, while a no-op build of an unchanged module should do as little as possible.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class MakeBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sourceFiles;
+
+    private TemporaryDirectory temporaryDirectory;
+    private ModuleCompiler moduleCompiler;
+    private ModuleCompiler.MakeParams params;
+    private Pathname out;
+
+    @Setup
+    public void setUp() {
+        temporaryDirectory = Pathname.makeTmpdir("bench.", "", null);
+        ProjectGenerator.Module project = ProjectGenerator.ofSourceFiles(sourceFiles, 1)
+                                                          .generate(temporaryDirectory.directory())
+                                                          .module(0);
+        out = temporaryDirectory.directory().resolve("out");
+
+        var context = new QuietContext();
+        moduleCompiler = new ModuleCompiler(context);
+        params = new ModuleCompiler.MakeParams(context)
+                .setOut(out)
+                .setVersion(ModuleDescriptor.Version.parse("1.0.0"))
+                .addSourceDirectories(List.of(project.src()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        temporaryDirectory.close();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Clean {
+        @Setup(Level.Invocation)
+        public void removeOutput(MakeBenchmark benchmark) {
+            benchmark.out.deleteRecursively();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Built {
+        @Setup(Level.Trial)
+        public void build(MakeBenchmark benchmark) {
+            benchmark.out.deleteRecursively();
+            benchmark.moduleCompiler.make(benchmark.params);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void clean(Clean clean) {
+        moduleCompiler.make(params);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void noop(Built built) {
+        moduleCompiler.make(params);
+    }
+}
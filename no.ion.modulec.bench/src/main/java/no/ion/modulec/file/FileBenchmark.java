@@ -0,0 +1,58 @@
+package no.ion.modulec.file;
+
+import no.ion.modulec.bench.ProjectGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/** Scanning of a source directory, as done before every compilation. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sourceFiles;
+
+    private TemporaryDirectory temporaryDirectory;
+    private Pathname src;
+
+    @Setup
+    public void setUp() {
+        temporaryDirectory = Pathname.makeTmpdir("bench.", "", null);
+        src = ProjectGenerator.ofSourceFiles(sourceFiles, 1).generate(temporaryDirectory.directory()).module(0).src();
+    }
+
+    @TearDown
+    public void tearDown() {
+        temporaryDirectory.close();
+    }
+
+    @Benchmark
+    public List<Pathname> find() {
+        return src.find(true, (pathname, attributes) -> attributes.isFile() && pathname.filename().endsWith(".java") ?
+                                                        Optional.of(pathname) :
+                                                        Optional.empty());
+    }
+
+    @Benchmark
+    public List<Path> resolveSource() {
+        return SourceDirectory.resolveSource(src);
+    }
+}
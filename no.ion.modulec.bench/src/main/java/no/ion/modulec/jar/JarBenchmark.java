@@ -0,0 +1,90 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.bench.QuietContext;
+import no.ion.modulec.bench.ProjectGenerator;
+import no.ion.modulec.compiler.ModulePath;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.TemporaryDirectory;
+import no.ion.modulec.module.ModuleVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Packaging of a module into a JAR and a fat JAR, and reading the module descriptors of a module path. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JarBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sourceFiles;
+
+    private TemporaryDirectory temporaryDirectory;
+    private Jar jar;
+    private Pathname classes;
+    private Pathname packedJar;
+    private Pathname moduleJar;
+    private ModuleDescriptor moduleDescriptor;
+    private Pathname fatJar;
+    private ModulePath modulePath;
+
+    @Setup
+    public void setUp() {
+        temporaryDirectory = Pathname.makeTmpdir("bench.", "", null);
+        Pathname directory = temporaryDirectory.directory();
+        ProjectGenerator.Module project = ProjectGenerator.ofSourceFiles(sourceFiles, 1).generate(directory).module(0);
+        classes = project.compileTo(directory.resolve("classes"));
+        jar = new Jar(new QuietContext());
+        packedJar = directory.resolve("packed.jar");
+        moduleJar = directory.resolve("mod").makeDirectories().resolve("bench-1.0.0.jar");
+        jar.pack(packaging(moduleJar));
+        moduleDescriptor = JarInspector.moduleDescriptorOf(moduleJar).orElseThrow();
+        fatJar = directory.resolve("fat.jar");
+        modulePath = new ModulePath().addModuleDirectory(moduleJar.parent().path());
+    }
+
+    @TearDown
+    public void tearDown() {
+        temporaryDirectory.close();
+    }
+
+    private ModulePackaging packaging(Pathname jarFile) {
+        return ModulePackaging.forCreatingJar(jarFile.path())
+                              .setVersion(ModuleDescriptor.Version.parse("1.0.0"))
+                              .addDirectoryTree(classes.path());
+    }
+
+    @Benchmark
+    public PackagingResult pack() {
+        packedJar.delete();
+        return jar.pack(packaging(packedJar));
+    }
+
+    @Benchmark
+    public Pathname fatJarExtend() {
+        new FatJar().extend(new FatJarSpec(moduleJar, fatJar)
+                                    .addDirectory(FatJar.MODULE_DIRECTORY)
+                                    .addModule(moduleJar, FatJar.MODULE_DIRECTORY + moduleJar.filename(), moduleDescriptor));
+        return fatJar;
+    }
+
+    @Benchmark
+    public Map<ModuleVersion, HybridModularJarInfo> hybridModulesOf() {
+        return JarInspector.hybridModulesOf(modulePath);
+    }
+}
@@ -2,41 +2,90 @@ package no.ion.modulec.junit;
 
 import no.ion.modulec.junit.internal.ExecutionListener;
 import no.ion.modulec.junit.internal.Reporter;
+import no.ion.modulec.junit.internal.RunOptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.engine.discovery.ClassSelector;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.engine.support.descriptor.ClassSource;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherSession;
+import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.TestPlan;
 import org.junit.platform.launcher.core.LauncherConfig;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
 import org.junit.platform.launcher.core.LauncherFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static org.junit.platform.engine.discovery.ClassNameFilter.includeClassNamePatterns;
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClasspathRoots;
 
 public class Main {
+    /** The test index written to the test JAR by no.ion.modulec. */
+    private static final String TEST_INDEX_PATH = "META-INF/modulec/tests.idx";
+
     private final Reporter reporter = new Reporter();
-    private final ExecutionListener executionListener = new ExecutionListener(reporter);
+    private final ExecutionListener executionListener;
     private final Path testDir;
+    private final RunOptions options;
 
+    /** Usage: Main [OPTION...] TESTJAR, see {@link RunOptions} for the options. */
     public static void main(String[] args) {
         if (args.length < 1)
             fail("missing TESTJAR argument: Either test JAR or exploded test JAR directory");
-        var testPath = Path.of(args[0]);
+        var testPath = Path.of(args[args.length - 1]);
 
-        System.exit(runTests(testPath));
+        System.exit(runTests(testPath, Arrays.copyOf(args, args.length - 1)));
     }
 
     public static int runTests(Path testPath) {
-        return new Main(testPath).run();
+        return runTests(testPath, 1);
+    }
+
+    /**
+     * Runs the tests with up to parallelism test classes and methods executing concurrently, using JUnit Jupiter's
+     * parallel executor.  With a parallelism of 1, the tests are run sequentially in the calling thread.
+     */
+    public static int runTests(Path testPath, int parallelism) {
+        return runTests(testPath, new String[] { "--parallelism", Integer.toString(parallelism) });
     }
 
-    private Main(Path testDir) {
+    /** Runs the tests with the options of {@link RunOptions}, e.g. "--parallelism", "4". */
+    public static int runTests(Path testPath, String[] options) {
+        RunOptions runOptions;
+        try {
+            runOptions = RunOptions.parse(options);
+        } catch (IllegalArgumentException e) {
+            new Reporter().infoln("error: " + e.getMessage());
+            return 1;
+        }
+        return new Main(testPath, runOptions).run();
+    }
+
+    private Main(Path testDir, RunOptions options) {
         this.testDir = testDir;
+        this.options = options;
+        // The output of a test class is printed as it runs, unless test classes may run concurrently.
+        this.executionListener = new ExecutionListener(reporter, options.parallelism() > 1);
     }
 
     public int run() {
@@ -51,9 +100,10 @@ public class Main {
 
         // HOW THIS WORKS
         //
-        // junit will walk the testDir file tree (or search the testDir JAR) for *.class files.
-        // includeClassNamePatterns narrows the fileset further.  All resulting qualified class names
-        // are then loaded with the current thread's context class loader.
+        // If the test JAR has a test index written by no.ion.modulec, the test classes of the index are
+        // selected directly.  Otherwise, junit will walk the testDir file tree (or search the testDir JAR)
+        // for *.class files, and includeClassNamePatterns narrows the fileset further.  All resulting
+        // qualified class names are then loaded with the current thread's context class loader.
         //
         // The current thread's context class loader must be set by the caller of runTests()
         // (done in no.ion.modulec), or with the -c/--context-class-loader option to javahms if this
@@ -76,12 +126,37 @@ public class Main {
         // no.ion.modulec.junit should be
         if (!sanityCheckDependencies()) return 1;
 
-        var request = LauncherDiscoveryRequestBuilder.request()
-                                                     .selectors(selectClasspathRoots(Set.of(testDir)))
-                                                     // disable loading of non-existent junit-platform.properties
-                                                     .enableImplicitConfigurationParameters(false)
-                                                     .filters(includeClassNamePatterns(".*Test"))
-                                                     .build();
+        var requestBuilder = newRequestBuilder();
+        Optional<List<String>> indexedClasses = readTestIndex();
+        if (indexedClasses.isPresent()) {
+            // The selected classes are run in the order they were selected, e.g. previously failing classes first.
+            Map<String, Integer> selectionOrder = new HashMap<>();
+            for (String className : options.selectedClasses())
+                selectionOrder.putIfAbsent(className, selectionOrder.size());
+            List<ClassSelector> selectors = indexedClasses.get()
+                                                          .stream()
+                                                          .filter(className -> selectionOrder.isEmpty() ||
+                                                                               selectionOrder.containsKey(topLevelClassName(className)))
+                                                          .sorted(Comparator.comparing(className -> selectionOrder.getOrDefault(topLevelClassName(className), 0)))
+                                                          .map(DiscoverySelectors::selectClass)
+                                                          .collect(Collectors.toList());
+            if (selectors.isEmpty()) {
+                reporter.infoln("No tests found");
+                options.resultsFile().ifPresent(executionListener::writeResults);
+                return 0;
+            }
+            requestBuilder.selectors(selectors);
+        } else {
+            requestBuilder.selectors(selectClasspathRoots(Set.of(testDir)));
+            if (!options.selectedClasses().isEmpty()) {
+                String[] patterns = options.selectedClasses()
+                                           .stream()
+                                           .map(className -> Pattern.quote(className) + "(\\$.*)?")
+                                           .toArray(String[]::new);
+                requestBuilder.filters(includeClassNamePatterns(patterns));
+            }
+        }
+        var request = requestBuilder.build();
 
         LauncherConfig launcherConfig = LauncherConfig.builder()
                                                       .enableLauncherSessionListenerAutoRegistration(false)
@@ -100,16 +175,118 @@ public class Main {
             TestPlan plan = launcher.discover(request);
             if (!plan.containsTests()) {
                 reporter.infoln("No tests found");
+                options.resultsFile().ifPresent(executionListener::writeResults);
                 return 0;
             }
 
-            executionListener.setPlan(plan);
-            launcher.execute(plan);
+            if (options.failFast()) {
+                executeUntilFailure(launcher, plan);
+            } else {
+                executionListener.setPlan(plan);
+                launcher.execute(plan);
+            }
         }
 
+        options.resultsFile().ifPresent(executionListener::writeResults);
+
         return executionListener.wasSuccess() ? 0 : 1;
     }
 
+    private LauncherDiscoveryRequestBuilder newRequestBuilder() {
+        var requestBuilder = LauncherDiscoveryRequestBuilder.request()
+                                                            // disable loading of non-existent junit-platform.properties
+                                                            .enableImplicitConfigurationParameters(false)
+                                                            .filters(includeClassNamePatterns(".*Test"));
+        if (options.parallelism() > 1) {
+            // Test classes, and the methods of a test class, run concurrently unless annotated otherwise,
+            // e.g. with @Execution(SAME_THREAD) or @ResourceLock.
+            requestBuilder.configurationParameter("junit.jupiter.execution.parallel.enabled", "true")
+                          .configurationParameter("junit.jupiter.execution.parallel.mode.default", "concurrent")
+                          .configurationParameter("junit.jupiter.execution.parallel.mode.classes.default", "concurrent")
+                          .configurationParameter("junit.jupiter.execution.parallel.config.strategy", "fixed")
+                          .configurationParameter("junit.jupiter.execution.parallel.config.fixed.parallelism",
+                                                  Integer.toString(options.parallelism()));
+        }
+        return requestBuilder;
+    }
+
+    /**
+     * Executes the top-level test classes of the plan one at a time in the order of the plan, together with their
+     * nested test classes, until a test class fails.  JUnit cannot stop a test plan midway, so each top-level class
+     * is discovered and executed as a test plan of its own.
+     */
+    private void executeUntilFailure(Launcher launcher, TestPlan plan) {
+        Map<String, List<String>> classesByTopLevelClass = new LinkedHashMap<>();
+        for (TestIdentifier root : plan.getRoots()) {
+            for (TestIdentifier child : plan.getChildren(root)) {
+                child.getSource()
+                     .filter(source -> source instanceof ClassSource)
+                     .map(source -> ((ClassSource) source).getClassName())
+                     .ifPresent(className -> classesByTopLevelClass
+                             .computeIfAbsent(topLevelClassName(className), __ -> new ArrayList<>())
+                             .add(className));
+            }
+        }
+
+        int remaining = classesByTopLevelClass.size();
+        for (List<String> classNames : classesByTopLevelClass.values()) {
+            var request = newRequestBuilder().selectors(classNames.stream()
+                                                                  .map(DiscoverySelectors::selectClass)
+                                                                  .collect(Collectors.toList()))
+                                             .build();
+            TestPlan classPlan = launcher.discover(request);
+            --remaining;
+            if (!classPlan.containsTests()) continue;
+            executionListener.setPlan(classPlan);
+            launcher.execute(classPlan);
+            if (!executionListener.wasSuccess()) {
+                if (remaining > 0)
+                    reporter.infofln("Stopped at the first failure: %d test classes were not run", remaining);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the test classes in the test index of the test JAR or directory, or empty if there is no
+     * index.  The index has one line per test class, starting with the class name followed by a space.
+     */
+    private Optional<List<String>> readTestIndex() {
+        byte[] index;
+        try {
+            if (Files.isDirectory(testDir)) {
+                Path indexPath = testDir.resolve(TEST_INDEX_PATH);
+                if (!Files.isRegularFile(indexPath))
+                    return Optional.empty();
+                index = Files.readAllBytes(indexPath);
+            } else {
+                try (JarFile jarFile = new JarFile(testDir.toFile(), false)) {
+                    JarEntry entry = jarFile.getJarEntry(TEST_INDEX_PATH);
+                    if (entry == null)
+                        return Optional.empty();
+                    try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                        index = inputStream.readAllBytes();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<String> classNames = new ArrayList<>();
+        for (String line : new String(index, StandardCharsets.UTF_8).split("\n")) {
+            int spaceIndex = line.indexOf(' ');
+            if (spaceIndex > 0)
+                classNames.add(line.substring(0, spaceIndex));
+        }
+        return Optional.of(classNames);
+    }
+
+    private static String topLevelClassName(String className) {
+        int dollarIndex = className.indexOf('$');
+        return dollarIndex == -1 ? className : className.substring(0, dollarIndex);
+    }
+
     private boolean sanityCheckDependencies() {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         String qualifiedTestClassName = Test.class.getName();
@@ -11,12 +11,19 @@ import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.TestPlan;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Example from maven-surefire-plugin:
@@ -49,15 +56,24 @@ import java.util.Set;
  * [INFO]
  * [INFO]
  * </pre>
+ *
+ * <p>The callbacks are thread-safe, as test classes and methods may run concurrently.  With buffering, the output of
+ * a test class is printed atomically when the test class finishes, instead of as its tests run.</p>
  */
 public class ExecutionListener implements TestExecutionListener {
     private final Reporter reporter;
-    private final Map<UniqueId, TestFileSummary> summaryById = new HashMap<>();
-    private Map<UniqueId, Integer> testsByTestFile;
+    private final boolean buffered;
+    private final Map<UniqueId, TestFileSummary> summaryById = new ConcurrentHashMap<>();
+    private volatile Map<UniqueId, Integer> testsByTestFile;
     private int width = 0;
 
     public ExecutionListener(Reporter reporter) {
+        this(reporter, false);
+    }
+
+    public ExecutionListener(Reporter reporter, boolean buffered) {
         this.reporter = reporter;
+        this.buffered = buffered;
     }
 
     @Override
@@ -80,7 +96,7 @@ public class ExecutionListener implements TestExecutionListener {
         if (parentId != null) {
             TestFileSummary summary = summaryById.get(parentId);
             if (summary != null) {
-                reporter.info(".");
+                print(summary, ".");
                 summary.addSkipped();
             }
         }
@@ -91,10 +107,11 @@ public class ExecutionListener implements TestExecutionListener {
         UniqueId id = testIdentifier.getUniqueIdObject();
         Integer count = testsByTestFile.get(id);
         if (count != null) {
-            if (summaryById.put(id, new TestFileSummary()) != null)
+            var summary = new TestFileSummary(qualifiedName(testIdentifier));
+            if (summaryById.putIfAbsent(id, summary) != null)
                 throw new IllegalStateException("Test already started: " + id);
             //reporter.infof("Running %d tests in %s ...", count, qualifiedName(testIdentifier));
-            reporter.infof("%s ", qualifiedName(testIdentifier));
+            print(summary, qualifiedName(testIdentifier) + " ");
             return;
         }
     }
@@ -108,15 +125,15 @@ public class ExecutionListener implements TestExecutionListener {
                 TestExecutionResult.Status status = testExecutionResult.getStatus();
                 switch (status) {
                     case ABORTED:
-                        reporter.info(".");
+                        print(summary, ".");
                         summary.addAborted();
                         break;
                     case FAILED:
-                        reporter.info(".");
+                        print(summary, ".");
                         summary.addFailed();
                         break;
                     case SUCCESSFUL:
-                        reporter.info(".");
+                        print(summary, ".");
                         summary.addSuccess();
                         break;
                     default:
@@ -132,6 +149,7 @@ public class ExecutionListener implements TestExecutionListener {
         UniqueId id = testIdentifier.getUniqueIdObject();
         TestFileSummary summary = summaryById.get(id);
         if (summary != null) {
+            summary.finish();
             var stat = new ArrayList<String>();
             if (summary.failed() > 0)
                 stat.add(summary.failed() + " failed");
@@ -139,16 +157,19 @@ public class ExecutionListener implements TestExecutionListener {
                 stat.add(summary.aborted() + " aborted");
             if (summary.skipped() > 0)
                 stat.add(summary.skipped() + " failed");
+            var output = new StringBuilder(buffered ? summary.output() : "");
             if (stat.isEmpty()) {
-                reporter.infoln(" ok");
+                output.append(" ok\n");
             } else {
-                reporter.infofln(" " + String.join(", ", stat));
+                output.append(' ').append(String.join(", ", stat)).append('\n');
             }
 
             for (var failure : summary.failures()) {
-                reporter.testFailure(qualifiedName(failure.testIdentifier()), failure.throwable());
+                output.append(Reporter.testFailureMessage(qualifiedName(failure.testIdentifier()), failure.throwable()));
             }
 
+            reporter.info(output.toString());
+
             // Fall-through: Verify no throwable is present
         }
 
@@ -180,7 +201,42 @@ public class ExecutionListener implements TestExecutionListener {
     }
 
     public boolean wasSuccess() {
-        return summaryById.values().stream().allMatch(summary -> summary.success() == summary.count());
+        return summaryById.values().stream().allMatch(TestFileSummary::passed);
+    }
+
+    /**
+     * Writes the result of each finished test class to the file, one line per class sorted by class name:
+     *
+     * <pre>
+     * CLASS STATUS MILLIS
+     * </pre>
+     *
+     * <p>STATUS is "ok" if all tests of the class succeeded, and otherwise "failed".  MILLIS is the time the test class
+     * took to run in milliseconds.</p>
+     */
+    public void writeResults(Path file) {
+        var results = new StringBuilder();
+        summaryById.values()
+                   .stream()
+                   .filter(TestFileSummary::finished)
+                   .sorted(Comparator.comparing(TestFileSummary::className))
+                   .forEach(summary -> results.append(summary.className())
+                                              .append(summary.passed() ? " ok " : " failed ")
+                                              .append(TimeUnit.NANOSECONDS.toMillis(summary.durationNanos()))
+                                              .append('\n'));
+        try {
+            Files.writeString(file, results);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void print(TestFileSummary summary, String text) {
+        if (buffered) {
+            summary.append(text);
+        } else {
+            reporter.info(text);
+        }
     }
 
     private static String qualifiedName(TestIdentifier testIdentifier) {
@@ -2,36 +2,34 @@ package no.ion.modulec.junit.internal;
 
 import java.util.Objects;
 
+/** Prints to standard output.  The methods are thread-safe, and each call prints atomically. */
 public class Reporter {
     public Reporter() {}
 
-    public void info(String message) {
+    public synchronized void info(String message) {
         System.out.print(message);
         System.out.flush();
     }
 
-    public void infoln(String message) {
+    public synchronized void infoln(String message) {
         System.out.println(message);
         System.out.flush();
     }
 
-    public void infof(String format, Object... args) {
+    public synchronized void infof(String format, Object... args) {
         System.out.printf(format, args);
         System.out.flush();
     }
 
-    public void infofln(String format, Object... args) {
+    public synchronized void infofln(String format, Object... args) {
         infof(format + '\n', args);
     }
 
-    void testFailure(String name, Throwable throwable) {
-        System.out.print("Test " + name + " failed: ");
-
+    static String testFailureMessage(String name, Throwable throwable) {
         var string = new StringBuilder();
+        string.append("Test ").append(name).append(" failed: ");
         appendStackTrace(string, throwable);
-
-        System.out.print(string);
-        System.out.flush();
+        return string.toString();
     }
 
     private static void appendStackTrace(StringBuilder string, Throwable throwable) {
@@ -0,0 +1,65 @@
+package no.ion.modulec.junit.internal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The options of a test run:
+ *
+ * <pre>
+ * --fail-fast       Stop after the first test class with a failing test.  The test classes are then run one at a time.
+ * --parallelism N   Run up to N test classes and methods concurrently [1].
+ * --results FILE    Write the result of each test class to FILE, see {@link ExecutionListener#writeResults(Path)}.
+ * --select CLASS    Run only the tests of CLASS and its nested classes.  May be repeated, and the classes are run in the
+ *                   order of the options if the test JAR has a test index.
+ * </pre>
+ */
+public class RunOptions {
+    private boolean failFast = false;
+    private int parallelism = 1;
+    private final List<String> selectedClasses = new ArrayList<>();
+    private Path resultsFile = null;
+
+    /** Parses the options, throwing IllegalArgumentException on an invalid option. */
+    public static RunOptions parse(String... args) {
+        var options = new RunOptions();
+        for (int i = 0; i < args.length; ++i) {
+            String option = args[i];
+            if (option.equals("--fail-fast")) {
+                options.failFast = true;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("missing value of option " + option);
+            String value = args[++i];
+            switch (option) {
+                case "--parallelism":
+                    try {
+                        options.parallelism = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        options.parallelism = 0;
+                    }
+                    if (options.parallelism < 1)
+                        throw new IllegalArgumentException("invalid parallelism: " + value);
+                    break;
+                case "--results":
+                    options.resultsFile = Path.of(value);
+                    break;
+                case "--select":
+                    options.selectedClasses.add(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + option);
+            }
+        }
+        return options;
+    }
+
+    public boolean failFast() { return failFast; }
+    public int parallelism() { return parallelism; }
+    /** The classes to run, or empty if all test classes should run. */
+    public List<String> selectedClasses() { return List.copyOf(selectedClasses); }
+    public Optional<Path> resultsFile() { return Optional.ofNullable(resultsFile); }
+}
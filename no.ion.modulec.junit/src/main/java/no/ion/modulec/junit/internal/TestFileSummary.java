@@ -5,28 +5,45 @@ import org.junit.platform.launcher.TestIdentifier;
 import java.util.ArrayList;
 import java.util.List;
 
+/** The summary of a test class.  Thread-safe, as the tests of a class may run concurrently. */
 class TestFileSummary {
+    private final String className;
+    private final long startNanos = System.nanoTime();
     private final List<Failure> failures = new ArrayList<>();
+    private final StringBuilder output = new StringBuilder();
 
     private int skipped = 0;
     private int success = 0;
     private int failed = 0;
     private int aborted = 0;
+    private long durationNanos = -1;
 
-    TestFileSummary() {}
-    void addSkipped() { skipped++; }
-    void addSuccess() { success++; }
-    void addFailed() { failed++; }
-    void addAborted() { aborted++; }
+    TestFileSummary(String className) {
+        this.className = className;
+    }
+
+    synchronized void finish() { durationNanos = System.nanoTime() - startNanos; }
+    synchronized void addSkipped() { skipped++; }
+    synchronized void addSuccess() { success++; }
+    synchronized void addFailed() { failed++; }
+    synchronized void addAborted() { aborted++; }
+
+    synchronized void append(String text) { output.append(text); }
 
-    void addThrowable(TestIdentifier testIdentifier, Throwable throwable) {
+    synchronized void addThrowable(TestIdentifier testIdentifier, Throwable throwable) {
         failures.add(new Failure(testIdentifier, throwable));
     }
 
-    int count() { return skipped + success + failed + aborted; }
-    int skipped() { return skipped; }
-    int success() { return success; }
-    int failed() { return failed; }
-    int aborted() { return aborted; }
-    List<Failure> failures() { return List.copyOf(failures); }
+    String className() { return className; }
+    /** The time from start to finish of the test class, or -1 if not finished. */
+    synchronized long durationNanos() { return durationNanos; }
+    synchronized boolean finished() { return durationNanos >= 0; }
+    synchronized boolean passed() { return success == count(); }
+    synchronized int count() { return skipped + success + failed + aborted; }
+    synchronized int skipped() { return skipped; }
+    synchronized int success() { return success; }
+    synchronized int failed() { return failed; }
+    synchronized int aborted() { return aborted; }
+    synchronized List<Failure> failures() { return List.copyOf(failures); }
+    synchronized String output() { return output.toString(); }
 }
@@ -0,0 +1,41 @@
+#!/bin/bash
+
+# Usage: make-modco-cds.sh MODCO
+# Writes MODCO.jsa, a dynamic AppCDS archive of the classes loaded by MODCO while building a small module.
+#
+# The class path stored in the archive must match the one used at runtime, so the archive can only be used when
+# MODCO is invoked by the same absolute path.  Rerun this whenever MODCO is rebuilt or copied.
+
+set -e
+
+modco="$1"
+[[ "$modco" == /* ]] || modco="$PWD/$modco"
+rm -f "$modco.jsa"
+
+training=$(mktemp -d)
+trap 'rm -rf "$training"' EXIT
+
+mkdir -p "$training"/src/main/java/no/ion/training
+cat <<EOF > "$training"/src/main/java/module-info.java
+module no.ion.training {
+    exports no.ion.training;
+}
+EOF
+cat <<EOF > "$training"/src/main/java/no/ion/training/Main.java
+package no.ion.training;
+
+public class Main {
+    private Main() {}
+
+    public static void main(String... args) {
+        System.out.println("Hello, World!");
+    }
+}
+EOF
+
+if ! JAVA_TOOL_OPTIONS="-XX:ArchiveClassesAtExit=$modco.jsa -Xlog:cds=off,cds+dynamic=off" \
+     "$modco" -N -v 1.0.0 -e .Main -s "$training"/src/main/java -o "$training"/out &> "$training"/log
+then
+    cat "$training"/log >&2
+    exit 1
+fi
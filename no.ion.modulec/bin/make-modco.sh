@@ -1,6 +1,19 @@
 #!/bin/bash
 
+# Usage: make-modco.sh LAUNCHER
+# Writes the bash part of the modco launcher to LAUNCHER, to which the modco JAR should be appended.
+#
+# The launcher uses the AppCDS archive LAUNCHER.jsa written by make-modco-cds.sh, if it exists.  The JVM silently
+# ignores the archive if it is stale, e.g. if the launcher or the JDK has changed.
+
 cat <<EOF > "$1"
 #!/bin/bash
-exec java --class-path "\$0":$PWD/lib/no.ion.jhms-3.1.jar no.ion.modulec.ModuleCompiler3 "\$@"
+self="\$0"
+[[ "\$self" == /* ]] || self="\$PWD/\$self"
+if test -r "\$self.jsa"
+then
+    exec java -XX:SharedArchiveFile="\$self.jsa" -Xshare:auto -Xlog:cds=off,cds+dynamic=off \\
+         --class-path "\$self":$PWD/lib/no.ion.jhms-3.1.jar no.ion.modulec.ModuleCompiler3 "\$@"
+fi
+exec java --class-path "\$self":$PWD/lib/no.ion.jhms-3.1.jar no.ion.modulec.ModuleCompiler3 "\$@"
 EOF
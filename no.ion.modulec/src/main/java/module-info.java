@@ -2,5 +2,7 @@ open module no.ion.modulec {
     exports no.ion.modulec;
 
     requires jdk.compiler;
+    requires jdk.jfr;
+    requires jdk.management;
     requires no.ion.jhms;
 }
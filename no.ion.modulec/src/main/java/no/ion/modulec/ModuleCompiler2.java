@@ -33,6 +33,7 @@ public class ModuleCompiler2 {
         var compilation = new MultiModuleCompilationAndPackaging(Release.ofJre());
 
         compilation.setBuildDirectory(options.topLevelOptions().buildDirectory());
+        compilation.setWorkers(options.topLevelOptions().workers());
         compilation.addOptions(options.topLevelOptions().options());
         compilation.modulePath().clear().addFrom(options.topLevelOptions().modulePath());
 
@@ -47,6 +48,8 @@ public class ModuleCompiler2 {
             module.addSourceDirectories(moduleOptions.sources());
             List<Path> toInclude = List.of(fileSystem.getPath("."));
             moduleOptions.resources().forEach(resourceDirectory -> module.addResources(resourceDirectory, toInclude));
+            module.addTestSourceDirectories(moduleOptions.testSources());
+            moduleOptions.testResources().forEach(module::addTestResources);
         }
 
         var compiler = new MultiModuleCompiler();
@@ -60,7 +63,7 @@ public class ModuleCompiler2 {
         }
 
         if (!result.cResult().success()) {
-            System.out.println(result.cResult().message());
+            // The diagnostics and errors of the compilation have already been logged.
             return 1;
         } else {
             boolean success = true;
@@ -70,6 +73,13 @@ public class ModuleCompiler2 {
                     System.out.println(entry.getValue().out());
                 }
             }
+            for (var entry : result.tResults().entrySet()) {
+                if (!entry.getValue().success()) {
+                    success = false;
+                    System.out.println("Tests of " + entry.getKey() + " failed:");
+                    System.out.print(entry.getValue().out());
+                }
+            }
             if (!success)
                 return 1;
         }
@@ -1,11 +1,18 @@
 package no.ion.modulec;
 
 import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.DirectoryWatcher;
+import no.ion.modulec.file.Pathname;
 import no.ion.modulec.modco.ProgramContext;
 import no.ion.modulec.modco.Options;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 public class ModuleCompiler3 {
     private static final String PROGRAM_NAME = "modco";
+    private static final Duration WATCH_QUIET_PERIOD = Duration.ofMillis(100);
 
     private final ProgramContext context = new ProgramContext();
     private final ModuleCompiler moduleCompiler = new ModuleCompiler(context);
@@ -19,7 +26,11 @@ public class ModuleCompiler3 {
     public void run(String... args) {
         try {
             Options options = Options.parse(context, args);
-            moduleCompiler.make(options.params());
+            if (options.watch()) {
+                watch(options, args);
+            } else {
+                moduleCompiler.make(options.params());
+            }
         } catch (UsageException e) {
             context.log().info(e.getMessage());
             System.exit(0);
@@ -27,16 +38,68 @@ public class ModuleCompiler3 {
             context.log().infoLine(e.getMessage() + ", see '--help' for usage");
             System.exit(1);
         } catch (ModuleCompilerException e) {
-            if (!e.isSilent()) {
-                if (e.isMultiLine()) {
-                    context.log().info(e.getMessage());
-                } else {
-                    context.log().infoLine(PROGRAM_NAME + ": " + e.getMessage());
-                }
-            }
+            logError(e);
             System.exit(1);
         }
 
         System.exit(0);
     }
+
+    /**
+     * Makes, and makes again on each burst of changes to the source, test source, and resource paths, with the same
+     * ModuleCompiler to keep its state warm.  The options are parsed anew before each make, e.g. to pick up a
+     * src/test/java created since the previous make.  Errors are logged and do not stop the watching.
+     */
+    private void watch(Options options, String... args) {
+        try (moduleCompiler; var watcher = new DirectoryWatcher(options.params().out())) {
+            moduleCompiler.keepFileStates();
+            while (true) {
+                watchedPaths(options.params()).forEach(watcher::watch);
+                long startNanos = System.nanoTime();
+                try {
+                    moduleCompiler.make(options.params());
+                    context.log().milestone("made in %d ms, watching for changes", (System.nanoTime() - startNanos) / 1_000_000L);
+                } catch (UserErrorException e) {
+                    context.log().infoLine(e.getMessage() + ", see '--help' for usage");
+                } catch (ModuleCompilerException e) {
+                    logError(e);
+                    context.log().milestone("make failed, watching for changes");
+                }
+
+                DirectoryWatcher.Changes changes = watcher.awaitChanges(WATCH_QUIET_PERIOD);
+                context.log().debugLine(() -> changes.overflow() ?
+                                              "Changes may have been lost, making" :
+                                              "Changed " + changes.paths().size() + " paths, making");
+
+                while (true) {
+                    try {
+                        options = Options.parse(context, args);
+                        break;
+                    } catch (UserErrorException e) {
+                        context.log().infoLine(e.getMessage() + ", see '--help' for usage");
+                        watcher.awaitChanges(WATCH_QUIET_PERIOD);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Pathname> watchedPaths(ModuleCompiler.MakeParams params) {
+        var paths = new ArrayList<Pathname>();
+        paths.addAll(params.sourceDirectories());
+        paths.addAll(params.resourceDirectories());
+        paths.addAll(params.testSourceDirectories());
+        paths.addAll(params.testResourceDirectories());
+        return paths;
+    }
+
+    private void logError(ModuleCompilerException e) {
+        if (!e.isSilent()) {
+            if (e.isMultiLine()) {
+                context.log().info(e.getMessage());
+            } else {
+                context.log().infoLine(PROGRAM_NAME + ": " + e.getMessage());
+            }
+        }
+    }
 }
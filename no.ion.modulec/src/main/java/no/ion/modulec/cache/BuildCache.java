@@ -0,0 +1,177 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.file.BasicAttributes;
+import no.ion.modulec.file.Pathname;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A content-addressed cache of build outputs, shared by all builds of a user on a machine.
+ *
+ * <p>An entry is a ZIP file of files below an output directory, stored at {@code entries/KK/KEY.zip} where KEY is
+ * the (hexadecimal) digest of all inputs of the build and KK its first two characters.  An entry is written to
+ * {@code tmp/} and atomically renamed into place, so concurrent builds never see a partial entry.  The last modified
+ * time of an entry is updated on each hit, and the least recently used entries are evicted when the total size of
+ * the entries exceeds the maximum size.</p>
+ */
+public class BuildCache {
+    public static final long DEFAULT_MAX_SIZE = 1L << 30;
+
+    private final Pathname directory;
+    private final long maxSize;
+
+    public BuildCache(Pathname directory, long maxSize) {
+        this.directory = Objects.requireNonNull(directory, "directory cannot be null");
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    public Pathname directory() { return directory; }
+    public long maxSize() { return maxSize; }
+
+    /**
+     * If there is an entry for the key, replace each of the {@code relativePaths} in {@code outputDirectory} with the
+     * content of the entry and return true.  Returns false on a miss.
+     */
+    public boolean restore(String key, Pathname outputDirectory, List<String> relativePaths) {
+        Pathname entry = entryPathname(key);
+        if (!entry.isFile())
+            return false;
+
+        relativePaths.forEach(relativePath -> outputDirectory.resolve(relativePath).deleteRecursively());
+
+        try (ZipFile zipFile = new ZipFile(entry.file())) {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry zipEntry = entries.nextElement();
+                Pathname pathname = outputDirectory.resolve(zipEntry.getName()).normalize();
+                if (!pathname.path().startsWith(outputDirectory.normalize().path()))
+                    throw new ZipException("Entry outside output directory: " + zipEntry.getName());
+                if (zipEntry.isDirectory()) {
+                    pathname.makeDirectories();
+                } else {
+                    pathname.makeParentDirectories();
+                    try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                        Files.copy(inputStream, pathname.path(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        } catch (ZipException e) {
+            // A corrupt entry is a miss, and is removed so the following build may replace it.
+            entry.delete();
+            relativePaths.forEach(relativePath -> outputDirectory.resolve(relativePath).deleteRecursively());
+            return false;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // Evicted by a concurrent build
+            relativePaths.forEach(relativePath -> outputDirectory.resolve(relativePath).deleteRecursively());
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        entry.setLastModifiedIfExists(Instant.now());
+        return true;
+    }
+
+    /**
+     * Store the {@code relativePaths} files and directory trees of {@code outputDirectory} in an entry for the key,
+     * unless one already exists, and evict entries if the cache has grown too large.
+     */
+    public void store(String key, Pathname outputDirectory, List<String> relativePaths) {
+        Pathname entry = entryPathname(key);
+        if (entry.exists())
+            return;
+
+        Pathname tmpDirectory = directory.resolve("tmp").makeDirectories();
+        try (Pathname.TemporaryFile tmpFile = tmpDirectory.makeTemporaryFile(key + ".", ".zip", null)) {
+            try (OutputStream outputStream = Files.newOutputStream(tmpFile.pathname().path());
+                 ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+                for (String relativePath : relativePaths) {
+                    Pathname root = outputDirectory.resolve(relativePath);
+                    for (Pathname file : filesIn(root)) {
+                        String name = file.relative(outputDirectory).string();
+                        zipOutputStream.putNextEntry(new ZipEntry(name));
+                        try (InputStream inputStream = file.newInputStream()) {
+                            inputStream.transferTo(zipOutputStream);
+                        }
+                        zipOutputStream.closeEntry();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            entry.makeParentDirectories();
+            try {
+                Files.move(tmpFile.pathname().path(), entry.path(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                throw new UncheckedIOException("The build cache directory must support atomic renames: " + directory, e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        evict();
+    }
+
+    /** Remove the least recently used entries until the total size of the entries is at most the maximum size. */
+    public void evict() {
+        record Entry(Pathname pathname, BasicAttributes attributes) {}
+
+        Pathname entriesDirectory = directory.resolve("entries");
+        if (!entriesDirectory.isDirectory())
+            return;
+
+        List<Entry> entries = entriesDirectory.find(false, (pathname, attributes) -> attributes.isFile() ?
+                                                                                     Optional.of(new Entry(pathname, attributes)) :
+                                                                                     Optional.empty());
+        long totalSize = entries.stream().mapToLong(entry -> entry.attributes().size()).sum();
+        if (totalSize <= maxSize)
+            return;
+
+        List<Entry> leastRecentlyUsedFirst = new ArrayList<>(entries);
+        leastRecentlyUsedFirst.sort(Comparator.comparing(entry -> entry.attributes().lastModified()));
+        for (Entry entry : leastRecentlyUsedFirst) {
+            if (totalSize <= maxSize)
+                break;
+            // Another build may have evicted the entry concurrently.
+            entry.pathname().delete();
+            totalSize -= entry.attributes().size();
+        }
+    }
+
+    private Pathname entryPathname(String key) {
+        if (key.length() < 3 || !key.chars().allMatch(c -> ('0' <= c && c <= '9') || ('a' <= c && c <= 'f')))
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+        return directory.resolve("entries").resolve(key.substring(0, 2)).resolve(key + ".zip");
+    }
+
+    private static List<Pathname> filesIn(Pathname root) {
+        if (!root.exists())
+            return List.of();
+        List<Pathname> files = new ArrayList<>(root.find(false, (pathname, attributes) -> attributes.isFile() ?
+                                                                                          Optional.of(pathname) :
+                                                                                          Optional.empty()));
+        files.sort(Comparator.comparing(Pathname::string));
+        return files;
+    }
+}
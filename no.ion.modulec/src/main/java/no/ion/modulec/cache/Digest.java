@@ -0,0 +1,100 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.UncheckedInputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
+
+/**
+ * A SHA-256 digest of strings, file contents and directory trees, used as the key of cache entries.
+ *
+ * <p>Each value is added with a length or terminator, so that e.g. adding "ab" and "c" differs from
+ * adding "a" and "bc".</p>
+ */
+public class Digest {
+    private final MessageDigest messageDigest;
+    private final byte[] buffer = new byte[8192];
+
+    public Digest() {
+        try {
+            this.messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public Digest add(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        add(bytes.length);
+        messageDigest.update(bytes);
+        return this;
+    }
+
+    public Digest add(long value) {
+        for (int i = 7; i >= 0; --i)
+            messageDigest.update((byte) (value >>> (8 * i)));
+        return this;
+    }
+
+    public Digest add(Optional<?> value) {
+        return value.isPresent() ? add(1).add(value.get().toString()) : add(0);
+    }
+
+    public Digest addBytes(byte[] bytes) {
+        add(bytes.length);
+        messageDigest.update(bytes);
+        return this;
+    }
+
+    /** Adds the size and content of the regular file. */
+    public Digest addFile(Pathname file) {
+        add(file.readAttributes(true).size());
+        try (UncheckedInputStream inputStream = file.newInputStream()) {
+            int n;
+            while ((n = uncheckIO(() -> inputStream.read(buffer))) != -1)
+                messageDigest.update(buffer, 0, n);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the relative path, size, and content of each regular file in the directory tree rooted at {@code root},
+     * in the order of the relative paths.  If {@code root} is a regular file, only its content is added.
+     * A non-existent root is added as such.
+     */
+    public Digest addTree(Pathname root) {
+        if (!root.exists())
+            return add("<missing>");
+
+        List<Pathname> files = new ArrayList<>(root.find(true, (pathname, attributes) -> attributes.isFile() ?
+                                                                                          Optional.of(pathname) :
+                                                                                          Optional.empty()));
+        files.sort(Comparator.comparing(pathname -> pathname.relative(root).string()));
+        add(files.size());
+        for (Pathname file : files) {
+            add(file.relative(root).string());
+            addFile(file);
+        }
+        return this;
+    }
+
+    /** Adds the digest of another digest, which is then reset. */
+    public Digest add(Digest digest) {
+        messageDigest.update(digest.messageDigest.digest());
+        return this;
+    }
+
+    /** Returns the lower-case hexadecimal digest, and resets this. */
+    public String hex() {
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+}
@@ -0,0 +1,141 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.classfile.ClassFile;
+import no.ion.modulec.file.FileCounters;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.jar.TestIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Computes a key per top-level test class of a test JAR, that changes whenever an input of the test class changes.
+ *
+ * <p>The test classes are the concrete top-level classes whose name ends with "Test", like the classes run by the
+ * no.ion.modulec.junit runner.  The test JAR contains both the main and the test classes of the module.  The
+ * dependencies of a test class are the classes of the test JAR reachable from the test class and its nested classes,
+ * following the classes referenced in the constant pool and the classes named by string constants, see
+ * {@link ClassFile}.  The key of a test class is a digest of a base key, e.g. of the module path and the JVM, the
+ * resources and module descriptors of the test JAR, and the class files of its dependencies.  Changing a class
+ * therefore only changes the keys of the test classes that depend on it.</p>
+ *
+ * <p>A class loaded by reflection in other ways, e.g. by a class name computed at runtime, is not a dependency.</p>
+ */
+public class TestKeys {
+    private static final String MODULE_INFO_CLASS = "module-info.class";
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+    private TestKeys() {}
+
+    /** Returns the key of each top-level test class of the test JAR, by binary class name. */
+    public static Map<String, String> of(Pathname testJar, String baseKey) {
+        // The class files of each class by internal name, more than one for a class of a multi-release JAR.
+        Map<String, List<ClassFile>> classFiles = new HashMap<>();
+        // The class file entries of each class by internal name, and the other entries, by entry name.
+        Map<String, TreeMap<String, byte[]>> classEntries = new HashMap<>();
+        TreeMap<String, byte[]> sharedEntries = new TreeMap<>();
+
+        try (JarFile jarFile = new JarFile(testJar.file(), false)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                if (entry.isDirectory()) continue;
+                String entryName = entry.getName();
+                byte[] bytes;
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    bytes = inputStream.readAllBytes();
+                }
+                FileCounters.bytesRead(bytes.length);
+
+                boolean isClass = entryName.endsWith(".class") && !entryName.endsWith(MODULE_INFO_CLASS) &&
+                                  (!entryName.startsWith("META-INF/") || entryName.startsWith(VERSIONS_DIRECTORY));
+                if (!isClass) {
+                    // The test index is derived from the class files.
+                    if (!entryName.equals(TestIndex.PATH))
+                        sharedEntries.put(entryName, bytes);
+                    continue;
+                }
+
+                ClassFile classFile;
+                try {
+                    classFile = ClassFile.read(bytes);
+                } catch (IllegalArgumentException e) {
+                    throw new ModuleCompilerException("Failed to read " + entryName + " in " + testJar + ": " + e.getMessage());
+                }
+                classFiles.computeIfAbsent(classFile.name(), __ -> new ArrayList<>()).add(classFile);
+                classEntries.computeIfAbsent(classFile.name(), __ -> new TreeMap<>()).put(entryName, bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, String> classDigests = new HashMap<>();
+        classEntries.forEach((name, entries) -> classDigests.put(name, addEntries(new Digest(), entries).hex()));
+        String sharedKey = addEntries(new Digest().add(baseKey), sharedEntries).hex();
+
+        // The classes of each top-level test class, i.e. itself and its nested classes, by internal name.
+        Map<String, Set<String>> testClasses = new TreeMap<>();
+        for (String name : classFiles.keySet()) {
+            String topLevelName = topLevelClassName(name);
+            List<ClassFile> topLevelClassFiles = classFiles.get(topLevelName);
+            if (topLevelName.endsWith("Test") && topLevelClassFiles != null && topLevelClassFiles.get(0).isConcrete())
+                testClasses.computeIfAbsent(topLevelName, __ -> new TreeSet<>()).add(name);
+        }
+
+        Map<String, String> keys = new TreeMap<>();
+        testClasses.forEach((testClass, roots) -> {
+            Set<String> dependencies = dependencies(roots, classFiles);
+            var digest = new Digest().add(sharedKey).add(dependencies.size());
+            for (String name : dependencies)
+                digest.add(name).add(classDigests.get(name));
+            keys.put(testClass.replace('/', '.'), digest.hex());
+        });
+        return keys;
+    }
+
+    /** Returns the binary or internal name of the top-level class of a (possibly nested) class, e.g. a.B for a.B$C. */
+    public static String topLevelClassName(String className) {
+        int dollarIndex = className.indexOf('$');
+        return dollarIndex == -1 ? className : className.substring(0, dollarIndex);
+    }
+
+    /** Returns the sorted internal names of the classes reachable from the roots, including the roots. */
+    private static Set<String> dependencies(Set<String> roots, Map<String, List<ClassFile>> classFiles) {
+        Set<String> reachable = new TreeSet<>(roots);
+        Deque<String> unvisited = new ArrayDeque<>(roots);
+        while (!unvisited.isEmpty()) {
+            for (ClassFile classFile : classFiles.get(unvisited.removeFirst())) {
+                classFile.referencedClasses().forEach(referenced -> visit(referenced, classFiles, reachable, unvisited));
+                classFile.stringConstants().forEach(string -> visit(string.replace('.', '/'), classFiles, reachable, unvisited));
+            }
+        }
+        return reachable;
+    }
+
+    private static void visit(String name, Map<String, List<ClassFile>> classFiles, Set<String> reachable, Deque<String> unvisited) {
+        if (classFiles.containsKey(name) && reachable.add(name))
+            unvisited.addLast(name);
+    }
+
+    /** Adds the entries in the order of the entry names. */
+    private static Digest addEntries(Digest digest, TreeMap<String, byte[]> entries) {
+        digest.add(entries.size());
+        for (var entry : entries.entrySet()) {
+            digest.add(entry.getKey());
+            digest.addBytes(entry.getValue());
+        }
+        return digest;
+    }
+}
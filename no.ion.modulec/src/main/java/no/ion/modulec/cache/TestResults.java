@@ -0,0 +1,186 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.file.Pathname;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The results of the test classes of a module from previous test runs, used to skip the test classes that passed and
+ * whose key, see {@link TestKeys}, has not changed since.
+ *
+ * <p>The results are stored as UTF-8 text, starting with the {@link #FORMAT} line, followed by one line per top-level
+ * test class sorted by class name:</p>
+ *
+ * <pre>
+ * CLASS KEY STATUS MILLIS
+ * </pre>
+ *
+ * <p>STATUS is "ok" or "failed", and MILLIS is the time the test class took to run.  A file with a different format
+ * line, or that is otherwise invalid, is read as if there were no previous results.</p>
+ */
+public class TestResults {
+    /** Changed whenever the format of the file or the computation of the keys changes. */
+    public static final String FORMAT = "no.ion.modulec.test-results 2";
+
+    private final Map<String, Result> results = new TreeMap<>();
+
+    public record Result(String className, String key, boolean passed, long millis) {
+        public Result {
+            Objects.requireNonNull(className, "className cannot be null");
+            Objects.requireNonNull(key, "key cannot be null");
+        }
+    }
+
+    public TestResults() {}
+
+    public static TestResults readIfExists(Pathname file) {
+        var testResults = new TestResults();
+        Optional<String> content = file.readUtf8IfExists();
+        if (content.isEmpty())
+            return testResults;
+
+        String[] lines = content.get().split("\n");
+        if (!lines[0].equals(FORMAT))
+            return new TestResults();
+        for (int i = 1; i < lines.length; ++i) {
+            String[] fields = lines[i].split(" ", -1);
+            if (fields.length != 4 || !(fields[2].equals("ok") || fields[2].equals("failed")))
+                return new TestResults();
+            try {
+                testResults.put(new Result(fields[0], fields[1], fields[2].equals("ok"), Long.parseLong(fields[3])));
+            } catch (NumberFormatException e) {
+                return new TestResults();
+            }
+        }
+        return testResults;
+    }
+
+    public Optional<Result> get(String className) { return Optional.ofNullable(results.get(className)); }
+    public Collection<Result> results() { return results.values(); }
+
+    /** Returns true if the test class passed in a previous run with the same key. */
+    public boolean passed(String className, String key) {
+        Result result = results.get(className);
+        return result != null && result.passed() && result.key().equals(key);
+    }
+
+    public TestResults put(Result result) {
+        results.put(result.className(), result);
+        return this;
+    }
+
+    /**
+     * Puts the results of a test run written by the no.ion.modulec.junit runner to {@code runResultsFile}, with one
+     * line "CLASS STATUS MILLIS" per test class.  A nested test class counts toward its top-level class.  The key of
+     * each top-level class is taken from {@code keys}, and classes without a key are ignored.
+     */
+    public TestResults putRunResults(Pathname runResultsFile, Map<String, String> keys) {
+        Map<String, Result> runResults = new HashMap<>();
+        for (String line : runResultsFile.readUtf8().split("\n")) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(" ", -1);
+            if (fields.length != 3)
+                throw new IllegalArgumentException("Invalid test run result in " + runResultsFile + ": '" + line + "'");
+            String className = TestKeys.topLevelClassName(fields[0]);
+            String key = keys.get(className);
+            if (key == null) continue;
+            var result = new Result(className, key, fields[1].equals("ok"), Long.parseLong(fields[2]));
+            runResults.merge(className, result, (a, b) -> new Result(className, key, a.passed() && b.passed(), a.millis() + b.millis()));
+        }
+        runResults.values().forEach(this::put);
+        return this;
+    }
+
+    /**
+     * Returns the test classes in the order they should run to report a failure as soon as possible:  The classes
+     * that failed in their previous run, then the other classes by decreasing duration of their previous run, see
+     * {@link #millis(Collection)}, and then by name.
+     */
+    public List<String> order(Collection<String> classNames) {
+        Map<String, Long> millis = millis(classNames);
+        List<String> ordered = new ArrayList<>(classNames);
+        ordered.sort(Comparator.comparing((String className) -> get(className).map(Result::passed).orElse(true))
+                               .thenComparing(millis::get, Comparator.reverseOrder())
+                               .thenComparing(Comparator.naturalOrder()));
+        return ordered;
+    }
+
+    /**
+     * Splits the test classes into at most {@code shards} non-empty shards with about the same total duration, by
+     * the durations of the previous runs, see {@link #millis(Collection)}.  The split depends only on the classes and
+     * their previous results, and the classes of each shard are in the order of {@link #order(Collection)}.
+     */
+    public List<List<String>> partition(Collection<String> classNames, int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("shards must be at least 1: " + shards);
+
+        Map<String, Long> millis = millis(classNames);
+        // Longest processing time first:  Assign each class to the shard with the least total duration so far.
+        List<String> sorted = new ArrayList<>(millis.keySet());
+        sorted.sort(Comparator.comparing((String className) -> millis.get(className)).reversed()
+                              .thenComparing(Comparator.naturalOrder()));
+        int shardCount = Math.min(shards, sorted.size());
+        List<List<String>> partition = new ArrayList<>();
+        long[] totalMillis = new long[shardCount];
+        for (int i = 0; i < shardCount; ++i)
+            partition.add(new ArrayList<>());
+        for (String className : sorted) {
+            int shard = 0;
+            for (int i = 1; i < shardCount; ++i) {
+                if (totalMillis[i] < totalMillis[shard])
+                    shard = i;
+            }
+            partition.get(shard).add(className);
+            totalMillis[shard] += millis.get(className);
+        }
+        partition.replaceAll(this::order);
+        return partition;
+    }
+
+    /**
+     * Returns the duration of the previous run of each test class.  A class without a previous duration is assumed to
+     * take the mean duration of those with one, and every class is given at least 1 ms.
+     */
+    private Map<String, Long> millis(Collection<String> classNames) {
+        long knownMillis = 0;
+        int known = 0;
+        for (String className : classNames) {
+            Result result = results.get(className);
+            if (result != null) {
+                knownMillis += result.millis();
+                ++known;
+            }
+        }
+        long defaultMillis = known == 0 ? 1 : Math.max(1, knownMillis / known);
+        Map<String, Long> millis = new HashMap<>();
+        classNames.forEach(className -> millis.put(className, get(className).map(result -> Math.max(1, result.millis()))
+                                                                             .orElse(defaultMillis)));
+        return millis;
+    }
+
+    /** Keeps only the results of the classes with a key in {@code keys}, e.g. to forget removed test classes. */
+    public TestResults retainAll(Map<String, String> keys) {
+        results.keySet().retainAll(keys.keySet());
+        return this;
+    }
+
+    public void write(Pathname file) {
+        var content = new StringBuilder(FORMAT).append('\n');
+        for (Result result : results.values()) {
+            content.append(result.className())
+                   .append(' ').append(result.key())
+                   .append(' ').append(result.passed() ? "ok" : "failed")
+                   .append(' ').append(result.millis())
+                   .append('\n');
+        }
+        file.writeUtf8(content.toString());
+    }
+}
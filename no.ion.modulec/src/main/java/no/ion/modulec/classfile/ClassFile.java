@@ -0,0 +1,295 @@
+package no.ion.modulec.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The parts of a class file needed to find the classes it depends on, see JVMS chapter 4.
+ *
+ * <p>The referenced classes are the classes of the CONSTANT_Class entries of the constant pool, and the classes
+ * named in descriptors and signatures of any CONSTANT_Utf8 entry, e.g. of fields, methods, method types, and
+ * annotations.  The latter is a superset:  Any UTF-8 constant containing e.g. "Lfoo;" yields a class foo.  Class
+ * names are internal names, e.g. java/lang/Object.</p>
+ *
+ * <p>The methods are read with the classes of their runtime visible annotations, e.g. to find test methods.</p>
+ */
+public record ClassFile(String name, int accessFlags, Set<String> referencedClasses, Set<String> stringConstants,
+                        Set<String> attributes, List<Method> methods) {
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final Pattern CLASS_IN_DESCRIPTOR = Pattern.compile("L([^;<>\\[.:()]+)[;<]");
+
+    public ClassFile {
+        referencedClasses = Set.copyOf(referencedClasses);
+        stringConstants = Set.copyOf(stringConstants);
+        attributes = Set.copyOf(attributes);
+        methods = List.copyOf(methods);
+    }
+
+    /** A method with its name, descriptor, and the internal names of the classes of its runtime visible annotations. */
+    public record Method(String name, String descriptor, int accessFlags, Set<String> annotations) {
+        public Method {
+            annotations = Set.copyOf(annotations);
+        }
+    }
+
+    /** Whether the class is neither an interface nor abstract. */
+    public boolean isConcrete() { return (accessFlags & (ACC_INTERFACE | ACC_ABSTRACT)) == 0; }
+
+    /** Whether the class file has a class attribute with the given name, e.g. ModulePackages. */
+    public boolean hasAttribute(String name) { return attributes.contains(name); }
+
+    /** Parses the class file, throwing IllegalArgumentException if it is not a valid class file. */
+    public static ClassFile read(byte[] bytes) {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            // Only EOFException is possible with a ByteArrayInputStream.
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    private static ClassFile read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC)
+            throw new IllegalArgumentException("Not a class file: bad magic");
+        input.readUnsignedShort();  // minor_version
+        input.readUnsignedShort();  // major_version
+
+        int constantPoolCount = input.readUnsignedShort();
+        // Maps the index of a constant pool entry to the UTF-8 string, or the index of the UTF-8 string of a Class
+        // or String entry.  The index of a valid UTF-8 string is never 0.
+        String[] utf8s = new String[constantPoolCount];
+        int[] classNameIndices = new int[constantPoolCount];
+        int[] stringIndices = new int[constantPoolCount];
+        for (int index = 1; index < constantPoolCount; ++index) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8s[index] = input.readUTF();  // Utf8, in modified UTF-8 like DataInput
+                case 3, 4 -> input.skipNBytes(4);  // Integer, Float
+                case 5, 6 -> {  // Long, Double, taking two entries
+                    input.skipNBytes(8);
+                    ++index;
+                }
+                case 7 -> classNameIndices[index] = input.readUnsignedShort();  // Class
+                case 8 -> stringIndices[index] = input.readUnsignedShort();  // String
+                case 9, 10, 11, 12, 17, 18 -> input.skipNBytes(4);  // Fieldref, Methodref, InterfaceMethodref,
+                                                                     // NameAndType, Dynamic, InvokeDynamic
+                case 15 -> input.skipNBytes(3);  // MethodHandle
+                case 16, 19, 20 -> input.skipNBytes(2);  // MethodType, Module, Package
+                default -> throw new IllegalArgumentException("Invalid constant pool tag " + tag + " at index " + index);
+            }
+        }
+
+        int accessFlags = input.readUnsignedShort();
+        int thisClass = input.readUnsignedShort();
+        if (thisClass <= 0 || thisClass >= constantPoolCount || classNameIndices[thisClass] == 0)
+            throw new IllegalArgumentException("Invalid this_class index: " + thisClass);
+        String name = utf8At(utf8s, classNameIndices[thisClass]);
+        input.readUnsignedShort();  // super_class
+        input.skipNBytes(2L * input.readUnsignedShort());  // interfaces
+        int fieldsCount = input.readUnsignedShort();
+        for (int i = 0; i < fieldsCount; ++i) {
+            input.skipNBytes(6);  // access_flags, name_index, descriptor_index
+            skipAttributes(input);
+        }
+        List<Method> methods = new ArrayList<>();
+        int methodsCount = input.readUnsignedShort();
+        for (int i = 0; i < methodsCount; ++i) {
+            int methodAccessFlags = input.readUnsignedShort();
+            String methodName = utf8At(utf8s, input.readUnsignedShort());
+            String descriptor = utf8At(utf8s, input.readUnsignedShort());
+            Set<String> annotations = new HashSet<>();
+            int count = input.readUnsignedShort();
+            for (int j = 0; j < count; ++j) {
+                String attributeName = utf8At(utf8s, input.readUnsignedShort());
+                long length = Integer.toUnsignedLong(input.readInt());
+                if (attributeName.equals("RuntimeVisibleAnnotations")) {
+                    int annotationsCount = input.readUnsignedShort();
+                    for (int k = 0; k < annotationsCount; ++k)
+                        annotations.add(readAnnotation(input, utf8s));
+                } else {
+                    input.skipNBytes(length);
+                }
+            }
+            methods.add(new Method(methodName, descriptor, methodAccessFlags, annotations));
+        }
+        Set<String> attributes = new HashSet<>();
+        int attributesCount = input.readUnsignedShort();
+        for (int i = 0; i < attributesCount; ++i) {
+            attributes.add(utf8At(utf8s, input.readUnsignedShort()));
+            input.skipNBytes(Integer.toUnsignedLong(input.readInt()));
+        }
+
+        Set<String> referencedClasses = new HashSet<>();
+        for (int classNameIndex : classNameIndices) {
+            if (classNameIndex == 0) continue;
+            String className = utf8At(utf8s, classNameIndex);
+            // An array class, e.g. [Ljava/lang/String; or [I, is matched below.
+            if (!className.startsWith("["))
+                referencedClasses.add(className);
+        }
+        for (String utf8 : utf8s) {
+            if (utf8 == null) continue;
+            for (Matcher matcher = CLASS_IN_DESCRIPTOR.matcher(utf8); matcher.find();)
+                referencedClasses.add(matcher.group(1));
+        }
+        referencedClasses.remove(name);
+
+        Set<String> stringConstants = new HashSet<>();
+        for (int stringIndex : stringIndices) {
+            if (stringIndex != 0)
+                stringConstants.add(utf8At(utf8s, stringIndex));
+        }
+
+        return new ClassFile(name, accessFlags, referencedClasses, stringConstants, attributes, methods);
+    }
+
+    /**
+     * Returns a copy of the module-info.class with the module version set to {@code version}, throwing
+     * IllegalArgumentException if it is not a valid module-info.class.  The version is added as a new CONSTANT_Utf8 at
+     * the end of the constant pool, so no other index changes.
+     */
+    public static byte[] withModuleVersion(byte[] moduleInfo, String version) {
+        ByteBuffer buffer = ByteBuffer.wrap(moduleInfo);
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a class file: bad magic");
+            buffer.position(8);
+            int constantPoolCount = Short.toUnsignedInt(buffer.getShort());
+            // The index of the CONSTANT_Utf8 "Module", or 0.
+            int moduleUtf8Index = 0;
+            byte[] moduleUtf8 = "Module".getBytes(StandardCharsets.UTF_8);
+            for (int index = 1; index < constantPoolCount; ++index) {
+                int tag = Byte.toUnsignedInt(buffer.get());
+                switch (tag) {
+                    case 1 -> {
+                        byte[] utf8 = new byte[Short.toUnsignedInt(buffer.getShort())];
+                        buffer.get(utf8);
+                        if (Arrays.equals(utf8, moduleUtf8))
+                            moduleUtf8Index = index;
+                    }
+                    case 3, 4 -> skip(buffer, 4);
+                    case 5, 6 -> {
+                        skip(buffer, 8);
+                        ++index;
+                    }
+                    case 7, 8, 16, 19, 20 -> skip(buffer, 2);
+                    case 9, 10, 11, 12, 17, 18 -> skip(buffer, 4);
+                    case 15 -> skip(buffer, 3);
+                    default -> throw new IllegalArgumentException("Invalid constant pool tag " + tag + " at index " + index);
+                }
+            }
+            int constantPoolEnd = buffer.position();
+
+            skip(buffer, 6);  // access_flags, this_class, super_class
+            skip(buffer, 2 * Short.toUnsignedInt(buffer.getShort()));  // interfaces
+            for (int member = 0; member < 2; ++member) {  // fields and methods
+                int count = Short.toUnsignedInt(buffer.getShort());
+                for (int i = 0; i < count; ++i) {
+                    skip(buffer, 6);
+                    int attributesCount = Short.toUnsignedInt(buffer.getShort());
+                    for (int j = 0; j < attributesCount; ++j) {
+                        skip(buffer, 2);
+                        skip(buffer, buffer.getInt());
+                    }
+                }
+            }
+            // The offset of module_version_index in the Module attribute, after module_name_index and module_flags.
+            int versionIndexOffset = -1;
+            int attributesCount = Short.toUnsignedInt(buffer.getShort());
+            for (int i = 0; i < attributesCount; ++i) {
+                int nameIndex = Short.toUnsignedInt(buffer.getShort());
+                int length = buffer.getInt();
+                if (nameIndex != 0 && nameIndex == moduleUtf8Index)
+                    versionIndexOffset = buffer.position() + 4;
+                skip(buffer, length);
+            }
+            if (versionIndexOffset == -1)
+                throw new IllegalArgumentException("Not a module-info.class: no Module attribute");
+
+            var versionUtf8 = new ByteArrayOutputStream();
+            try (var output = new DataOutputStream(versionUtf8)) {
+                output.writeByte(1);
+                output.writeUTF(version);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            byte[] versionEntry = versionUtf8.toByteArray();
+
+            ByteBuffer result = ByteBuffer.allocate(moduleInfo.length + versionEntry.length);
+            result.put(moduleInfo, 0, 8)
+                  .putShort((short) (constantPoolCount + 1))
+                  .put(moduleInfo, 10, constantPoolEnd - 10)
+                  .put(versionEntry)
+                  .put(moduleInfo, constantPoolEnd, moduleInfo.length - constantPoolEnd)
+                  .putShort(versionIndexOffset + versionEntry.length, (short) constantPoolCount);
+            return result.array();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int length) {
+        if (length < 0)
+            throw new IllegalArgumentException("Invalid length: " + Integer.toUnsignedString(length));
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String utf8At(String[] utf8s, int index) {
+        if (index <= 0 || index >= utf8s.length || utf8s[index] == null)
+            throw new IllegalArgumentException("Invalid CONSTANT_Utf8 index: " + index);
+        return utf8s[index];
+    }
+
+    /** Reads an annotation, returning the internal name of its class, e.g. org/junit/jupiter/api/Test. */
+    private static String readAnnotation(DataInputStream input, String[] utf8s) throws IOException {
+        String type = utf8At(utf8s, input.readUnsignedShort());
+        if (type.length() < 3 || type.charAt(0) != 'L' || !type.endsWith(";"))
+            throw new IllegalArgumentException("Invalid annotation type: " + type);
+        int pairs = input.readUnsignedShort();
+        for (int i = 0; i < pairs; ++i) {
+            input.skipNBytes(2);  // element_name_index
+            skipElementValue(input, utf8s);
+        }
+        return type.substring(1, type.length() - 1);
+    }
+
+    private static void skipElementValue(DataInputStream input, String[] utf8s) throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> input.skipNBytes(2);
+            case 'e' -> input.skipNBytes(4);  // type_name_index, const_name_index
+            case '@' -> readAnnotation(input, utf8s);
+            case '[' -> {
+                int values = input.readUnsignedShort();
+                for (int i = 0; i < values; ++i)
+                    skipElementValue(input, utf8s);
+            }
+            default -> throw new IllegalArgumentException("Invalid element value tag " + tag);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream input) throws IOException {
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; ++i) {
+            input.skipNBytes(2);  // attribute_name_index
+            input.skipNBytes(Integer.toUnsignedLong(input.readInt()));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package no.ion.modulec.compiler;
+
+/**
+ * Retains the first part of compiler output that is otherwise streamed, e.g. for the message of an exception, with a
+ * bound on the number of characters retained.
+ */
+public class RetainedOutput {
+    /** The default maximum number of characters to retain. */
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+
+    private final int maxChars;
+    private final StringBuilder buffer = new StringBuilder();
+    private int droppedLines = 0;
+
+    public RetainedOutput() { this(DEFAULT_MAX_CHARS); }
+
+    public RetainedOutput(int maxChars) {
+        if (maxChars < 0)
+            throw new IllegalArgumentException("maxChars cannot be negative: " + maxChars);
+        this.maxChars = maxChars;
+    }
+
+    /** Retain the text if there is room for all of it, otherwise drop it. */
+    public synchronized void append(String text) {
+        if (droppedLines == 0 && buffer.length() + text.length() <= maxChars) {
+            buffer.append(text);
+        } else {
+            droppedLines += (int) Math.max(1, text.lines().count());
+        }
+    }
+
+    public synchronized int droppedLines() { return droppedLines; }
+
+    /** The retained text, followed by a note on the number of dropped lines, if any. */
+    @Override
+    public synchronized String toString() {
+        if (droppedLines == 0)
+            return buffer.toString();
+        return buffer + "[" + droppedLines + " more lines not retained]\n";
+    }
+}
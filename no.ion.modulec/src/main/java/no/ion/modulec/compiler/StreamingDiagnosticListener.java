@@ -0,0 +1,68 @@
+package no.ion.modulec.compiler;
+
+import no.ion.modulec.MessageSink;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * A diagnostic listener that logs each diagnostic as soon as the compiler reports it, instead of collecting all
+ * diagnostics until the compilation has completed.  Only a bounded part of the diagnostics is retained, for the
+ * message of the compilation result.
+ */
+public class StreamingDiagnosticListener implements DiagnosticListener<JavaFileObject> {
+    private final MessageSink log;
+    private final Locale locale;
+    private final RetainedOutput retained;
+
+    private int errors = 0;
+    private int warnings = 0;
+
+    public StreamingDiagnosticListener(MessageSink log, Locale locale, RetainedOutput retained) {
+        this.log = Objects.requireNonNull(log, "log cannot be null");
+        this.locale = locale;
+        this.retained = Objects.requireNonNull(retained, "retained cannot be null");
+    }
+
+    @Override
+    public synchronized void report(javax.tools.Diagnostic<? extends JavaFileObject> diagnostic) {
+        Diagnostic converted = new Diagnostic(diagnostic.getKind(),
+                                              Optional.ofNullable(diagnostic.getSource()),
+                                              positionOf(diagnostic.getPosition()),
+                                              positionOf(diagnostic.getStartPosition()),
+                                              positionOf(diagnostic.getEndPosition()),
+                                              positionOf(diagnostic.getLineNumber()),
+                                              positionOf(diagnostic.getColumnNumber()),
+                                              Optional.ofNullable(diagnostic.getCode()),
+                                              diagnostic.getMessage(locale));
+        switch (converted.kind()) {
+            case ERROR -> errors++;
+            case WARNING, MANDATORY_WARNING -> warnings++;
+        }
+
+        var buffer = new StringBuilder();
+        CompilationResult.appendDiagnostic(buffer, converted);
+        String text = buffer.toString();
+        log.info(text);
+        retained.append(text);
+    }
+
+    public synchronized int errors() { return errors; }
+    public synchronized int warnings() { return warnings; }
+
+    /** Logs and returns the summary of the number of errors and warnings, like javac does at the end. */
+    public synchronized String logSummary() {
+        String summary = CompilationResult.makeSummary(errors, warnings);
+        if (!summary.isEmpty())
+            log.info(summary);
+        return summary;
+    }
+
+    private static OptionalLong positionOf(long position) {
+        return position == javax.tools.Diagnostic.NOPOS ? OptionalLong.empty() : OptionalLong.of(position);
+    }
+}
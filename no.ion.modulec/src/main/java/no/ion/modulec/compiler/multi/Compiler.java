@@ -1,20 +1,23 @@
 package no.ion.modulec.compiler.multi;
 
+import no.ion.modulec.MessageSink;
 import no.ion.modulec.ModuleCompilerException;
 import no.ion.modulec.compiler.CompilationResult;
-import no.ion.modulec.compiler.Diagnostic;
 import no.ion.modulec.compiler.Release;
+import no.ion.modulec.compiler.RetainedOutput;
+import no.ion.modulec.compiler.StreamingDiagnosticListener;
 import no.ion.modulec.file.BasicAttributes;
 import no.ion.modulec.file.Pathname;
 import no.ion.modulec.file.SourceDirectory;
 import no.ion.modulec.file.TemporaryDirectory;
+import no.ion.modulec.modco.ProgramContext;
 
-import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
+import java.io.File;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.nio.file.NotDirectoryException;
@@ -22,8 +25,8 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.OptionalLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -34,20 +37,28 @@ public class Compiler {
     private static final String OWNER_FILENAME = "owner";
     private static final String OWNER_MAGIC = "no.ion.modulec";
 
+    private final MessageSink log;
     private final JavaCompiler compiler;
 
-    public Compiler() { this.compiler = getSystemJavaCompiler(); }
+    public Compiler() { this(new ProgramContext().log()); }
+
+    /** The diagnostics and errors of the compilations are logged to log as they are reported. */
+    public Compiler(MessageSink log) {
+        this.log = Objects.requireNonNull(log, "log cannot be null");
+        this.compiler = getSystemJavaCompiler();
+    }
 
     public CompilationResult compile(MultiModuleCompilationAndPackaging compilation) {
         long startNanos = System.nanoTime();
 
-        var collector = new DiagnosticCollector<JavaFileObject>();
+        var retained = new RetainedOutput();
+        var listener = new StreamingDiagnosticListener(log, compilation.locale(), retained);
         var writer = new StringWriter();
         boolean success;
         RuntimeException exception = null;
         var sourcePaths = new ArrayList<Path>();
 
-        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(collector, compilation.locale(), compilation.charset());
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(listener, compilation.locale(), compilation.charset());
         try {
             try (BuildDirectory buildDirectory = resolveBuildDirectory(compilation.buildDirectory().orElse(null))) {
                 compilation.setBuildDirectory(buildDirectory.directory().path());
@@ -64,17 +75,17 @@ public class Compiler {
 
                     int nModules = compilation.modules().size();
                     if (nModules == 0)
-                        return CompilationResult.ofError(startNanos, "error: no modules\n");
+                        return error(startNanos, "error: no modules\n");
                     var moduleNames = new HashSet<String>(nModules);
                     for (var module : compilation.modules()) {
                         List<Path> sourceDirectories = module.sourceDirectories();
                         if (sourceDirectories.isEmpty())
-                            return CompilationResult.ofError(startNanos, "error: no source directories" +
+                            return error(startNanos, "error: no source directories" +
                                     module.name().map(n -> " for module " + n).orElse("") + "\n");
 
                         List<Path> moduleSourcePaths = sourceFiles(sourceDirectories);
                         if (moduleSourcePaths.isEmpty())
-                            return CompilationResult.ofError(startNanos, "error: no source files found in " +
+                            return error(startNanos, "error: no source files found in " +
                                     (sourceDirectories.size() == 1 ?
                                             sourceDirectories.get(0) :
                                             sourceDirectories) + "\n");
@@ -83,7 +94,7 @@ public class Compiler {
 
                         String moduleName = resolveModuleName(module.name().orElse(null), module.sourceDirectories(), compilation.release());
                         if (!moduleNames.add(moduleName))
-                            return CompilationResult.ofError(startNanos, "error: module added twice: " + moduleName + "\n");
+                            return error(startNanos, "error: module added twice: " + moduleName + "\n");
                         module.setName(moduleName);
 
                         uncheckIO(() -> standardFileManager.setLocationForModule(StandardLocation.MODULE_SOURCE_PATH, moduleName, module.sourceDirectories()));
@@ -119,7 +130,7 @@ public class Compiler {
                     // TODO: Enable dependency generation. Append file=foo?
                     // options.add("--debug=completionDeps=source,class");
 
-                    JavaCompiler.CompilationTask task = compiler.getTask(writer, standardFileManager, collector, options, null, compilationUnits);
+                    JavaCompiler.CompilationTask task = compiler.getTask(writer, standardFileManager, listener, options, null, compilationUnits);
 
                     try {
                         success = task.call();
@@ -144,23 +155,95 @@ public class Compiler {
             uncheckIO(standardFileManager::close);
         }
 
-        List<Diagnostic> diagnostics = collector
-                .getDiagnostics()
-                .stream()
-                .map(diagnostic -> new Diagnostic(
-                        diagnostic.getKind(),
-                        Optional.ofNullable(diagnostic.getSource()),
-                        positionOf(diagnostic.getPosition()),
-                        positionOf(diagnostic.getStartPosition()),
-                        positionOf(diagnostic.getEndPosition()),
-                        positionOf(diagnostic.getLineNumber()),
-                        positionOf(diagnostic.getColumnNumber()),
-                        Optional.ofNullable(diagnostic.getCode()),
-                        diagnostic.getMessage(compilation.locale())))
-                .collect(Collectors.toList());
+        return CompilationResult.of(success, sourcePaths.size(), startNanos, messageOf(listener, retained, writer, exception), null);
+    }
+
+    /**
+     * Compiles the test sources of a module, which must have been compiled and packaged, to the class directory.  The
+     * test sources patch the module in its modular JAR, and the module path must contain the modules the tests depend
+     * on, e.g. the other modules of the compilation it depends on, and JUnit.  May be called concurrently.
+     */
+    public CompilationResult compileTests(MultiModuleCompilationAndPackaging compilation, ModuleCompilationAndPackaging module,
+                                          List<Path> modulePath, Pathname classDirectory) {
+        long startNanos = System.nanoTime();
+        String moduleName = module.name().orElseThrow();
+        List<Path> sourcePaths = sourceFiles(module.testSourceDirectories());
+        if (sourcePaths.isEmpty())
+            return error(startNanos, "error: no test source files found in " + module.testSourceDirectories() + "\n");
+        // Without a module-info.java the test sources would be compiled in the unnamed module, failing with a
+        // "cannot find symbol" for each reference to the module.
+        if (module.testSourceDirectories().stream().noneMatch(directory -> Pathname.of(directory).resolve("module-info.java").isFile()))
+            return error(startNanos, "error: no module-info.java for module " + moduleName +
+                                     " found in the test source directories " + module.testSourceDirectories() + "\n");
+
+        var retained = new RetainedOutput();
+        var listener = new StreamingDiagnosticListener(log, compilation.locale(), retained);
+        var writer = new StringWriter();
+        boolean success;
+        RuntimeException exception = null;
+
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(listener, compilation.locale(), compilation.charset());
+        try {
+            classDirectory.makeDirectories();
+            var options = new ArrayList<String>(compilation.options());
+            if (!compilation.release().matchesJreVersion()) {
+                options.add("--release");
+                options.add(Integer.toString(compilation.release().releaseInt()));
+            }
+            options.add("-implicit:none");
+            options.add("-d");
+            options.add(classDirectory.toString());
+            if (!modulePath.isEmpty()) {
+                options.add("--module-path");
+                options.add(modulePath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)));
+            }
+            options.add("--patch-module");
+            options.add(moduleName + "=" + module.jarPath().orElseThrow());
+            module.version().ifPresent(version -> {
+                options.add("--module-version");
+                options.add(version.toString());
+            });
+
+            Iterable<? extends JavaFileObject> compilationUnits = standardFileManager.getJavaFileObjectsFromPaths(sourcePaths);
+            try {
+                JavaCompiler.CompilationTask task = compiler.getTask(writer, standardFileManager, listener, options, null, compilationUnits);
+                success = task.call();
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                success = false;
+                exception = e;
+            }
+        } finally {
+            uncheckIO(standardFileManager::close);
+        }
+
+        return CompilationResult.of(success, sourcePaths.size(), startNanos, messageOf(listener, retained, writer, exception),
+                                    classDirectory.path());
+    }
+
+    /** Logs the error, like the diagnostics, and returns the failed result. */
+    private CompilationResult error(long startNanos, String message) {
+        log.info(message);
+        return CompilationResult.ofError(startNanos, message);
+    }
+
+    /**
+     * Logs the summary of the diagnostics, the other output of javac, and the message of the exception, if any, and
+     * returns the message of the compilation:  The retained part of the diagnostics, which have already been logged,
+     * followed by the summary and the other output, or the exception message.
+     */
+    private String messageOf(StreamingDiagnosticListener listener, RetainedOutput retained, StringWriter writer,
+                             RuntimeException exception) {
+        if (exception != null) {
+            String message = exception.getMessage();
+            log.infoLine("javac: " + message);
+            return message;
+        }
 
+        String summary = listener.logSummary();
         String out = writer.toString();
-        return  CompilationResult.of(success, sourcePaths.size(), startNanos, diagnostics, out, null, exception);
+        if (!out.isEmpty())
+            log.info(out);
+        return retained + summary + out;
     }
 
     private static List<Path> sourceFiles(List<Path> sourceDirectories) {
@@ -265,8 +348,4 @@ public class Compiler {
             throw new ModuleCompilerException("No system Java compiler was found");
         return systemJavaCompiler;
     }
-
-    private static OptionalLong positionOf(long position) {
-        return position == javax.tools.Diagnostic.NOPOS ? OptionalLong.empty() : OptionalLong.of(position);
-    }
 }
@@ -26,6 +26,8 @@ public class ModuleCompilationAndPackaging {
     private ModuleDescriptor.Version version = null;
     private Path classOutputDirectory = null;
     private final List<Resource> resources = new ArrayList<>();
+    private final List<Path> testSourceDirectories = new ArrayList<>();
+    private final List<Path> testResourceDirectories = new ArrayList<>();
     /** null means JAR includes default manifest, empty means no manifest, otherwise path to manifest. */
     private Optional<Path> manifest = null;
     private String mainClass = null;
@@ -76,6 +78,23 @@ public class ModuleCompilationAndPackaging {
         return this;
     }
 
+    /**
+     * Add directories of JUnit 5 test sources, including a module-info.java of the module for the tests.  The tests
+     * are compiled against the modular JAR, and packaged with it into a test JAR that is run with the
+     * no.ion.modulec.junit test runner, which must be on the module path.
+     */
+    public ModuleCompilationAndPackaging addTestSourceDirectories(List<Path> testSourceDirectories) {
+        requireNonNull(testSourceDirectories, "testSourceDirectories cannot be null");
+        this.testSourceDirectories.addAll(testSourceDirectories);
+        return this;
+    }
+
+    /** Include the files of the directory at the root of the test JAR. */
+    public ModuleCompilationAndPackaging addTestResources(Path testResourceDirectory) {
+        this.testResourceDirectories.add(requireNonNull(testResourceDirectory, "testResourceDirectory cannot be null"));
+        return this;
+    }
+
     public ModuleCompilationAndPackaging addManifest(Path manifest) {
         this.manifest = Optional.ofNullable(manifest);
         return this;
@@ -103,6 +122,8 @@ public class ModuleCompilationAndPackaging {
     public Optional<Path> manifest() { return manifest; }
     public Optional<String> mainClass() { return Optional.ofNullable(mainClass); }
     public Optional<Path> jarPath() { return Optional.ofNullable(jarPath); }
+    public List<Path> testSourceDirectories() { return testSourceDirectories; }
+    public List<Path> testResourceDirectories() { return testResourceDirectories; }
 
     /** Must be called after compilation. */
     public ModuleCompilationAndPackaging resolveJarFile() {
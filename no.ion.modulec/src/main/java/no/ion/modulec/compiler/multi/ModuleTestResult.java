@@ -0,0 +1,10 @@
+package no.ion.modulec.compiler.multi;
+
+import java.util.Objects;
+
+/** The result of compiling, packaging, and running the tests of a module, with the output of the failing step. */
+public record ModuleTestResult(boolean success, String out) {
+    public ModuleTestResult {
+        Objects.requireNonNull(out, "out cannot be null");
+    }
+}
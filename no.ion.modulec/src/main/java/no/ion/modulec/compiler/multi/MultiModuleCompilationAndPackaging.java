@@ -27,6 +27,7 @@ public class MultiModuleCompilationAndPackaging {
     private ModulePath modulePath = new ModulePath();
     private final List<String> options = new ArrayList<>();
     private Path buildDirectory = null;
+    private int workers = Runtime.getRuntime().availableProcessors();
 
     public MultiModuleCompilationAndPackaging(Release release) {
         this.release = Objects.requireNonNull(release, "release cannot be null");
@@ -72,6 +73,17 @@ public class MultiModuleCompilationAndPackaging {
         return this;
     }
 
+    /**
+     * The maximum number of modules packaged and tested concurrently, by default the number of processors.  The tests
+     * of a module are run as soon as the modular JARs of it and the modules it depends on are packaged.
+     */
+    public MultiModuleCompilationAndPackaging setWorkers(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers must be at least 1: " + workers);
+        this.workers = workers;
+        return this;
+    }
+
     public Release release() { return release; }
     public Locale locale() { return locale; }
     public Charset charset() { return charset; }
@@ -79,6 +91,7 @@ public class MultiModuleCompilationAndPackaging {
     public ModulePath modulePath() { return modulePath; }
     public List<String> options() { return List.copyOf(options); }
     public Optional<Path> buildDirectory() { return Optional.ofNullable(buildDirectory); }
+    public int workers() { return workers; }
 
     @Override
     public String toString() {
@@ -90,6 +103,7 @@ public class MultiModuleCompilationAndPackaging {
                ", modulePath=" + modulePath +
                ", options=" + options +
                ", buildDirectory=" + buildDirectory +
+               ", workers=" + workers +
                '}';
     }
 }
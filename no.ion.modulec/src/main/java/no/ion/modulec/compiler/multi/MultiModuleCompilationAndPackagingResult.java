@@ -5,5 +5,10 @@ import no.ion.modulec.jar.PackagingResult;
 
 import java.util.Map;
 
-public record MultiModuleCompilationAndPackagingResult(CompilationResult cResult, Map<String, PackagingResult> pResults) {
+/** The result of the compilation, and the results of the packaging and of the tests of each module by module name. */
+public record MultiModuleCompilationAndPackagingResult(CompilationResult cResult, Map<String, PackagingResult> pResults,
+                                                       Map<String, ModuleTestResult> tResults) {
+    public MultiModuleCompilationAndPackagingResult(CompilationResult cResult, Map<String, PackagingResult> pResults) {
+        this(cResult, pResults, Map.of());
+    }
 }
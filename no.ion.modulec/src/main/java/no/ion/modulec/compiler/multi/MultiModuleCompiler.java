@@ -1,41 +1,230 @@
 package no.ion.modulec.compiler.multi;
 
+import no.ion.jhms.HybridModuleContainer;
+import no.ion.modulec.Context;
+import no.ion.modulec.ModuleCompilerException;
 import no.ion.modulec.compiler.CompilationResult;
+import no.ion.modulec.file.Pathname;
 import no.ion.modulec.jar.Jar;
 import no.ion.modulec.jar.ModulePackaging;
 import no.ion.modulec.jar.PackagingResult;
+import no.ion.modulec.jar.TestIndex;
 import no.ion.modulec.modco.ProgramContext;
 
+import java.io.File;
+import java.io.InputStream;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
+import static no.ion.modulec.util.Exceptions.uncheckInterrupted;
+import static no.ion.modulec.util.Exceptions.uncheckURISyntax;
 
 public class MultiModuleCompiler {
-    private final Compiler compiler = new Compiler();
-    private final Jar jar = new Jar(new ProgramContext());
+    private static final String TEST_RUNNER_MODULE = "no.ion.modulec.junit";
+
+    private final Compiler compiler;
+    private final Jar jar;
 
+    public MultiModuleCompiler() { this(new ProgramContext()); }
+
+    /** The diagnostics of the compilations, and the jar commands, are logged to the log of the context. */
+    public MultiModuleCompiler(Context context) {
+        this.compiler = new Compiler(context.log());
+        this.jar = new Jar(context);
+    }
+
+    /**
+     * Compiles the modules, and then packages each module and runs its tests, if any, on {@link
+     * MultiModuleCompilationAndPackaging#workers()} threads.  Each module is packaged as soon as possible, and its
+     * tests are run as soon as it and the modules of the compilation it depends on, directly or indirectly, have been
+     * packaged.
+     */
     public MultiModuleCompilationAndPackagingResult make(MultiModuleCompilationAndPackaging job) {
+        boolean temporaryBuildDirectory = job.buildDirectory().isEmpty();
         CompilationResult cResult = compiler.compile(job);
         if (!cResult.success())
             return new MultiModuleCompilationAndPackagingResult(cResult, Map.of());
 
-        var pResults = new TreeMap<String, PackagingResult>();
+        Map<String, ModuleCompilationAndPackaging> modules = new TreeMap<>();
+        job.modules().forEach(module -> modules.put(module.name().orElseThrow(), module));
+        Map<String, Set<String>> dependencies = dependenciesWithinJob(modules);
+
+        // The compiler deletes a temporary build directory, so the tests need a temporary directory of their own.
+        Pathname testDirectory = temporaryBuildDirectory ?
+                Pathname.makeTmpdir(MultiModuleCompiler.class.getName() + ".", "", null).directory() :
+                Pathname.of(job.buildDirectory().orElseThrow());
+
+        ExecutorService executor = Executors.newFixedThreadPool(job.workers());
+        try {
+            var packagings = new HashMap<String, CompletableFuture<PackagingResult>>();
+            modules.forEach((name, module) -> packagings.put(name, CompletableFuture.supplyAsync(() -> pack(module), executor)));
+
+            var tests = new HashMap<String, CompletableFuture<ModuleTestResult>>();
+            modules.forEach((name, module) -> {
+                if (module.testSourceDirectories().isEmpty()) return;
+                List<String> required = new ArrayList<>(dependencies.get(name));
+                required.add(name);
+                CompletableFuture<?>[] requiredPackagings = required.stream().map(packagings::get).toArray(CompletableFuture[]::new);
+                tests.put(name, CompletableFuture.allOf(requiredPackagings).thenApplyAsync(__ -> {
+                    List<String> failed = required.stream().filter(dependency -> !packagings.get(dependency).join().success()).toList();
+                    if (!failed.isEmpty())
+                        return new ModuleTestResult(false, "Not testing " + name + ": Failed to package " +
+                                                           String.join(", ", failed) + "\n");
+                    List<Path> dependencyJars = dependencies.get(name)
+                                                            .stream()
+                                                            .map(dependency -> modules.get(dependency).jarPath().orElseThrow())
+                                                            .toList();
+                    return test(job, module, dependencyJars, testDirectory.resolve(name).resolve("test"));
+                }, executor));
+            });
+
+            var pResults = new TreeMap<String, PackagingResult>();
+            packagings.forEach((name, future) -> pResults.put(name, join(future)));
+            var tResults = new TreeMap<String, ModuleTestResult>();
+            tests.forEach((name, future) -> tResults.put(name, join(future)));
+            return new MultiModuleCompilationAndPackagingResult(cResult, pResults, tResults);
+        } finally {
+            executor.shutdownNow();
+            if (temporaryBuildDirectory)
+                testDirectory.deleteRecursively();
+        }
+    }
+
+    private PackagingResult pack(ModuleCompilationAndPackaging module) {
+        module.resolveJarFile();
+        var modulePackaging = ModulePackaging.forCreatingJar(module.jarPath().orElseThrow());
+        module.version().ifPresent(modulePackaging::setVersion);
+        modulePackaging.addFiles(module.classOutputDirectory().orElseThrow(), null);
+        for (ModuleCompilationAndPackaging.Resource resource : module.resources()) {
+            modulePackaging.addFiles(resource.rootDirectory(), resource.toInclude());
+        }
+        if (module.manifest() != null)
+            modulePackaging.setManifest(module.manifest().orElse(null));
+        module.mainClass().ifPresent(modulePackaging::setMainClass);
+        return jar.pack(modulePackaging);
+    }
 
-        // TODO: Parallelize this
-        for (ModuleCompilationAndPackaging module : job.modules()) {
-            module.resolveJarFile();
-            var modulePackaging = ModulePackaging.forCreatingJar(module.jarPath().orElseThrow());
-            module.version().ifPresent(modulePackaging::setVersion);
-            modulePackaging.addFiles(module.classOutputDirectory().orElseThrow(), null);
-            for (ModuleCompilationAndPackaging.Resource resource : module.resources()) {
-                modulePackaging.addFiles(resource.rootDirectory(), resource.toInclude());
+    /**
+     * Compiles the tests of a packaged module, packages them with the modular JAR into a test JAR, and runs the test
+     * JAR with the no.ion.modulec.junit runner in a java process of its own, to run the tests of the modules in
+     * isolation from each other and to capture the output of each module.
+     */
+    private ModuleTestResult test(MultiModuleCompilationAndPackaging job, ModuleCompilationAndPackaging module,
+                                  List<Path> dependencyJars, Pathname directory) {
+        String name = module.name().orElseThrow();
+        Pathname moduleJar = Pathname.of(module.jarPath().orElseThrow());
+        Pathname classDirectory = directory.resolve("classes");
+        Pathname indexDirectory = directory.resolve("index");
+        Pathname testJar = directory.resolve(moduleJar.filename());
+        Pathname outputFile = directory.resolve("test-output");
+        classDirectory.deleteRecursively();
+        indexDirectory.deleteRecursively();
+
+        List<Path> modulePath = new ArrayList<>(job.modulePath().toPaths());
+        modulePath.addAll(dependencyJars);
+        CompilationResult compilation = compiler.compileTests(job, module, modulePath, classDirectory);
+        if (!compilation.success()) {
+            // The diagnostics have already been logged.
+            return new ModuleTestResult(false, "Failed to compile the tests of " + name + "\n");
+        }
+
+        Pathname indexFile = indexDirectory.resolve(TestIndex.PATH).makeParentDirectories();
+        uncheckIO(() -> Files.write(indexFile.path(), TestIndex.of(classDirectory).toUtf8()));
+        moduleJar.copyTo(testJar, StandardCopyOption.REPLACE_EXISTING);
+        var testPackaging = ModulePackaging.forUpdatingJar(testJar.path())
+                                           .addDirectoryTree(classDirectory.path())
+                                           .addDirectoryTree(indexDirectory.path());
+        module.testResourceDirectories().forEach(testPackaging::addDirectoryTree);
+        PackagingResult packaging = jar.pack(testPackaging);
+        if (!packaging.success())
+            return new ModuleTestResult(false, packaging.out());
+
+        modulePath.add(testJar.path());
+        String java = Pathname.of(testJar.fileSystem(), System.getProperty("java.home")).resolve("bin/java").toString();
+        List<String> command = List.of(java, "-cp", jhmsJar().toString(), "no.ion.jhms.Main",
+                                       "-p", modulePath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)),
+                                       "-c", name, "-m", TEST_RUNNER_MODULE, testJar.toString());
+        Process process = uncheckIO(() -> new ProcessBuilder(command)
+                .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                .redirectErrorStream(true)
+                .redirectOutput(outputFile.file())
+                .start());
+        try {
+            int exitCode = uncheckInterrupted(() -> process.waitFor());
+            return new ModuleTestResult(exitCode == 0, outputFile.readUtf8());
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+                uncheckInterrupted(() -> { process.waitFor(); });
             }
-            if (module.manifest() != null)
-                modulePackaging.setManifest(module.manifest().orElse(null));
-            module.mainClass().ifPresent(modulePackaging::setMainClass);
-            PackagingResult pResult = jar.pack(modulePackaging);
-            pResults.put(module.name().orElseThrow(), pResult);
+            outputFile.delete();
         }
+    }
+
+    /** Returns the modules of the job each module depends on, directly or indirectly, by module name. */
+    private static Map<String, Set<String>> dependenciesWithinJob(Map<String, ModuleCompilationAndPackaging> modules) {
+        Map<String, Set<String>> directDependencies = new HashMap<>();
+        modules.forEach((name, module) -> {
+            Pathname moduleInfo = Pathname.of(module.classOutputDirectory().orElseThrow()).resolve("module-info.class");
+            ModuleDescriptor descriptor;
+            try (InputStream inputStream = moduleInfo.newInputStream()) {
+                descriptor = ModuleDescriptor.read(inputStream);
+            } catch (Exception e) {
+                throw new ModuleCompilerException("Failed to read the module descriptor " + moduleInfo + ": " + e.getMessage());
+            }
+            directDependencies.put(name, descriptor.requires()
+                                                   .stream()
+                                                   .map(ModuleDescriptor.Requires::name)
+                                                   .filter(modules::containsKey)
+                                                   .collect(Collectors.toSet()));
+        });
 
-        return new MultiModuleCompilationAndPackagingResult(cResult, pResults);
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        directDependencies.forEach((name, direct) -> {
+            Set<String> reachable = new TreeSet<>();
+            Deque<String> unvisited = new ArrayDeque<>(direct);
+            while (!unvisited.isEmpty()) {
+                String dependency = unvisited.removeFirst();
+                if (reachable.add(dependency))
+                    unvisited.addAll(directDependencies.get(dependency));
+            }
+            dependencies.put(name, reachable);
+        });
+        return dependencies;
+    }
+
+    private static Pathname jhmsJar() {
+        return Optional.ofNullable(HybridModuleContainer.class.getProtectionDomain().getCodeSource())
+                       .map(codeSource -> uncheckURISyntax(() -> Pathname.of(Path.of(codeSource.getLocation().toURI()))))
+                       .filter(Pathname::isFile)
+                       .orElseThrow(() -> new ModuleCompilerException("Failed to find the no.ion.jhms JAR to run the tests"));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw e;
+        }
     }
 }
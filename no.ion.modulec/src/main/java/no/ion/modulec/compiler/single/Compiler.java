@@ -4,15 +4,18 @@ import no.ion.modulec.Context;
 import no.ion.modulec.ModuleCompilerException;
 import no.ion.modulec.UserErrorException;
 import no.ion.modulec.compiler.CompilationResult;
-import no.ion.modulec.compiler.Diagnostic;
 import no.ion.modulec.compiler.ModulePath;
 import no.ion.modulec.compiler.Release;
+import no.ion.modulec.compiler.RetainedOutput;
+import no.ion.modulec.compiler.StreamingDiagnosticListener;
 import no.ion.modulec.file.BasicAttributes;
+import no.ion.modulec.file.FileStates;
 import no.ion.modulec.file.Pathname;
 import no.ion.modulec.file.SourceDirectory;
+import no.ion.modulec.report.BuildEvents;
+import no.ion.modulec.report.BuildReport;
 
 import javax.lang.model.SourceVersion;
-import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
@@ -22,24 +25,29 @@ import java.io.StringWriter;
 import java.lang.module.ModuleDescriptor;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.OptionalLong;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static no.ion.modulec.util.Exceptions.uncheckIO;
 
 class Compiler {
     private final Context context;
     private final JavaCompiler javaCompiler;
+    private final Map<Pathname, UpToDate> upToDateClassDirectories = new HashMap<>();
+    private FileStates fileStates = null;
 
     Compiler(Context context) {
         this.context = context;
@@ -61,6 +69,9 @@ class Compiler {
         private List<Pathname> sourceDirectories = null;
         private Optional<ModuleDescriptor.Version> version = Optional.empty();
         private Optional<String> warnings = Optional.of("all");
+        // Not part of equals() and hashCode()
+        private BuildReport report = new BuildReport();
+        private String phasePrefix = "";
 
         record Patch(String moduleName, Pathname modularJarPathname) {}
 
@@ -136,6 +147,13 @@ class Compiler {
             return this;
         }
 
+        /** Record the phases of the compilation in the report, with names prefixed by phasePrefix. */
+        CompileParams setReport(BuildReport report, String phasePrefix) {
+            this.report = Objects.requireNonNull(report, "report cannot be null");
+            this.phasePrefix = Objects.requireNonNull(phasePrefix, "phasePrefix cannot be null");
+            return this;
+        }
+
         Optional<String> debug() { return debug; }
         List<Pathname> sourceDirectories() { return sourceDirectories; }
         ModulePath mutableModulePath() { return modulePath; }
@@ -146,6 +164,8 @@ class Compiler {
         Release release() { return release; }
         Optional<ModuleDescriptor.Version> version() { return version; }
         Optional<String> warnings() { return warnings; }
+        BuildReport report() { return report; }
+        String phasePrefix() { return phasePrefix; }
 
         // TODO: A. Wire these to modco, B. wire all modco options to here, C. validate these in SingleModuleCompilation,
         // including patchModules moduleName isName() from release().sourceVersion.
@@ -153,6 +173,42 @@ class Compiler {
         Locale locale() { return Locale.getDefault(); }
         List<String> options() { return options; }
 
+        /**
+         * The javac options that affect the class files, other than paths:  The options, and the options for the
+         * warnings, debug information, release, and module version.
+         */
+        List<String> javacOptions() {
+            var javacOptions = new ArrayList<>(options);
+
+            warnings.ifPresent(warnings -> {
+                if (warnings.equals("all")) {
+                    javacOptions.add("-Xlint");
+                } else {
+                    javacOptions.add("-Xlint:" + warnings);
+                }
+            });
+
+            debug.ifPresent(debug -> {
+                if (debug.equals("")) {
+                    javacOptions.add("-g");
+                } else {
+                    javacOptions.add("-g:" + debug);
+                }
+            });
+
+            if (!release.matchesJreVersion()) {
+                javacOptions.add("--release");
+                javacOptions.add(Integer.toString(release.releaseInt()));
+            }
+
+            version.ifPresent(version -> {
+                javacOptions.add("--module-version");
+                javacOptions.add(version.toString());
+            });
+
+            return javacOptions;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -174,12 +230,14 @@ class Compiler {
 
         @Override
         public int hashCode() {
-            return Objects.hash(debug, checksumFile, classDirectory, emptyDirectory, forceCompilation, modulePath, options, patches, release, sourceDirectories, version, warnings);
+            // The hash code is the checksum of the compilation, which does not depend on whether it was forced.
+            return Objects.hash(debug, checksumFile, classDirectory, emptyDirectory, modulePath, options, patches, release, sourceDirectories, version, warnings);
         }
     }
 
     CompilationResult compile(CompileParams compilation) {
         long startNanos = System.nanoTime();
+        Instant startTime = Instant.now();
 
         final List<Path> javaPaths;
         if (compilation.checksumFile == null) {
@@ -188,22 +246,30 @@ class Compiler {
                                                      .flatMap(List::stream)
                                                      .collect(Collectors.toList());
         } else {
+            BuildEvents.ScanEvent scanEvent = BuildEvents.scan();
+            scanEvent.begin();
             ClassDirectory classDirectory = prepareClassDirectory(compilation.classDirectory,
                                                                   compilation.sourceDirectories,
                                                                   compilation.checksumFile,
-                                                                  compilation.hashCode());
-            if (classDirectory.upToDate())
+                                                                  compilation.hashCode(),
+                                                                  compilation.report(),
+                                                                  compilation.phasePrefix());
+            scanEvent.end();
+            if (scanEvent.shouldCommit())
+                scanEvent.set(moduleNameOf(compilation), classDirectory.paths().size(), 0).commit();
+            if (!compilation.forceCompilation && classDirectory.upToDate() && !modulePathHasChangedSince(compilation))
                 return CompilationResult.ofNoop(classDirectory.paths.size(), startNanos, compilation.classDirectory.path());
             javaPaths = classDirectory.paths();
         }
 
-        var collector = new DiagnosticCollector<JavaFileObject>();
+        var retained = new RetainedOutput();
+        var listener = new StreamingDiagnosticListener(context.log(), compilation.locale(), retained);
         var writer = new StringWriter();
         boolean success;
         RuntimeException exception = null;
         List<String> javacEquivalentArguments = new ArrayList<>();
 
-        StandardJavaFileManager standardFileManager = javaCompiler.getStandardFileManager(collector, compilation.locale(), compilation.charset());
+        StandardJavaFileManager standardFileManager = javaCompiler.getStandardFileManager(listener, compilation.locale(), compilation.charset());
         try {
             compilation.classDirectory().makeDirectories();
             uncheckIO(() -> standardFileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(compilation.classDirectory().path())));
@@ -217,33 +283,7 @@ class Compiler {
                 javacEquivalentArguments.add(modulePath.toColonSeparatedString());
             }
 
-            var options = new ArrayList<String>(compilation.options());
-
-            compilation.warnings().ifPresent(warnings -> {
-                if (warnings.equals("all")) {
-                    options.add("-Xlint");
-                } else {
-                    options.add("-Xlint:" + warnings);
-                }
-            });
-
-            compilation.debug().ifPresent(debug -> {
-                if (debug.equals("")) {
-                    options.add("-g");
-                } else {
-                    options.add("-g:" + debug);
-                }
-            });
-
-            if (!compilation.release().matchesJreVersion()) {
-                options.add("--release");
-                options.add(Integer.toString(compilation.release().releaseInt()));
-            }
-
-            compilation.version().ifPresent(version -> {
-                options.add("--module-version");
-                options.add(version.toString());
-            });
+            var options = new ArrayList<String>(compilation.javacOptions());
 
             // TODO: --patch-module module=path1:path2:... must be passed via options, as this is not yet supported:
             //uncheckIO(() -> standardFileManager.setLocationForModule(StandardLocation.PATCH_MODULE_PATH, module, List.of()));
@@ -262,71 +302,85 @@ class Compiler {
             compilationUnits.forEach(unit -> javacEquivalentArguments.add(unit.getName()));
 
             context.log().command("javac", javacEquivalentArguments);
-            JavaCompiler.CompilationTask task = javaCompiler.getTask(writer, standardFileManager, collector, options, null, compilationUnits);
+            JavaCompiler.CompilationTask task = javaCompiler.getTask(writer, standardFileManager, listener, options, null, compilationUnits);
+            BuildEvents.JavacEvent javacEvent = BuildEvents.javac();
+            javacEvent.begin();
             try {
-                success = task.call();
+                success = compilation.report.time(compilation.phasePrefix + "javac", task::call);
             } catch (IllegalStateException e) {
                 success = false;
                 exception = e;
+                // The caller does not log the message.
+                context.log().infoLine("javac: " + e.getMessage());
             }
+            javacEvent.end();
+            if (javacEvent.shouldCommit())
+                javacEvent.set(moduleNameOf(compilation), javaPaths.size(), 0).commit();
         } finally {
             uncheckIO(standardFileManager::close);
         }
 
-        List<Diagnostic> diagnostics = collector
-                .getDiagnostics()
-                .stream()
-                .map(diagnostic -> new Diagnostic(
-                        diagnostic.getKind(),
-                        Optional.ofNullable(diagnostic.getSource()),
-                        positionOf(diagnostic.getPosition()),
-                        positionOf(diagnostic.getStartPosition()),
-                        positionOf(diagnostic.getEndPosition()),
-                        positionOf(diagnostic.getLineNumber()),
-                        positionOf(diagnostic.getColumnNumber()),
-                        Optional.ofNullable(diagnostic.getCode()),
-                        diagnostic.getMessage(compilation.locale())))
-                .collect(Collectors.toList());
-
+        String summary = listener.logSummary();
         String out = writer.toString();
+        if (!out.isEmpty())
+            context.log().info(out);
 
         if (compilation.checksumFile != null && success)
-            updateChecksumFile(compilation.checksumFile, compilation.hashCode());
+            updateChecksumFile(compilation.checksumFile, compilation.hashCode(), startTime);
 
-        return CompilationResult.of(success, javaPaths.size(), startNanos, diagnostics, out,
-                                    compilation.classDirectory().path(), exception);
+        // The diagnostics have already been logged, and the message only retains the first part of them.
+        String message = exception == null ? retained + summary + out : exception.getMessage();
+        return CompilationResult.of(success, javaPaths.size(), startNanos, message, compilation.classDirectory().path());
     }
 
-    CompilationResult compileWithJavac(CompileParams compilation) {
+    /**
+     * The source files of a compilation, and whether the compilation would be a no-op, see {@link #scan(CompileParams)}.
+     * The start of the scan is the start of the compilation.
+     */
+    record Scan(List<Path> javaPaths, boolean upToDate, long startNanos, Instant startTime) {}
+
+    /**
+     * Finds the source files of the compilation, and whether the class directory is up to date with them.  Class files
+     * without a source file are removed from the class directory.
+     */
+    Scan scan(CompileParams compilation) {
         long startNanos = System.nanoTime();
+        Instant startTime = Instant.now();
 
-        final List<String> javaPaths;
         if (compilation.checksumFile == null) {
-            javaPaths = compilation.sourceDirectories()
-                                   .stream()
-                                   .map(SourceDirectory::resolveSource)
-                                   .flatMap(List::stream)
-                                   .map(Path::toString)
-                                   .collect(Collectors.toList());
-        } else {
-            ClassDirectory classDirectory = prepareClassDirectory(compilation.classDirectory,
-                                                                  compilation.sourceDirectories,
-                                                                  compilation.checksumFile,
-                                                                  compilation.hashCode());
-
-            // TODO: Make NOOP check basically a checksum of javac arguments, except for timestamp comparison
-            //  source/classes as above, and -p JARs timestamp below.  Thus we need a timestamp for when last
-            //  compilation was done too.  Can be read from the checksum file last modified timestamp?
-            //  The reason a compilation is needed with more recent JAR timestamp, is that constants from those
-            //  can have changed and are embedded in the compiled class files, which therefore needs to be
-            //  recompiled.  Note that a more recent source JAR is special and can be ignored since the
-            //  source/classes check is more correct.
-            boolean modulePathHasChanged = true;
-            if (!compilation.forceCompilation && classDirectory.upToDate() && !modulePathHasChanged)
-                return CompilationResult.ofNoop(classDirectory.paths.size(), startNanos, compilation.classDirectory.path());
-            javaPaths = classDirectory.paths().stream().map(Path::toString).collect(Collectors.toList());
+            List<Path> javaPaths = compilation.sourceDirectories()
+                                              .stream()
+                                              .map(SourceDirectory::resolveSource)
+                                              .flatMap(List::stream)
+                                              .collect(Collectors.toList());
+            return new Scan(javaPaths, false, startNanos, startTime);
         }
 
+        BuildEvents.ScanEvent scanEvent = BuildEvents.scan();
+        scanEvent.begin();
+        ClassDirectory classDirectory = prepareClassDirectory(compilation.classDirectory,
+                                                              compilation.sourceDirectories,
+                                                              compilation.checksumFile,
+                                                              compilation.hashCode(),
+                                                              compilation.report(),
+                                                              compilation.phasePrefix());
+        scanEvent.end();
+        if (scanEvent.shouldCommit())
+            scanEvent.set(moduleNameOf(compilation), classDirectory.paths().size(), 0).commit();
+
+        // Constants of the modules on the module path are embedded in the class files, so the sources must be
+        // recompiled if any of them is more recent than the last compilation, as marked by the checksum file.
+        boolean upToDate = !compilation.forceCompilation && classDirectory.upToDate() && !modulePathHasChangedSince(compilation);
+        return new Scan(classDirectory.paths(), upToDate, startNanos, startTime);
+    }
+
+    /** Compiles the sources found by scan, or returns a no-op result if the class directory is up to date. */
+    CompilationResult compileWithJavac(CompileParams compilation, Scan scan) {
+        long startNanos = scan.startNanos();
+        if (scan.upToDate())
+            return CompilationResult.ofNoop(scan.javaPaths().size(), startNanos, compilation.classDirectory.path());
+        List<String> javaPaths = scan.javaPaths().stream().map(Path::toString).collect(Collectors.toList());
+
         List<String> javacArgs = new ArrayList<>();
 
         compilation.classDirectory().makeDirectories();
@@ -336,12 +390,10 @@ class Compiler {
         ModulePath modulePath = compilation.mutableModulePath();
         if (!modulePath.isEmpty()) {
             javacArgs.add("-p");
-            // TODO: If the timestamp of any of the resolved JARs or even exploded JARs is more recent than the last
-            //  compilation, then we need to do a full compilation and avoid NOOP.
             javacArgs.add(modulePath.toColonSeparatedString());
         }
 
-        javacArgs.addAll(compilation.options());
+        javacArgs.addAll(compilation.javacOptions());
 
         // Avoid annotation processing.  This is done in compile() by passing null for the classes to do annotation
         // processing on.  The equivalent is... -proc:none ?
@@ -353,44 +405,22 @@ class Compiler {
         javacArgs.add("--processor-path");
         javacArgs.add(compilation.emptyDirectory().toString());
 
-        compilation.warnings().ifPresent(warnings -> {
-            if (warnings.equals("all")) {
-                javacArgs.add("-Xlint");
-            } else {
-                javacArgs.add("-Xlint:" + warnings);
-            }
-        });
-
-        compilation.debug().ifPresent(debug -> {
-            if (debug.equals("")) {
-                javacArgs.add("-g");
-            } else {
-                javacArgs.add("-g:" + debug);
-            }
-        });
-
-        if (!compilation.release().matchesJreVersion()) {
-            javacArgs.add("--release");
-            javacArgs.add(Integer.toString(compilation.release().releaseInt()));
-        }
-
-        compilation.version().ifPresent(version -> {
-            javacArgs.add("--module-version");
-            javacArgs.add(version.toString());
-        });
-
         compilation.patchedModules()
                    .forEach(patch -> {
                        javacArgs.add("--patch-module");
                        javacArgs.add(patch.moduleName() + "=" + patch.modularJarPathname());
                    });
 
-        javacArgs.addAll(javaPaths);
-
-        Javac.Result result = new Javac(context, javaCompiler).javac(javacArgs);
+        BuildEvents.JavacEvent javacEvent = BuildEvents.javac();
+        javacEvent.begin();
+        Javac.Result result = compilation.report.time(compilation.phasePrefix + "javac", () ->
+                new Javac(context, javaCompiler).javac(javacArgs, javaPaths, compilation.locale(), compilation.charset()));
+        javacEvent.end();
+        if (javacEvent.shouldCommit())
+            javacEvent.set(moduleNameOf(compilation), javaPaths.size(), 0).commit();
 
         if (compilation.checksumFile != null && result.success())
-            updateChecksumFile(compilation.checksumFile, compilation.hashCode());
+            updateChecksumFile(compilation.checksumFile, compilation.hashCode(), scan.startTime());
 
         return CompilationResult.of(result.success(), javaPaths.size(), startNanos, result.message(), compilation.classDirectory().path());
     }
@@ -405,6 +435,21 @@ class Compiler {
         return moduleNameOf(moduleInfoPathname.string(), moduleInfo.get(), release);
     }
 
+    /** Returns the name of the module being compiled, or null if not found.  Only used for JFR events. */
+    private static String moduleNameOf(CompileParams compilation) {
+        if (!compilation.patches.isEmpty())
+            return compilation.patches.get(0).moduleName();
+        for (Pathname source : compilation.sourceDirectories) {
+            Pathname moduleInfo = source.filename().equals("module-info.java") ? source : source.resolve("module-info.java");
+            if (moduleInfo.isFile()) {
+                Matcher matcher = MODULE_PATTERN.matcher(moduleInfo.readUtf8());
+                if (matcher.find())
+                    return matcher.group(2);
+            }
+        }
+        return null;
+    }
+
     /** TODO: Actually parse the module-info.java with our compiler. */
     private static String moduleNameOf(String moduleInfoPathname, String moduleInfoContent, SourceVersion release) {
         Matcher matcher = MODULE_PATTERN.matcher(moduleInfoContent);
@@ -416,120 +461,187 @@ class Compiler {
         return module;
     }
 
-    private static OptionalLong positionOf(long position) {
-        return position == javax.tools.Diagnostic.NOPOS ? OptionalLong.empty() : OptionalLong.of(position);
-    }
+    record ClassDirectory(List<Path> paths, boolean upToDate) {}
+
+    /** The versions of the snapshots of the trees, see {@link FileStates}, when the class directory was up to date. */
+    private record UpToDate(List<Object> versions, List<Path> paths) {}
 
-    private record ClassDirectory(List<Path> paths, boolean upToDate) {}
+    /**
+     * Keep a resident snapshot of the source and class directories with {@code fileStates}, making a check of an
+     * unchanged class directory cost proportional to the number of changes, instead of the size of the trees.
+     */
+    void setFileStates(FileStates fileStates) {
+        this.fileStates = fileStates;
+        this.upToDateClassDirectories.clear();
+    }
 
     /**
      * Remove files and directories from classDirectory that are no longer matched by source files.  upToDate
      * is true if no files were removed, and no source file timestamps are newer than the found class files.
      * 'sources' contains all *.java source files found in the source directories.
      */
-    private ClassDirectory prepareClassDirectory(Pathname classDirectory, List<Pathname> sources,
-                                                 Pathname checksumFile, int checksum) {
+    ClassDirectory prepareClassDirectory(Pathname classDirectory, List<Pathname> sources,
+                                         Pathname checksumFile, int checksum,
+                                         BuildReport report, String phasePrefix) {
 
         // Optimization
-        if (!classDirectory.isDirectory() || classDirectory.isEmptyDirectory())
-            return new ClassDirectory(sources.stream()
-                                             .map(SourceDirectory::resolveSource)
-                                             .flatMap(List::stream)
-                                             .collect(Collectors.toList()),
+        if (!classDirectory.isDirectory() || classDirectory.isEmptyDirectory()) {
+            return new ClassDirectory(report.time(phasePrefix + "scan", () -> sources.stream()
+                                                                                     .map(SourceDirectory::resolveSource)
+                                                                                     .flatMap(List::stream)
+                                                                                     .collect(Collectors.toList())),
                                       false);
+        }
 
+        final Pathname normalizedClassDirectory = classDirectory.normalize();
+        // The versions of the trees with resident snapshots, and the timestamp of a module-info.java source.
+        List<Object> versions = new ArrayList<>();
+        Map<Pathname, NavigableMap<String, BasicAttributes>> sourceEntries = new LinkedHashMap<>();
+        Map<Pathname, BasicAttributes> moduleInfoSources = new LinkedHashMap<>();
+        final NavigableMap<String, BasicAttributes> classEntries;
         // A source file a/b/Foo.java relative a source directory should result in a whitelist of a/, a/b/, and a/b/Foo.
         // This allows the directories a/ and a/b/ below the class directory, a a/b/Foo.class file, and any files in a/b/
         // with a filename starting with Foo$ and ending in .class (e.g. nested classes of Foo).
         Map<String, BasicAttributes> whitelist = new HashMap<>();
+        List<Path> javaFiles = new ArrayList<>();
+        BuildReport.Phase scanPhase = report.phase(phasePrefix + "scan");
+        try {
+            for (Pathname source : sources) {
+                source = source.normalize();
+                // Special-case the module-info.java "source", as the only non-directory source
+                if (source.filename().equals("module-info.java")) {
+                    BasicAttributes attributes = source.readAttributes(true);
+                    moduleInfoSources.put(source, attributes);
+                    versions.add(attributes.lastModified());
+                } else {
+                    sourceEntries.put(source, entriesOf(source, true, versions));
+                }
+            }
+            classEntries = entriesOf(normalizedClassDirectory, false, versions);
 
-        List<Path> javaFiles = sources
-                .stream()
-                .map(Pathname::normalize)
-                .flatMap(source -> {
-                    // Special-case the module-info.java "source", as the only non-directory source
-                    if (source.filename().equals("module-info.java")) {
-                        whitelist.put("module-info", source.readAttributes(true));
-                        return Stream.of(source.path());
-                    }
+            UpToDate previous = upToDateClassDirectories.get(normalizedClassDirectory);
+            if (fileStates != null && previous != null && previous.versions().equals(versions) &&
+                !checksumHasChanged(checksumFile, checksum)) {
+                return new ClassDirectory(previous.paths(), true);
+            }
 
-                    return source.find(true, (subpath, attributes) -> {
-                        if (!subpath.toString().endsWith(".java"))
-                            return Optional.empty();
-
-                        if (source.normalize().toString().equals(subpath.normalize().toString()))
-                            if (!attributes.isDirectory())
-                                return Optional.of(subpath.path());
-
-                            String prefix = subpath.relative(source).normalize().toString();
-                            if (!prefix.endsWith(".java"))
-                                return Optional.empty();
-                            prefix = prefix.substring(0, prefix.length() - ".java".length());
-                            whitelist.put(prefix, attributes);
-
-                            do {
-                                int slashIndex = prefix.lastIndexOf('/');
-                                if (slashIndex == -1)
-                                    break;
-                                prefix = prefix.substring(0, slashIndex);
-                                if (whitelist.put(prefix + '/', attributes) != null)
-                                    break; // already added
-                            } while (true);
-
-                            return Optional.of(subpath.path());
-                    })
-                                 .stream();
-                })
-                .collect(Collectors.toList());
+            moduleInfoSources.forEach((source, attributes) -> {
+                whitelist.put("module-info", attributes);
+                javaFiles.add(source.path());
+            });
+            sourceEntries.forEach((source, entries) -> entries.forEach((relative, attributes) -> {
+                if (!relative.endsWith(".java"))
+                    return;
+
+                String prefix = relative.substring(0, relative.length() - ".java".length());
+                whitelist.put(prefix, attributes);
+
+                do {
+                    int slashIndex = prefix.lastIndexOf('/');
+                    if (slashIndex == -1)
+                        break;
+                    prefix = prefix.substring(0, slashIndex);
+                    if (whitelist.put(prefix + '/', attributes) != null)
+                        break; // already added
+                } while (true);
+
+                javaFiles.add(source.resolve(relative).path());
+            }));
+        } finally {
+            scanPhase.close();
+        }
 
-        final Pathname normalizedClassDirectory = classDirectory.normalize();
-        final boolean[] mustCompile = { false };
-        normalizedClassDirectory.visit(false, false, (pathname, attributes) -> {
-            Pathname lookupKey = pathname.relative(normalizedClassDirectory).normalize();
-
-            if (attributes.isDirectory()) {
-                if (!whitelist.containsKey(lookupKey + "/")) {
-                    context.log().debugLine(() -> "Deleting directory: " + pathname);
-                    pathname.deleteRecursively();
-                    mustCompile[0] = true;
-                    return Pathname.VisitHint.SKIP;
-                }
-            } else if (attributes.isFile()) {
-                String stem = lookupKey.filename();
-                if (stem.endsWith(".class")) {
-                    stem = stem.substring(0, stem.length() - ".class".length());
-                    int dollarIndex = stem.indexOf('$');
-                    if (dollarIndex != -1)
-                        stem = stem.substring(0, dollarIndex);
-                    lookupKey = lookupKey.parent().resolve(stem).normalize();
-                    BasicAttributes sourceAttributes = whitelist.get(lookupKey.toString());
-                    if (sourceAttributes == null) {
-                        // source file deleted
-                        context.log().debugLine(() -> "Deleting orphaned class file: " + pathname);
-                        pathname.delete();
-                        mustCompile[0] = true;
-                    } else if (!sourceAttributes.lastModified().isBefore(attributes.lastModified())) {
-                        if (dollarIndex != -1) {
-                            context.log().debugLine(() -> "Source about to be recompiled: Deleting derived class: " + pathname);
+        final boolean upToDate;
+        BuildReport.Phase upToDatePhase = report.phase(phasePrefix + "up-to-date");
+        try {
+            boolean mustCompile = false;
+            // The entries are sorted with a directory before the entries below it, which are skipped if it is deleted.
+            String deletedDirectory = null;
+            // The whitelist keys of the sources with a class file.
+            Set<String> compiledSources = new HashSet<>();
+            for (var entry : classEntries.entrySet()) {
+                if (deletedDirectory != null && entry.getKey().startsWith(deletedDirectory))
+                    continue;
+                Pathname pathname = normalizedClassDirectory.resolve(entry.getKey());
+                BasicAttributes attributes = entry.getValue();
+                Pathname lookupKey = pathname.relative(normalizedClassDirectory).normalize();
+
+                if (attributes.isDirectory()) {
+                    if (!whitelist.containsKey(lookupKey + "/")) {
+                        context.log().debugLine(() -> "Deleting directory: " + pathname);
+                        pathname.deleteRecursively();
+                        mustCompile = true;
+                        deletedDirectory = entry.getKey() + "/";
+                    }
+                } else if (attributes.isFile()) {
+                    String stem = lookupKey.filename();
+                    if (stem.endsWith(".class")) {
+                        stem = stem.substring(0, stem.length() - ".class".length());
+                        int dollarIndex = stem.indexOf('$');
+                        if (dollarIndex != -1)
+                            stem = stem.substring(0, dollarIndex);
+                        lookupKey = lookupKey.parent().resolve(stem).normalize();
+                        BasicAttributes sourceAttributes = whitelist.get(lookupKey.toString());
+                        if (sourceAttributes != null)
+                            compiledSources.add(lookupKey.toString());
+                        if (sourceAttributes == null) {
+                            // source file deleted
+                            context.log().debugLine(() -> "Deleting orphaned class file: " + pathname);
                             pathname.delete();
+                            mustCompile = true;
+                        } else if (!sourceAttributes.lastModified().isBefore(attributes.lastModified())) {
+                            if (dollarIndex != -1) {
+                                context.log().debugLine(() -> "Source about to be recompiled: Deleting derived class: " + pathname);
+                                pathname.delete();
+                            }
+                            mustCompile = true;
                         }
-                        mustCompile[0] = true;
+                    } else {
+                        context.log().debugLine(() -> "Deleting stray file: " + pathname);
+                        pathname.delete();
+                        mustCompile = true;
                     }
                 } else {
                     context.log().debugLine(() -> "Deleting stray file: " + pathname);
                     pathname.delete();
-                    mustCompile[0] = true;
+                    mustCompile = true;
                 }
+            }
+
+            // A source without a class file has been added since the last compilation.  A package-info.java without
+            // annotations has no class file.
+            if (!mustCompile) {
+                mustCompile = whitelist.keySet()
+                                       .stream()
+                                       .anyMatch(key -> !key.endsWith("/") && !key.endsWith("package-info") && !compiledSources.contains(key));
+            }
+
+            upToDate = !mustCompile && !checksumHasChanged(checksumFile, checksum);
+        } finally {
+            upToDatePhase.close();
+        }
+
+        if (fileStates != null) {
+            if (upToDate) {
+                upToDateClassDirectories.put(normalizedClassDirectory, new UpToDate(versions, javaFiles));
             } else {
-                context.log().debugLine(() -> "Deleting stray file: " + pathname);
-                pathname.delete();
-                mustCompile[0] = true;
+                upToDateClassDirectories.remove(normalizedClassDirectory);
             }
+        }
 
-            return Pathname.VisitHint.CONTINUE;
-        });
+        return new ClassDirectory(javaFiles, upToDate);
+    }
 
-        return new ClassDirectory(javaFiles, !mustCompile[0] && !checksumHasChanged(checksumFile, checksum));
+    /**
+     * Returns the files and directories below root by path relative root, from the resident snapshot, whose version is
+     * added to versions, or else by scanning root.
+     */
+    private NavigableMap<String, BasicAttributes> entriesOf(Pathname root, boolean followSymlinks, List<Object> versions) {
+        if (fileStates == null)
+            return FileStates.scan(root, followSymlinks);
+        FileStates.Snapshot snapshot = fileStates.snapshot(root, followSymlinks);
+        versions.add(snapshot.version());
+        return snapshot.entries();
     }
 
     private boolean checksumHasChanged(Pathname file, int checksum) {
@@ -551,8 +663,46 @@ class Compiler {
         return checksum != previousChecksum;
     }
 
-    private void updateChecksumFile(Pathname file, int checksum) {
+    /** Record that the class directory of the compilation is up to date, e.g. after restoring it from a build cache. */
+    void markUpToDate(CompileParams compilation) {
+        if (compilation.checksumFile != null)
+            updateChecksumFile(compilation.checksumFile, compilation.hashCode(), Instant.now());
+    }
+
+    /** The last modified time of the checksum file is the start of the last successful compilation. */
+    private void updateChecksumFile(Pathname file, int checksum, Instant compileTime) {
         if (checksumHasChanged(file, checksum))
             file.writeUtf8(checksum + "\n");
+        file.setLastModified(compileTime);
+    }
+
+    /**
+     * Whether any file or directory on the module path has been modified since the start of the last successful
+     * compilation.  This is a stat(2) of each of them, and of each file of an exploded module.  A patched-in module
+     * is repackaged on each make and not checked:  The caller forces the compilation when it has been recompiled.
+     */
+    private static boolean modulePathHasChangedSince(CompileParams compilation) {
+        Optional<BasicAttributes> checksumAttributes = compilation.checksumFile.readAttributesIfExists(true);
+        if (checksumAttributes.isEmpty())
+            return true;
+        Instant lastCompileTime = checksumAttributes.get().lastModified();
+
+        var changed = new boolean[] { false };
+        for (Pathname pathname : compilation.mutableModulePath().toPathnames()) {
+            Optional<BasicAttributes> attributes = pathname.readAttributesIfExists(true);
+            if (attributes.isEmpty())
+                continue;
+            if (attributes.get().lastModified().isAfter(lastCompileTime))
+                return true;
+            pathname.visit(true, false, (entry, entryAttributes) -> {
+                if (!entryAttributes.lastModified().isAfter(lastCompileTime))
+                    return Pathname.VisitHint.CONTINUE;
+                changed[0] = true;
+                return Pathname.VisitHint.STOP;
+            });
+            if (changed[0])
+                return true;
+        }
+        return false;
     }
 }
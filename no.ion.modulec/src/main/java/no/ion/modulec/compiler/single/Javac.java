@@ -1,15 +1,25 @@
 package no.ion.modulec.compiler.single;
 
 import no.ion.modulec.Context;
+import no.ion.modulec.compiler.RetainedOutput;
+import no.ion.modulec.compiler.StreamingDiagnosticListener;
 
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
 
 /**
  * Implements Java compilation similar to <em>javac</em>.  In OpenJDK 17, this can be done in one of the following ways:
@@ -37,6 +47,10 @@ import java.util.Objects;
  * All arguments are passed as String arguments and as-if passed on the command-line to {@code javac}.
  * There is one other lower-level and equivalent way to compile Java code that (also) uses {@link javax.tools.JavaCompiler},
  * see {@link Compiler}.</p>
+ *
+ * <p>This class takes the lower-level way with the command-line options, i.e. {@link JavaCompiler#getTask
+ * JavaCompiler.getTask()}, to have each diagnostic reported to a {@link StreamingDiagnosticListener} while javac
+ * runs.</p>
  */
 class Javac {
     private final Context context;
@@ -53,12 +67,74 @@ class Javac {
 
     record Result(String message, boolean success) {}
 
-    Result javac(List<String> arguments) {
-        context.log().command("javac", arguments);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(128);
-        String[] args = arguments.toArray(String[]::new);
-        int exitCode = javaCompiler.run(null, byteArrayOutputStream, byteArrayOutputStream, args);
-        String message = byteArrayOutputStream.toString();
-        return new Result(message, exitCode == 0);
+    /**
+     * Compiles the source files with the javac command-line options.  Each diagnostic is logged as soon as javac
+     * reports it, as is any other output line by line, and the message retains only the first part.
+     */
+    Result javac(List<String> options, List<String> sourceFiles, Locale locale, Charset charset) {
+        context.log().command("javac", Stream.concat(options.stream(), sourceFiles.stream()).toList());
+        var retained = new RetainedOutput();
+        var listener = new StreamingDiagnosticListener(context.log(), locale, retained);
+        var lineWriter = new LineWriter(line -> {
+            context.log().info(line);
+            retained.append(line);
+        });
+
+        boolean success;
+        StandardJavaFileManager fileManager = javaCompiler.getStandardFileManager(listener, locale, charset);
+        try {
+            Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromStrings(sourceFiles);
+            success = javaCompiler.getTask(lineWriter, fileManager, listener, options, null, compilationUnits).call();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // E.g. an invalid option.  The caller does not log the message.
+            success = false;
+            String message = "javac: " + e.getMessage() + "\n";
+            context.log().info(message);
+            retained.append(message);
+        } finally {
+            lineWriter.close();
+            uncheckIO(fileManager::close);
+        }
+
+        retained.append(listener.logSummary());
+        return new Result(retained.toString(), success);
+    }
+
+    /** Passes each line written, including the terminating newline, to a consumer. */
+    private static class LineWriter extends Writer {
+        private final Consumer<String> lineConsumer;
+        private final StringBuilder line = new StringBuilder(128);
+
+        private LineWriter(Consumer<String> lineConsumer) {
+            this.lineConsumer = lineConsumer;
+        }
+
+        @Override
+        public synchronized void write(char[] chars, int offset, int length) {
+            int start = offset;
+            for (int i = offset; i < offset + length; ++i) {
+                if (chars[i] == '\n') {
+                    line.append(chars, start, i + 1 - start);
+                    flushLine();
+                    start = i + 1;
+                }
+            }
+            line.append(chars, start, offset + length - start);
+        }
+
+        @Override
+        public void flush() {}
+
+        /** Passes any partial last line to the consumer. */
+        @Override
+        public synchronized void close() {
+            if (line.length() > 0)
+                flushLine();
+        }
+
+        private void flushLine() {
+            lineConsumer.accept(line.toString());
+            line.setLength(0);
+        }
     }
 }
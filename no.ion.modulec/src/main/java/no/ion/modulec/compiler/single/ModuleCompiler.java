@@ -2,23 +2,35 @@ package no.ion.modulec.compiler.single;
 
 import no.ion.modulec.Context;
 import no.ion.modulec.MessageSink;
+import no.ion.modulec.cache.BuildCache;
 import no.ion.modulec.compiler.ModulePath;
 import no.ion.modulec.compiler.Release;
+import no.ion.modulec.file.FileStates;
 import no.ion.modulec.file.Pathname;
 import no.ion.modulec.jar.Jar;
+import no.ion.modulec.jar.ReproducibleJar;
+import no.ion.modulec.jar.TreeShaker;
+import no.ion.modulec.modco.ProgramLayout;
 import no.ion.modulec.modco.ProgramSpec;
 
 import java.lang.module.ModuleDescriptor;
 import java.nio.file.FileSystem;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
-public final class ModuleCompiler {
+/**
+ * Compiles, packages, and tests a module.  A module compiler may be used for many makes, e.g. of the same module
+ * in a loop, in which case the tests run in warm containers, and should be closed when done.
+ */
+public final class ModuleCompiler implements AutoCloseable {
     private final Context context;
     private final Compiler compiler;
     private final Jar jar;
+    private final TestContainers testContainers = new TestContainers();
+    private FileStates fileStates = null;
 
     public ModuleCompiler(Context context) {
         this(context, new Compiler(context), new Jar(context));
@@ -30,28 +42,70 @@ public final class ModuleCompiler {
         this.jar = jar;
     }
 
+    /**
+     * Keeps a resident snapshot of the source and class directories for the following makes, see {@link FileStates},
+     * so checking an unchanged module costs a stat(2) per directory rather than per file.  A file created or removed
+     * just before a make is seen, while a file modified in place may be missed until its change notification arrives,
+     * which suits a process making on change notifications, e.g. modco --watch.
+     */
+    public ModuleCompiler keepFileStates() {
+        if (fileStates == null) {
+            fileStates = new FileStates(Pathname.of(context.fileSystem(), "."));
+            compiler.setFileStates(fileStates);
+        }
+        return this;
+    }
+
     public static final class MakeParams {
 
         private final Context context;
 
+        private Optional<Pathname> buildCacheDirectory = Optional.empty();
+        private long buildCacheSize = BuildCache.DEFAULT_MAX_SIZE;
         private Optional<String> debug = Optional.empty();
+        private boolean printBuildReport = false;
         private Pathname out = null;
         private Optional<String> mainClass = Optional.empty();
         private ModulePath modulePath = new ModulePath();
         private List<ProgramSpec> programs = new ArrayList<>();
+        private Optional<List<String>> programCdsTrainingArguments = Optional.empty();
+        private ProgramLayout programLayout = ProgramLayout.SELF_CONTAINED;
+        private boolean shake = false;
+        private boolean jlinkStripDebug = false;
+        private Optional<String> jlinkCompress = Optional.empty();
+        private final List<String> keepRules = new ArrayList<>();
         private Release release = Release.ofJre();
         private final List<Pathname> resourceDirectories = new ArrayList<>();
         private List<Pathname> sourceDirectories = new ArrayList<>();
         private boolean testing = true;
+        private boolean allTests = false;
+        private boolean failFast = false;
+        private int testParallelism = 1;
+        private int testShards = 1;
         private final List<Pathname> testResourceDirectories = new ArrayList<>();
         private List<Pathname> testSourceDirectories = new ArrayList<>();
         private Optional<ModuleDescriptor.Version> version = Optional.empty();
+        private Optional<LocalDateTime> reproducibleTimestamp = Optional.empty();
         private Optional<String> warnings = Optional.of("all");  // empty => no warnings, "all" => -Xlint, otherwise foo => -Xlint:foo.
 
         public MakeParams(Context context) {
             this.context = context;
         }
 
+        /** Restore and store the compiled classes and JARs in the build cache at the given directory. */
+        public MakeParams setBuildCacheDirectory(Pathname buildCacheDirectory) {
+            this.buildCacheDirectory = Optional.of(Objects.requireNonNull(buildCacheDirectory, "buildCacheDirectory cannot be null"));
+            return this;
+        }
+
+        /** The maximum size of the build cache in bytes, before least recently used entries are evicted. */
+        public MakeParams setBuildCacheSize(long buildCacheSize) {
+            if (buildCacheSize <= 0)
+                throw new IllegalArgumentException("buildCacheSize must be positive: " + buildCacheSize);
+            this.buildCacheSize = buildCacheSize;
+            return this;
+        }
+
         /** Same as javac's -g:debug.  But "" means -g.  If not called, -g will not be passed to javac. */
         public MakeParams setDebug(String debug) {
             Objects.requireNonNull(debug, "debug cannot be null");
@@ -80,6 +134,57 @@ public final class ModuleCompiler {
             return this;
         }
 
+        public MakeParams setProgramLayout(ProgramLayout programLayout) {
+            this.programLayout = Objects.requireNonNull(programLayout, "programLayout cannot be null");
+            return this;
+        }
+
+        /**
+         * Train a class data sharing (CDS) archive for each program, PROGRAM.jsa, by running the program once with
+         * the given arguments.
+         */
+        public MakeParams setProgramCds(List<String> trainingArguments) {
+            Objects.requireNonNull(trainingArguments, "trainingArguments cannot be null");
+            this.programCdsTrainingArguments = Optional.of(List.copyOf(trainingArguments));
+            return this;
+        }
+
+        /** With {@link ProgramLayout#JLINK}, whether to pass --strip-debug to jlink. */
+        public MakeParams setJlinkStripDebug(boolean jlinkStripDebug) {
+            this.jlinkStripDebug = jlinkStripDebug;
+            return this;
+        }
+
+        /** With {@link ProgramLayout#JLINK}, pass --compress=COMPRESS to jlink. */
+        public MakeParams setJlinkCompress(String compress) {
+            this.jlinkCompress = Optional.of(Objects.requireNonNull(compress, "compress cannot be null"));
+            return this;
+        }
+
+        /** Remove the classes of the modules in the fat JAR that are unreachable from the programs, see {@link TreeShaker}. */
+        public MakeParams setShake(boolean shake) {
+            this.shake = shake;
+            return this;
+        }
+
+        /** Keep the classes matching the pattern when shaking, e.g. classes only loaded by reflection, see {@link TreeShaker}. */
+        public MakeParams addKeepRule(String pattern) {
+            this.keepRules.add(Objects.requireNonNull(pattern, "pattern cannot be null"));
+            return this;
+        }
+
+        /** Make byte-reproducible JARs with all entries having the given timestamp, see {@link ReproducibleJar}. */
+        public MakeParams setReproducibleTimestamp(LocalDateTime timestamp) {
+            this.reproducibleTimestamp = Optional.of(Objects.requireNonNull(timestamp, "timestamp cannot be null"));
+            return this;
+        }
+
+        /** Whether to log the JSON build report, in addition to writing it to the output directory. */
+        public MakeParams setPrintBuildReport(boolean printBuildReport) {
+            this.printBuildReport = printBuildReport;
+            return this;
+        }
+
         public MakeParams setRelease(Release release) {
             this.release = Objects.requireNonNull(release, "release cannot be null");
             return this;
@@ -100,6 +205,30 @@ public final class ModuleCompiler {
             return this;
         }
 
+        public MakeParams setAllTests(boolean allTests) {
+            this.allTests = allTests;
+            return this;
+        }
+
+        public MakeParams setFailFast(boolean failFast) {
+            this.failFast = failFast;
+            return this;
+        }
+
+        public MakeParams setTestParallelism(int testParallelism) {
+            if (testParallelism < 1)
+                throw new IllegalArgumentException("testParallelism must be at least 1: " + testParallelism);
+            this.testParallelism = testParallelism;
+            return this;
+        }
+
+        public MakeParams setTestShards(int testShards) {
+            if (testShards < 1)
+                throw new IllegalArgumentException("testShards must be at least 1: " + testShards);
+            this.testShards = testShards;
+            return this;
+        }
+
         public MakeParams addTestResourceDirectory(Pathname testResourceDirectory) {
             this.testResourceDirectories.add(Objects.requireNonNull(testResourceDirectory, "testResourceDirectory cannot be null"));
             return this;
@@ -126,16 +255,35 @@ public final class ModuleCompiler {
         public FileSystem fileSystem() { return context.fileSystem(); }
         public MessageSink log() { return context.log(); }
 
+        public Optional<Pathname> buildCacheDirectory() { return buildCacheDirectory; }
+        public long buildCacheSize() { return buildCacheSize; }
         public Optional<String> debug() { return debug; }
         public Pathname out() { return out; }
         /** May be empty, starting with "." (should prefix module name), or fully qualified. */
         public Optional<String> mainClass() { return mainClass; }
         public ModulePath modulePath() { return modulePath; }
         public List<ProgramSpec> programs() { return List.copyOf(programs); }
+        public ProgramLayout programLayout() { return programLayout; }
+        public boolean shake() { return shake; }
+        public boolean jlinkStripDebug() { return jlinkStripDebug; }
+        public Optional<String> jlinkCompress() { return jlinkCompress; }
+        public List<String> keepRules() { return List.copyOf(keepRules); }
+        /** The arguments of the run of each program that trains its CDS archive, or empty if no archive should be made. */
+        public Optional<List<String>> programCdsTrainingArguments() { return programCdsTrainingArguments; }
+        public boolean printBuildReport() { return printBuildReport; }
         public Release release() { return release; }
+        public Optional<LocalDateTime> reproducibleTimestamp() { return reproducibleTimestamp; }
         public List<Pathname> resourceDirectories() { return resourceDirectories; }
         public List<Pathname> sourceDirectories() { return sourceDirectories; }
         public boolean testing() { return testing; }
+        /** Whether to run all test classes, instead of only those whose inputs changed since they last passed. */
+        public boolean allTests() { return allTests; }
+        /** Whether to stop running tests after the first failing test class. */
+        public boolean failFast() { return failFast; }
+        /** The maximum number of test classes and methods run concurrently, or 1 if run sequentially. */
+        public int testParallelism() { return testParallelism; }
+        /** The number of JVMs the test classes are split between, or 1 if run in the JVM of the compiler. */
+        public int testShards() { return testShards; }
         public List<Pathname> testResourceDirectories() { return testResourceDirectories; }
         public List<Pathname> testSourceDirectories() { return testSourceDirectories; }
         public Optional<ModuleDescriptor.Version> version() { return version; }
@@ -143,7 +291,18 @@ public final class ModuleCompiler {
     }
 
     public void make(MakeParams params) {
-        SingleModuleCompilation compilation = new SingleModuleCompilation(compiler, jar, params);
+        SingleModuleCompilation compilation = new SingleModuleCompilation(compiler, jar, testContainers, params);
         compilation.make();
     }
+
+    /** Closes the containers kept for running tests, and the file states if kept. */
+    @Override
+    public void close() {
+        testContainers.close();
+        if (fileStates != null) {
+            compiler.setFileStates(null);
+            fileStates.close();
+            fileStates = null;
+        }
+    }
 }
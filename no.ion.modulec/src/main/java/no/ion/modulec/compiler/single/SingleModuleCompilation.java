@@ -1,13 +1,16 @@
 package no.ion.modulec.compiler.single;
 
 import no.ion.jhms.Argument;
-import no.ion.jhms.HybridModuleContainer;
-import no.ion.jhms.RootHybridModule;
 import no.ion.modulec.ModuleCompilerException;
 import no.ion.modulec.UserErrorException;
+import no.ion.modulec.cache.BuildCache;
+import no.ion.modulec.cache.Digest;
+import no.ion.modulec.cache.TestKeys;
+import no.ion.modulec.cache.TestResults;
 import no.ion.modulec.compiler.CompilationResult;
 import no.ion.modulec.compiler.ModulePath;
 import no.ion.modulec.file.BasicAttributes;
+import no.ion.modulec.file.FileCounters;
 import no.ion.modulec.file.FileMode;
 import no.ion.modulec.file.OutputDirectory;
 import no.ion.modulec.file.Pathname;
@@ -18,13 +21,21 @@ import no.ion.modulec.jar.Jar;
 import no.ion.modulec.jar.JarInspector;
 import no.ion.modulec.jar.ModulePackaging;
 import no.ion.modulec.jar.PackagingResult;
+import no.ion.modulec.jar.TestIndex;
+import no.ion.modulec.jar.TreeShaker;
+import no.ion.modulec.modco.ProgramLayout;
 import no.ion.modulec.modco.ProgramSpec;
+import no.ion.modulec.report.BuildEvents;
+import no.ion.modulec.report.BuildReport;
 import no.ion.modulec.module.ModuleVersion;
 import no.ion.modulec.util.Formatter;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleFinder;
@@ -38,23 +49,37 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.spi.ToolProvider;
+import java.util.stream.Collectors;
 
 import static no.ion.modulec.util.Exceptions.uncheckIO;
+import static no.ion.modulec.util.Exceptions.uncheckInterrupted;
 
 class SingleModuleCompilation {
+    /** Changed whenever the content or layout of the build cache entries changes. */
+    private static final String BUILD_CACHE_FORMAT = "no.ion.modulec.compiler.single 1";
+    /** The bash snippet of a stub of a self-contained program:  The program is also the fat JAR. */
+    private static final String SELF_JAR = "jar=\"$0\"";
+    private static final Duration CDS_TRAINING_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration SHARD_POLL_INTERVAL = Duration.ofMillis(50);
     private static final Pattern JHMS_JAR_REGEX = Pattern.compile("(^|/)no\\.ion\\.jhms-[0-9]+\\.[0-9]+\\.[0-9]+\\.jar$");
 
     private final Compiler compiler;
     private final Jar jar;
+    private final TestContainers testContainers;
     private final ModuleCompiler.MakeParams params;
+    private final BuildReport report = new BuildReport();
 
     private OutputDirectory output;
     private CompilationResult sourceCompilationResult;
@@ -64,30 +89,126 @@ class SingleModuleCompilation {
     private CompilationResult testSourceCompilationResult;
     private PackagingResult testJarResult;
 
-    SingleModuleCompilation(Compiler compiler, Jar jar, ModuleCompiler.MakeParams params) {
+    SingleModuleCompilation(Compiler compiler, Jar jar, TestContainers testContainers, ModuleCompiler.MakeParams params) {
         this.compiler = compiler;
         this.jar = jar;
+        this.testContainers = testContainers;
         this.params = params;
     }
 
     void make() {
         long start = System.nanoTime();
         output = initialValidation();
-        sourceCompilationResult = compile(compileSourceParams());
-        moduleName = resolveModuleName();
-        mainClass = params.mainClass().map(this::qualifyClass);
-        output.setJarFilename(moduleName + params.version().map(version -> "@" + version).orElse("") + ".jar");
-        jarResult = pack(jarPackaging());
-        if (!params.testSourceDirectories().isEmpty()) {
-            testSourceCompilationResult = compile(compileTestSourceParams(params.testSourceDirectories(), !sourceCompilationResult.noop()));
-            testJarResult = pack(testJarPackaging());
-            if (params.testing())
-                runTests();
+        try {
+            makeOutputs();
+        } finally {
+            writeReport();
         }
-        makePrograms();
         params.log().milestone("completed in " + Formatter.toString(Duration.ofNanos(System.nanoTime() - start)));
     }
 
+    private void makeOutputs() {
+        Optional<BuildCache> buildCache = params.buildCacheDirectory().map(directory -> new BuildCache(directory, params.buildCacheSize()));
+        Compiler.CompileParams sourceParams = compileSourceParams();
+        Compiler.Scan sourceScan = compiler.scan(sourceParams);
+        // The build cache is consulted only if the class directory is out of date:  Restoring up-to-date outputs would
+        // give them new modification times, making the modules depending on this module recompile.
+        Optional<String> buildCacheKey = Optional.empty();
+        boolean restored = false;
+        if (buildCache.isPresent() && !sourceScan.upToDate()) {
+            buildCacheKey = Optional.of(report.time("cache-key", this::buildCacheKey));
+            restored = restoreFromBuildCache(buildCache.get(), buildCacheKey.get());
+        }
+        if (restored) {
+            moduleName = resolveModuleName();
+            mainClass = params.mainClass().map(this::qualifyClass);
+            output.setJarFilename(jarFilename());
+            jarResult = new PackagingResult(true, "", output.jarPathname());
+            compiler.markUpToDate(compileSourceParams());
+            if (!params.testSourceDirectories().isEmpty()) {
+                testJarResult = new PackagingResult(true, "", output.testJarPathname());
+                compiler.markUpToDate(compileTestSourceParams(params.testSourceDirectories(), true));
+            }
+            params.log().milestone("restored %s from build cache %s", output.jarPathname(), buildCache.get().directory());
+        } else {
+            sourceCompilationResult = compile(sourceParams, sourceScan);
+            moduleName = resolveModuleName();
+            mainClass = params.mainClass().map(this::qualifyClass);
+            output.setJarFilename(jarFilename());
+            jarResult = pack(jarPackaging(), "pack");
+            if (!params.testSourceDirectories().isEmpty()) {
+                testSourceCompilationResult = compile(compileTestSourceParams(params.testSourceDirectories(), !sourceCompilationResult.noop()));
+                testJarResult = pack(testJarPackaging(), "test-pack");
+            }
+            boolean compiled = !sourceCompilationResult.noop() ||
+                               (testSourceCompilationResult != null && !testSourceCompilationResult.noop());
+            if (buildCache.isPresent() && compiled) {
+                String key = buildCacheKey.orElseGet(() -> report.time("cache-key", this::buildCacheKey));
+                report.time("cache-store", () -> buildCache.get().store(key, output.out(), buildCachePaths()));
+            }
+        }
+        if (!params.testSourceDirectories().isEmpty() && params.testing())
+            runTests();
+        makePrograms();
+    }
+
+    private boolean restoreFromBuildCache(BuildCache buildCache, String key) {
+        return report.time("cache-restore", () -> buildCache.restore(key, output.out(), buildCachePaths()));
+    }
+
+    /** Writes the build report to the output directory, and logs it if requested. */
+    private void writeReport() {
+        String json = report.toJson();
+        output.buildReportFile().writeUtf8(json);
+        if (params.printBuildReport())
+            params.log().info(json);
+    }
+
+    private String jarFilename() {
+        return moduleName + params.version().map(version -> "@" + version).orElse("") + ".jar";
+    }
+
+    /**
+     * The key of the build cache entry is a digest of everything that affects the content of the class directories
+     * and JARs:  The JDK, the javac options of the compilations, and the content of the source, resource, and module
+     * path files.
+     */
+    private String buildCacheKey() {
+        Digest digest = new Digest().add(BUILD_CACHE_FORMAT)
+                                    .add(System.getProperty("java.vm.vendor"))
+                                    .add(Runtime.version().toString())
+                                    .add(params.mainClass())
+                                    .add(params.reproducibleTimestamp());
+        addOptions(digest, compileSourceParams().javacOptions());
+        addOptions(digest, params.testSourceDirectories().isEmpty() ?
+                           List.of() :
+                           testCompileParams(params.testSourceDirectories(), false).javacOptions());
+        addTrees(digest, params.sourceDirectories());
+        addTrees(digest, params.resourceDirectories());
+        addTrees(digest, params.testSourceDirectories());
+        addTrees(digest, params.testResourceDirectories());
+        addTrees(digest, params.modulePath().toPathnames());
+        return digest.hex();
+    }
+
+    private static void addOptions(Digest digest, List<String> options) {
+        digest.add(options.size());
+        options.forEach(digest::add);
+    }
+
+    private static void addTrees(Digest digest, List<Pathname> roots) {
+        digest.add(roots.size());
+        roots.forEach(digest::addTree);
+    }
+
+    private List<String> buildCachePaths() {
+        // The JAR filename is not known until the module name has been resolved from the class files.  The
+        // checksum files depend on the output directory, and are rewritten after a restore.
+        return output.jarFilename()
+                     .map(jarFilename -> List.of("classes", jarFilename, "test"))
+                     .orElseGet(() -> List.of("classes", "test"));
+    }
+
     private OutputDirectory initialValidation() {
         List<Pathname> sourceDirectories = params.sourceDirectories();
         if (sourceDirectories.isEmpty())
@@ -126,11 +247,12 @@ class SingleModuleCompilation {
 
     private CompilationResult compile(Compiler.CompileParams compileParams) {
         if (compileParams == null) return null;  // propagate abortion of compilation
+        return compile(compileParams, compiler.scan(compileParams));
+    }
 
-        CompilationResult result = compiler.compileWithJavac(compileParams);
-        String message = result.message();
-        if (!message.isEmpty())
-            params.log().info(message);
+    private CompilationResult compile(Compiler.CompileParams compileParams, Compiler.Scan scan) {
+        // The compiler output has already been logged.
+        CompilationResult result = compiler.compileWithJavac(compileParams, scan);
         if (!result.success())
             throw new ModuleCompilerException(result.message()).setMultiLine(true).setSilent(true);
 
@@ -160,35 +282,45 @@ class SingleModuleCompilation {
                                            .setEmptyDirectory(output.emptyDirectory())
                                            .setRelease(params.release())
                                            .setVersion(params.version())
-                                           .setWarnings(params.warnings());
+                                           .setWarnings(params.warnings())
+                                           .setReport(report, "");
     }
 
     private String resolveModuleName() {
-        Path moduleInfoClassPath = output.outputClassDirectory().resolve("module-info.class").path();
-        InputStream inputStream = uncheckIO(() -> Files.newInputStream(moduleInfoClassPath, StandardOpenOption.READ));
-        ModuleDescriptor moduleDescriptor = uncheckIO(() -> ModuleDescriptor.read(inputStream));
-        //String moduleName = resolveModuleName(compilation.sourceDirectory(), compilation.release().sourceVersion());
-        return moduleDescriptor.name();
+        return report.time("name-resolution", () -> {
+            Path moduleInfoClassPath = output.outputClassDirectory().resolve("module-info.class").path();
+            InputStream inputStream = uncheckIO(() -> Files.newInputStream(moduleInfoClassPath, StandardOpenOption.READ));
+            ModuleDescriptor moduleDescriptor = uncheckIO(() -> ModuleDescriptor.read(inputStream));
+            //String moduleName = resolveModuleName(compilation.sourceDirectory(), compilation.release().sourceVersion());
+            report.setModule(moduleDescriptor.name());
+            return moduleDescriptor.name();
+        });
     }
 
     private Compiler.CompileParams compileTestSourceParams(List<Pathname> testSourceDirectories, boolean forceCompilation) {
+        return testCompileParams(testSourceDirectories, forceCompilation).patchModule(moduleName, jarResult.pathname());
+    }
+
+    /** The parameters of the test compilation, except the patching of the module, which has not been packaged yet. */
+    private Compiler.CompileParams testCompileParams(List<Pathname> testSourceDirectories, boolean forceCompilation) {
         Compiler.CompileParams compileParams = new Compiler.CompileParams().setDebug(params.debug())
                                                                            .addSourceDirectories(testSourceDirectories)
                                                                            .addModulePathEntriesFrom(new ModulePath().addFrom(params.modulePath()))
-                                                                           .patchModule(moduleName, jarResult.pathname())
                                                                            .setRelease(params.release())
                                                                            .setClassDirectory(output.outputTestClassDirectory())
                                                                            .setCompilationChecksumFile(output.testCompilationChecksumFile())
                                                                            .setEmptyDirectory(output.emptyDirectory())
                                                                            .setVersion(params.version())
                                                                            .setWarnings(params.warnings())
-                                                                           .setForceCompilation(!forceCompilation);
+                                                                           .setForceCompilation(forceCompilation)
+                                                                           .setReport(report, "test-");
         return compileParams;
     }
 
     private ModulePackaging jarPackaging() {
         ModulePackaging modulePackaging = ModulePackaging.forCreatingJar(output.jarPathname().path());
         mainClass.ifPresent(modulePackaging::setMainClass);
+        params.reproducibleTimestamp().ifPresent(modulePackaging::setReproducibleTimestamp);
         modulePackaging.addDirectoryTree(sourceCompilationResult.destination());
         params.resourceDirectories().stream().map(Pathname::path).forEach(modulePackaging::addDirectoryTree);
         return modulePackaging;
@@ -198,15 +330,23 @@ class SingleModuleCompilation {
         output.jarPathname().copyTo(output.testJarPathname(), StandardCopyOption.REPLACE_EXISTING);
 
         ModulePackaging packaging = ModulePackaging.forUpdatingJar(output.testJarPathname().path());
+        params.reproducibleTimestamp().ifPresent(packaging::setReproducibleTimestamp);
         packaging.addDirectoryTree(testSourceCompilationResult.destination());
         params.testResourceDirectories().stream().map(Pathname::path).forEach(packaging::addDirectoryTree);
+
+        // The test runner selects the test classes of the index instead of scanning the test JAR.
+        Pathname indexDirectory = output.testIndexDirectory();
+        Pathname index = indexDirectory.resolve(TestIndex.PATH);
+        index.makeParentDirectories();
+        uncheckIO(() -> Files.write(index.path(), TestIndex.of(Pathname.of(testSourceCompilationResult.destination())).toUtf8()));
+        packaging.addDirectoryTree(indexDirectory.path());
         return packaging;
     }
 
     private String qualifyClass(String name) { return name.startsWith(".") ? moduleName + name : name; }
 
-    private PackagingResult pack(ModulePackaging packaging) {
-        PackagingResult result = jar.pack(packaging);
+    private PackagingResult pack(ModulePackaging packaging, String phaseName) {
+        PackagingResult result = report.time(phaseName, () -> jar.pack(packaging));
         if (!result.success())
             throw new ModuleCompilerException(result.out()).setMultiLine(true);
         params.log().milestone("packaged %s", result.pathname());
@@ -214,40 +354,236 @@ class SingleModuleCompilation {
     }
 
     private void runTests() {
-        try (HybridModuleContainer container = new HybridModuleContainer()) {
+        BuildEvents.TestRunEvent event = BuildEvents.testRun();
+        event.begin();
+        BuildReport.Phase phase = report.phase("test-run");
+        Pathname testJar = testJarResult.pathname();
+        // The event is also committed when all test classes are skipped, with no test classes run.
+        int testClassesRun = 0;
+        try {
             ModulePath modulePath = params.modulePath();
-            String modulePathString = modulePath.isEmpty() ?
-                                      testJarResult.pathname().toString() :
-                                      modulePath.toColonSeparatedString() + ":" + testJarResult.pathname().toString();
-            container.discoverHybridModulesFromModulePath(modulePathString);
-
-            String testBooterModule = "no.ion.modulec.junit";
-            RootHybridModule testBooter = container.resolve(new HybridModuleContainer
-                    .ResolveParams(testBooterModule)
-                    .requireVersion("5.9.1"));
 
-            HybridModuleContainer.ResolveParams resolveParams = new HybridModuleContainer.ResolveParams(moduleName);
-            params.version().ifPresent(resolveParams::requireVersion);
+            String testBaseKey = testBaseKey();
+            Map<String, String> testKeys = TestKeys.of(testJar, testBaseKey);
+            // The previous results are also needed with --all-tests, for the durations of the test classes.
+            TestResults testResults = TestResults.readIfExists(output.testResultsFile()).retainAll(testKeys);
+            // Failing test classes first, then the slowest, to report a failure as soon as possible.
+            List<String> testClasses = testResults.order(testKeys.keySet()
+                                                                 .stream()
+                                                                 .filter(className -> params.allTests() ||
+                                                                                      !testResults.passed(className, testKeys.get(className)))
+                                                                 .collect(Collectors.toList()));
+            if (testClasses.isEmpty() && !testKeys.isEmpty()) {
+                params.log().milestone("skipped %d test classes unaffected by changes since they passed", testKeys.size());
+                return;
+            }
 
-            ClassLoader moduleLoader = container.resolve(resolveParams).getClassLoader();
-            ClassLoader savedContext = Thread.currentThread().getContextClassLoader();
-            Thread.currentThread().setContextClassLoader(moduleLoader);
+            String modulePathString = modulePath.isEmpty() ?
+                                      testJar.toString() :
+                                      modulePath.toColonSeparatedString() + ":" + testJar;
+
+            List<String> runnerOptions = new ArrayList<>();
+            if (params.testParallelism() > 1)
+                runnerOptions.addAll(List.of("--parallelism", Integer.toString(params.testParallelism())));
+            if (params.failFast())
+                runnerOptions.add("--fail-fast");
+            if (testClasses.size() < testKeys.size())
+                params.log().milestone("skipped %d of %d test classes unaffected by changes since they passed",
+                                       testKeys.size() - testClasses.size(), testKeys.size());
+
+            testClassesRun = testClasses.size();
             int exitCode;
-            try {
-                params.log().command("javahms", "-p", modulePathString, "-c", moduleName, "-m", testBooterModule, testJarResult.pathname().toString());
-                exitCode = testBooter.intCall("runTests", Argument.of(Path.class, testJarResult.pathname().path()));
-            } finally {
-                Thread.currentThread().setContextClassLoader(savedContext);
+            List<Pathname> runResultsFiles = new ArrayList<>();
+            if (params.testShards() > 1 && testClasses.size() > 1) {
+                List<List<String>> shards = testResults.partition(testClasses, params.testShards());
+                exitCode = runTestShards(shards, modulePathString, runnerOptions, testJar, runResultsFiles);
+            } else {
+                Pathname runResultsFile = output.testRunResultsFile();
+                runResultsFile.delete();
+                runResultsFiles.add(runResultsFile);
+                testClasses.forEach(className -> runnerOptions.addAll(List.of("--select", className)));
+                runnerOptions.addAll(List.of("--results", runResultsFile.toString()));
+                exitCode = runTestsInProcess(modulePathString, testBaseKey, runnerOptions, testJar);
+            }
+
+            boolean anyResults = false;
+            for (Pathname runResultsFile : runResultsFiles) {
+                if (runResultsFile.isFile()) {
+                    testResults.putRunResults(runResultsFile, testKeys);
+                    runResultsFile.delete();
+                    anyResults = true;
+                }
+            }
+            if (anyResults) {
+                // A test class without results, e.g. without tests, has passed if the run succeeded.
+                if (exitCode == 0) {
+                    for (String className : testClasses) {
+                        if (!testResults.passed(className, testKeys.get(className)))
+                            testResults.put(new TestResults.Result(className, testKeys.get(className), true, 0));
+                    }
+                }
+                testResults.write(output.testResultsFile());
             }
 
             if (exitCode != 0)
                 throw new ModuleCompilerException("Testing failed");
+        } finally {
+            phase.close();
+            event.end();
+            if (event.shouldCommit())
+                event.set(moduleName, testClassesRun, testJar.readAttributes(true).size()).commit();
+        }
+    }
+
+    /**
+     * Runs the tests with the no.ion.modulec.junit runner in this JVM, and returns its exit code.  The container is
+     * reused from earlier makes if the module path is unchanged, see {@link TestContainers}.
+     */
+    private int runTestsInProcess(String modulePathString, String testBaseKey, List<String> runnerOptions, Pathname testJar) {
+        TestContainers.Lease lease = testContainers.acquire(moduleName, params.version(), params.modulePath(), testBaseKey,
+                                                            testJar, output.testJarCopyDirectory());
+        if (lease.warm())
+            params.log().debugLine(() -> "Reusing the test container of " + moduleName);
+
+        ClassLoader moduleLoader = lease.module().getClassLoader();
+        ClassLoader savedContext = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(moduleLoader);
+        try {
+            List<String> command = new ArrayList<>(List.of("javahms", "-p", modulePathString, "-c", moduleName,
+                                                           "-m", TestContainers.TEST_RUNNER_MODULE));
+            command.addAll(runnerOptions);
+            command.add(testJar.toString());
+            params.log().command(command);
+            return lease.testBooter().intCall("runTests",
+                                              Argument.of(Path.class, testJar.path()),
+                                              Argument.of(String[].class, runnerOptions.toArray(String[]::new)));
+        } finally {
+            Thread.currentThread().setContextClassLoader(savedContext);
         }
     }
 
+    /**
+     * Runs the test classes of each shard with the no.ion.modulec.junit runner in a java process of its own, all
+     * concurrently.  The output of the shards is logged after all have exited, in the order of the shards, and the
+     * results file of each shard is added to runResultsFiles.  With --fail-fast, the other shards are killed when a
+     * shard fails.  Returns 0 if all shards succeeded.
+     */
+    private int runTestShards(List<List<String>> shards, String modulePathString, List<String> runnerOptions,
+                              Pathname testJar, List<Pathname> runResultsFiles) {
+        Pathname jhmsJar = jhmsJarPathname(testJar.fileSystem());
+        String java = Pathname.of(testJar.fileSystem(), System.getProperty("java.home")).resolve("bin/java").toString();
+        params.log().milestone("running %d test classes in %d shards", shards.stream().mapToInt(List::size).sum(), shards.size());
+
+        List<Process> processes = new ArrayList<>();
+        List<Pathname> outputFiles = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shards.size(); ++shard) {
+                Pathname runResultsFile = output.testShardRunResultsFile(shard);
+                Pathname outputFile = output.testShardOutputFile(shard);
+                runResultsFile.delete();
+                runResultsFiles.add(runResultsFile);
+                outputFiles.add(outputFile);
+
+                List<String> command = new ArrayList<>(List.of(java, "-cp", jhmsJar.toString(), "no.ion.jhms.Main",
+                                                               "-p", modulePathString, "-c", moduleName,
+                                                               "-m", TestContainers.TEST_RUNNER_MODULE));
+                command.addAll(runnerOptions);
+                shards.get(shard).forEach(className -> command.addAll(List.of("--select", className)));
+                command.addAll(List.of("--results", runResultsFile.toString()));
+                command.add(testJar.toString());
+                params.log().command(command);
+
+                processes.add(uncheckIO(() -> new ProcessBuilder(command)
+                        .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                        .redirectErrorStream(true)
+                        .redirectOutput(outputFile.path().toFile())
+                        .start()));
+            }
+
+            if (params.failFast())
+                killShardsOnFailure(processes);
+
+            int exitCode = 0;
+            for (int shard = 0; shard < shards.size(); ++shard) {
+                Process process = processes.get(shard);
+                int shardExitCode = uncheckInterrupted(() -> process.waitFor());
+                String output = outputFiles.get(shard).readUtf8();
+                // A killed shard may have been in the middle of a line.
+                params.log().info(output.isEmpty() || output.endsWith("\n") ? output : output + "\n");
+                if (shardExitCode != 0) {
+                    params.log().infoLine("Test shard " + shard + " exited with " + shardExitCode);
+                    exitCode = 1;
+                }
+            }
+            return exitCode;
+        } finally {
+            processes.forEach(process -> {
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                    uncheckInterrupted(() -> { process.waitFor(); });
+                }
+            });
+            outputFiles.forEach(Pathname::delete);
+        }
+    }
+
+    /** Waits until all processes have exited, or until one fails, in which case the others are killed. */
+    private static void killShardsOnFailure(List<Process> processes) {
+        while (processes.stream().anyMatch(Process::isAlive)) {
+            if (processes.stream().anyMatch(process -> !process.isAlive() && process.exitValue() != 0)) {
+                processes.forEach(Process::destroy);
+                return;
+            }
+            uncheckInterrupted(() -> { Thread.sleep(SHARD_POLL_INTERVAL.toMillis()); });
+        }
+    }
+
+    /**
+     * The part of the key of each test class, see {@link TestKeys}, that is common to all test classes:  A digest of
+     * the JVM running the tests and the module path.  The main classes are also in the test JAR.
+     */
+    private String testBaseKey() {
+        Digest digest = new Digest().add(TestResults.FORMAT)
+                                    .add(System.getProperty("java.vm.vendor"))
+                                    .add(Runtime.version().toString())
+                                    .add(System.getProperty("java.home"));
+        addTrees(digest, params.modulePath().toPathnames());
+        return digest.hex();
+    }
+
     private void makePrograms() {
         if (params.programs().isEmpty()) return;
 
+        // Maps the program filename to the fully qualified main class, in the order of the --program options.
+        Map<String, String> mainClasses = new LinkedHashMap<>();
+        for (ProgramSpec programSpec : params.programs()) {
+            String mainClassSpec = programSpec
+                    .mainClass()
+                    .map(this::qualifyClass)
+                    .orElseGet(() -> mainClass
+                            .orElseThrow(() -> new ModuleCompilerException(
+                                    "No main class specified for program: " + programSpec.filename())));
+            String mainClass = mainClassSpec.startsWith(".") ? moduleName + mainClassSpec : mainClassSpec;
+            Pathname mainClassPathname = output.outputClassDirectory().resolve(mainClass.replace('.', '/') + ".class");
+            if (!mainClassPathname.isFile())
+                throw new UserErrorException("No such main class: " + mainClass);
+            mainClasses.put(programSpec.filename(), mainClass);
+        }
+
+        // The descriptors of the transitive modules, e.g. written to the module index of the fat JAR.
+        Map<ModuleVersion, ModuleDescriptor> descriptors = new HashMap<>();
+        Map<ModuleVersion, HybridModularJarInfo> transitiveJars = resolveTransitiveModules(descriptors);
+        Map<ModuleVersion, Pathname> moduleJars = new HashMap<>();
+        transitiveJars.forEach((moduleVersion, info) -> moduleJars.put(moduleVersion, info.location()));
+        if (params.shake()) {
+            report.time("shake", () -> shake(moduleJars, descriptors, Set.copyOf(mainClasses.values())));
+        }
+
+        if (params.programLayout() == ProgramLayout.JLINK) {
+            report.time("jlink", () -> makeRuntimeImage(mainClasses, moduleJars));
+            return;
+        }
+
         Pathname programDirectory = output.programDirectory();
         // All programs are slight variation of a file, which we'll make here.
         //  1. The JAR is something very similar to the javahms JAR, which is responsible
@@ -259,73 +595,198 @@ class SingleModuleCompilation {
         //  The resulting JAR will be called the self-contained java wrapper for launching the
         //  hybrid module application, i.e. a self-contained hybrid module application.
         Pathname fatJarPath = output.programJarPath();
-        makeFatJar(fatJarPath);
-
-        RandomAccessFile fatJarFile = uncheckIO(() -> new RandomAccessFile(fatJarPath.path().toFile(), "r"));
-        FileChannel fatJarChannel = fatJarFile.getChannel();
-        long fatJarSize = uncheckIO(fatJarChannel::size);
+        report.time("fat-jar", () -> makeFatJar(fatJarPath, transitiveJars, descriptors, moduleJars));
+
+        try (RandomAccessFile fatJarFile = new RandomAccessFile(fatJarPath.path().toFile(), "r")) {
+            FileChannel fatJarChannel = fatJarFile.getChannel();
+            long fatJarSize = fatJarChannel.size();
+
+            switch (params.programLayout()) {
+                case SELF_CONTAINED -> mainClasses.forEach((filename, mainClass) -> report.time("program-write", () ->
+                        makeProgram(programDirectory.resolve(filename), mainClassSelection(mainClass), SELF_JAR,
+                                    Optional.of(fatJarChannel), fatJarSize)));
+                case SHARED -> {
+                    String sharedJarFilename = moduleName + ".jar";
+                    if (mainClasses.containsKey(sharedJarFilename))
+                        throw new UserErrorException("Program " + sharedJarFilename + " conflicts with the shared fat JAR");
+                    Pathname sharedJarPath = programDirectory.resolve(sharedJarFilename);
+                    report.time("program-write", () -> {
+                        sharedJarPath.delete();
+                        fatJarPath.copyTo(sharedJarPath);
+                        params.log().milestone("Wrote " + sharedJarPath);
+                        String jar = """
+                                     case "$0" in
+                                       */*) jar="${0%%/*}"/%s ;;
+                                       *) jar=%s ;;
+                                     esac""".formatted(shellQuote(sharedJarFilename), shellQuote(sharedJarFilename));
+                        mainClasses.forEach((filename, mainClass) -> makeProgram(programDirectory.resolve(filename),
+                                                                                 mainClassSelection(mainClass), jar,
+                                                                                 Optional.empty(), 0));
+                    });
+                }
+                case HARDLINK -> {
+                    var selection = new StringBuilder("case \"${0##*/}\" in\n");
+                    mainClasses.forEach((filename, mainClass) -> selection.append("  ").append(shellQuote(filename))
+                                                                          .append(") main_class=").append(shellQuote(mainClass))
+                                                                          .append(" ;;\n"));
+                    selection.append("""
+                                       *) echo "Unknown program name, the program must not be renamed: ${0##*/}" >&2; exit 2 ;;
+                                     esac""");
+                    report.time("program-write", () -> {
+                        Pathname firstProgramPath = null;
+                        for (String filename : mainClasses.keySet()) {
+                            Pathname programPath = programDirectory.resolve(filename);
+                            if (firstProgramPath == null) {
+                                makeProgram(programPath, selection.toString(), SELF_JAR, Optional.of(fatJarChannel), fatJarSize);
+                                firstProgramPath = programPath;
+                            } else {
+                                linkProgram(programPath, firstProgramPath);
+                            }
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        for (ProgramSpec programSpec : params.programs()) {
-            Pathname programPath = programDirectory.resolve(programSpec.filename());
-            String mainClassSpec = programSpec
-                    .mainClass()
-                    .map(this::qualifyClass)
-                    .orElseGet(() -> mainClass
-                            .orElseThrow(() -> new ModuleCompilerException(
-                                    "No main class specified for program: " + programSpec.filename())));
-            String mainClass = mainClassSpec.startsWith(".") ? moduleName + mainClassSpec : mainClassSpec;
-            Pathname mainClassPathname = output.outputClassDirectory().resolve(mainClass.replace('.', '/') + ".class");
-            if (!mainClassPathname.isFile())
-                throw new UserErrorException("No such main class: " + mainClass);
-            makeProgram(fatJarChannel, fatJarSize, programPath, mainClass);
+        if (params.programCdsTrainingArguments().isPresent()) {
+            report.time("program-cds", () -> {
+                for (String filename : mainClasses.keySet())
+                    trainProgramCds(programDirectory.resolve(filename), params.programCdsTrainingArguments().get());
+            });
         }
     }
 
-    private void makeFatJar(Pathname fatJarPath) {
+    /**
+     * Returns the modular JARs of this module and its transitive dependencies on the module path, except the system
+     * modules, by module name and version.  Puts the module descriptors into descriptors.
+     */
+    private Map<ModuleVersion, HybridModularJarInfo> resolveTransitiveModules(Map<ModuleVersion, ModuleDescriptor> descriptors) {
         // Maps module name and version (MODULE@VERSION) to the pathname of the modular JAR.
         Map<ModuleVersion, HybridModularJarInfo> transitiveJars = new HashMap<>();
-        {
-            ModulePath effectiveModulePath = new ModulePath().addFrom(params.modulePath());
-            effectiveModulePath.addEntry(jarResult.pathname().path());
-
-            Map<ModuleVersion, HybridModularJarInfo> allHybridModules = JarInspector.hybridModulesOf(effectiveModulePath);
-            Set<ModuleVersion> unresolved = new HashSet<>();
-            unresolved.add(new ModuleVersion(moduleName, params.version()));
-            ModuleFinder systemModuleFinder = ModuleFinder.ofSystem();
-            while (!unresolved.isEmpty()) {
-                Iterator<ModuleVersion> iterator = unresolved.iterator();
-                ModuleVersion moduleVersion = iterator.next();
-                iterator.remove();
-
-                HybridModularJarInfo info = allHybridModules.get(moduleVersion);
-                if (info == null)
-                    throw new ModuleCompilerException("Module not found on module path: " + moduleVersion);
-                transitiveJars.put(moduleVersion, info);
-
-                Optional<ModuleDescriptor> descriptor = JarInspector.moduleDescriptorOf(info.location());
-                if (descriptor.isEmpty())
-                    throw new ModuleCompilerException("No module descriptor found: " + info.location());
-
-                for (ModuleDescriptor.Requires requires : descriptor.get().requires()) {
-                    if (systemModuleFinder.find(requires.name()).isPresent()) continue;
-
-                    Optional<ModuleDescriptor.Version> compiledVersion = requires.compiledVersion();
-                    if (compiledVersion.isEmpty())
-                        throw new ModuleCompilerException("Module " + moduleVersion + " requires " + descriptor.get().name() +
-                                                          " at an unspecified version");
-                    ModuleVersion dependency = new ModuleVersion(requires.name(), compiledVersion);
-                    if (!transitiveJars.containsKey(dependency))
-                        unresolved.add(dependency);
-                }
+        ModulePath effectiveModulePath = new ModulePath().addFrom(params.modulePath());
+        effectiveModulePath.addEntry(jarResult.pathname().path());
+
+        Map<ModuleVersion, HybridModularJarInfo> allHybridModules = JarInspector.hybridModulesOf(effectiveModulePath);
+        Set<ModuleVersion> unresolved = new HashSet<>();
+        unresolved.add(new ModuleVersion(moduleName, params.version()));
+        ModuleFinder systemModuleFinder = ModuleFinder.ofSystem();
+        while (!unresolved.isEmpty()) {
+            Iterator<ModuleVersion> iterator = unresolved.iterator();
+            ModuleVersion moduleVersion = iterator.next();
+            iterator.remove();
+
+            HybridModularJarInfo info = allHybridModules.get(moduleVersion);
+            if (info == null)
+                throw new ModuleCompilerException("Module not found on module path: " + moduleVersion);
+            transitiveJars.put(moduleVersion, info);
+
+            Optional<ModuleDescriptor> descriptor = JarInspector.moduleDescriptorOf(info.location());
+            if (descriptor.isEmpty())
+                throw new ModuleCompilerException("No module descriptor found: " + info.location());
+            descriptors.put(moduleVersion, descriptor.get());
+
+            for (ModuleDescriptor.Requires requires : descriptor.get().requires()) {
+                if (systemModuleFinder.find(requires.name()).isPresent()) continue;
+
+                Optional<ModuleDescriptor.Version> compiledVersion = requires.compiledVersion();
+                if (compiledVersion.isEmpty())
+                    throw new ModuleCompilerException("Module " + moduleVersion + " requires " + descriptor.get().name() +
+                                                      " at an unspecified version");
+                ModuleVersion dependency = new ModuleVersion(requires.name(), compiledVersion);
+                if (!transitiveJars.containsKey(dependency))
+                    unresolved.add(dependency);
             }
         }
+        return transitiveJars;
+    }
 
+    /** Make the fat JAR with the module JARs, which may have been shaken. */
+    private void makeFatJar(Pathname fatJarPath, Map<ModuleVersion, HybridModularJarInfo> transitiveJars,
+                            Map<ModuleVersion, ModuleDescriptor> descriptors, Map<ModuleVersion, Pathname> moduleJars) {
         FatJar fatJar = new FatJar();
         Pathname jhmsJarPathname = jhmsJarPathname(fatJarPath.fileSystem());
         FatJarSpec spec = new FatJarSpec(jhmsJarPathname, fatJarPath);
         spec.addDirectory(FatJar.MODULE_DIRECTORY);
-        transitiveJars.values().forEach(info -> spec.addFile(info.location(), pathOfModuleInJar(info)));
+        params.reproducibleTimestamp().ifPresent(spec::setReproducibleTimestamp);
+        transitiveJars.forEach((moduleVersion, info) ->
+                spec.addModule(moduleJars.get(moduleVersion), pathOfModuleInJar(info), descriptors.get(moduleVersion)));
+        BuildEvents.FatJarEvent event = BuildEvents.fatJar();
+        event.begin();
         fatJar.extend(spec);
+        event.end();
+        if (event.shouldCommit())
+            event.set(moduleName, transitiveJars.size(), fatJarPath.readAttributes(true).size()).commit();
+    }
+
+    /** Replace the JARs of moduleJars with JARs without the classes unreachable from the main classes. */
+    private void shake(Map<ModuleVersion, Pathname> moduleJars, Map<ModuleVersion, ModuleDescriptor> descriptors,
+                       Set<String> mainClasses) {
+        Pathname shakenDirectory = output.out().resolve("shaken");
+        shakenDirectory.deleteRecursively();
+        shakenDirectory.makeDirectories();
+
+        var treeShaker = new TreeShaker();
+        mainClasses.forEach(treeShaker::addRoot);
+        params.keepRules().forEach(treeShaker::addKeepRule);
+        List<ModuleVersion> moduleVersions = new ArrayList<>(moduleJars.keySet());
+        TreeShaker.Result result = treeShaker.shake(moduleVersions.stream()
+                                                                  .map(id -> new TreeShaker.Module(descriptors.get(id), moduleJars.get(id)))
+                                                                  .toList(),
+                                                    shakenDirectory);
+        for (int i = 0; i < moduleVersions.size(); ++i)
+            moduleJars.put(moduleVersions.get(i), result.jars().get(i));
+        params.log().milestone("shook %d modules to %d of %d classes in %s", moduleJars.size(), result.keptClasses(),
+                               result.classes(), shakenDirectory);
+    }
+
+    /**
+     * Link a runtime image at OUT/image with the JDK modules required by the modules, and a launcher OUT/image/bin/N per
+     * program.  Unlike the hybrid module system, the Java module system allows only one version of a module.
+     */
+    private void makeRuntimeImage(Map<String, String> mainClasses, Map<ModuleVersion, Pathname> moduleJars) {
+        Map<String, ModuleVersion> modules = new HashMap<>();
+        for (ModuleVersion moduleVersion : moduleJars.keySet()) {
+            ModuleVersion previous = modules.put(moduleVersion.name(), moduleVersion);
+            if (previous != null)
+                throw new UserErrorException("A runtime image cannot contain several versions of a module: " +
+                                             previous + " and " + moduleVersion);
+        }
+
+        Pathname image = output.out().resolve("image");
+        // jlink fails if the output directory exists.
+        image.deleteRecursively();
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add("--module-path");
+        arguments.add(moduleJars.values().stream().map(Pathname::toString).sorted().collect(Collectors.joining(":")));
+        arguments.add("--add-modules");
+        arguments.add(moduleName);
+        arguments.add("--output");
+        arguments.add(image.toString());
+        arguments.add("--no-header-files");
+        arguments.add("--no-man-pages");
+        if (params.jlinkStripDebug())
+            arguments.add("--strip-debug");
+        params.jlinkCompress().ifPresent(compress -> arguments.add("--compress=" + compress));
+        mainClasses.forEach((filename, mainClass) -> {
+            arguments.add("--launcher");
+            arguments.add(filename + "=" + moduleName + "/" + mainClass);
+        });
+
+        ToolProvider jlink = ToolProvider.findFirst("jlink")
+                                         .orElseThrow(() -> new ModuleCompilerException("jlink not found: Run modco with a JDK"));
+        params.log().command("jlink", arguments);
+        var jlinkOutput = new StringWriter();
+        int exitCode;
+        try (var printWriter = new PrintWriter(jlinkOutput)) {
+            exitCode = jlink.run(printWriter, printWriter, arguments.toArray(String[]::new));
+        }
+        if (exitCode != 0)
+            throw new ModuleCompilerException("jlink failed: " + jlinkOutput);
+        params.log().info(jlinkOutput.toString());
+        params.log().milestone("linked %d modules to runtime image %s", moduleJars.size(), image);
     }
 
     private static String pathOfModuleInJar(HybridModularJarInfo info) {
@@ -349,19 +810,37 @@ class SingleModuleCompilation {
         return jhmsJarPathname;
     }
 
-    private void makeProgram(FileChannel fatJarChannel, long fatJarSize, Pathname programPath, String mainClass) {
+    /**
+     * Write a program with a stub that selects the main class and JAR with the given bash snippets, followed by the
+     * fat JAR if present.
+     */
+    private void makeProgram(Pathname programPath, String mainClassSelection, String jarSelection,
+                             Optional<FileChannel> fatJarChannel, long fatJarSize) {
+        BuildEvents.ProgramWriteEvent event = BuildEvents.programWrite();
+        event.begin();
+        long bytes = 0;
         try {
+            // The program may be a hard link made with --program-layout hardlink, which must not be truncated.
+            programPath.delete();
             WritableByteChannel programChannel = Files.newByteChannel(programPath.path(),
                                                                       StandardOpenOption.CREATE,
                                                                       StandardOpenOption.TRUNCATE_EXISTING,
                                                                       StandardOpenOption.WRITE);
             try {
-                programChannel.write(ByteBuffer.wrap(utf8Stub(mainClass)));
-                fatJarChannel.transferTo(0, fatJarSize, programChannel);
+                bytes += programChannel.write(ByteBuffer.wrap(utf8Stub(mainClassSelection, jarSelection)));
+                FileCounters.bytesWritten(bytes);
+                if (fatJarChannel.isPresent()) {
+                    long fatJarBytes = fatJarChannel.get().transferTo(0, fatJarSize, programChannel);
+                    FileCounters.bytesCopied(fatJarBytes);
+                    bytes += fatJarBytes;
+                }
             } finally {
                 uncheckIO(programChannel::close);
             }
 
+            // An archive made for a previous program would be stale, and would not be used anyway.
+            cdsArchivePathname(programPath).delete();
+
             // Set executable bits.
             FileMode mode = programPath.readStatus(true).mode();
             FileMode newMode = mode.withExecutable();
@@ -371,22 +850,101 @@ class SingleModuleCompilation {
             throw new UncheckedIOException(e);
         }
 
+        event.end();
+        if (event.shouldCommit())
+            event.set(moduleName, 1, bytes).commit();
         params.log().milestone("Wrote " + programPath);
     }
 
-    private byte[] utf8Stub(String mainClass) {
-        return """
+    /** Make the program a hard link to the program at target. */
+    private void linkProgram(Pathname programPath, Pathname target) {
+        programPath.delete();
+        cdsArchivePathname(programPath).delete();
+        programPath.makeHardLinkTo(target);
+        params.log().milestone("Linked " + programPath + " to " + target);
+    }
+
+    private static Pathname cdsArchivePathname(Pathname programPath) {
+        return programPath.parent().resolve(programPath.filename() + ".jsa");
+    }
+
+    /**
+     * Run the program once to dump the classes loaded by the builtin class loaders to a dynamic CDS archive next to
+     * the program.  The classes of the hybrid modules are loaded by custom class loaders and are not archived, but
+     * the JDK classes and FatMain are.  The program may exit with a non-zero exit code, e.g. if run without arguments,
+     * as long as the archive is written.  Failing to make the archive is not a build error:  The program works
+     * without it.
+     */
+    private void trainProgramCds(Pathname programPath, List<String> trainingArguments) {
+        Pathname program = Pathname.of(programPath.path().toAbsolutePath().normalize());
+        Pathname archive = cdsArchivePathname(program);
+        List<String> command = new ArrayList<>();
+        command.add(program.toString());
+        command.add("-J-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-J-Xlog:cds=off");
+        command.add("-J-Xlog:cds+dynamic=off");
+        command.addAll(trainingArguments);
+        params.log().command(command);
+
+        Pathname outputFile = program.parent().resolve(program.filename() + ".jsa.log");
+        Process process = uncheckIO(() -> new ProcessBuilder(command)
+                .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                .redirectErrorStream(true)
+                .redirectOutput(outputFile.path().toFile())
+                .start());
+        boolean exited = uncheckInterrupted(() -> process.waitFor(CDS_TRAINING_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        if (!exited) {
+            process.destroyForcibly();
+            uncheckInterrupted(() -> { process.waitFor(); });
+        }
+        String output = outputFile.readUtf8();
+        outputFile.delete();
+
+        if (exited && archive.isFile()) {
+            params.log().debugLine(() -> "Training run of " + programPath + " exited with " + process.exitValue() + ":\n" + output);
+            params.log().milestone("Wrote " + cdsArchivePathname(programPath));
+        } else {
+            archive.delete();
+            params.log().info(output);
+            params.log().infoLine("warning: no CDS archive made for " + programPath + ": " +
+                                  (exited ? "the training run exited with " + process.exitValue() :
+                                   "the training run timed out after " + CDS_TRAINING_TIMEOUT.toSeconds() + "s"));
+        }
+    }
+
+    /** Returns the bash snippet of a stub that sets main_class. */
+    private static String mainClassSelection(String mainClass) {
+        return "main_class=" + shellQuote(mainClass);
+    }
+
+    /**
+     * The stub resolves java with bash built-ins only, as it is run on each launch of the program:  java in PATH,
+     * $JAVA_HOME/bin/java, or the java of the JDK that made the program.  If there is a CDS archive next to the
+     * program, it is used unless it doesn't match the java and program, in which case java silently falls back to
+     * loading the classes.  The length of the stub is a multiple of {@link FatJar#ALIGNMENT}.
+     *
+     * <p>The mainClassSelection and jarSelection are bash snippets that set main_class and jar.</p>
+     */
+    private byte[] utf8Stub(String mainClassSelection, String jarSelection) {
+        String javaHomeHint = shellQuote(System.getProperty("java.home"));
+        String script = """
         #!/bin/bash
         
-        if java --version >/dev/null 2>/dev/null; then
+        # 'hash' searches PATH without spawning a process.
+        if hash java 2>/dev/null; then
           java=java
-        elif test -d "$JAVA_HOME"; then
+        elif test -n "$JAVA_HOME" && test -x "$JAVA_HOME"/bin/java; then
           java="$JAVA_HOME"/bin/java
+        elif test -x %s/bin/java; then
+          java=%s/bin/java
         else
           echo "No java found in PATH, nor was JAVA_HOME set" >&2
           exit 2
         fi
         
+        %s
+        %s
+        
         java_args=()
         while [ "${1:0:2}" == -J ]; do
           java_args+=("${1:2}")
@@ -399,8 +957,22 @@ class SingleModuleCompilation {
           shift
         done
         
-        exec "$java" -cp "$0" "${java_args[@]}" no.ion.jhms.FatMain "${jhms_args[@]}" %s %s "$@"
-        """.formatted(moduleName, mainClass)
-           .getBytes(StandardCharsets.UTF_8);
+        cds_args=()
+        if test -r "$0".jsa; then
+          cds_args=(-XX:SharedArchiveFile="$0".jsa -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off)
+        fi
+        
+        exec "$java" -cp "$jar" "${cds_args[@]}" "${java_args[@]}" no.ion.jhms.FatMain "${jhms_args[@]}" %s "$main_class" "$@"
+        """.formatted(javaHomeHint, javaHomeHint, mainClassSelection, jarSelection, shellQuote(moduleName));
+
+        // Pad with newlines, which bash never reads past exec, to keep the nested module JARs of the fat JAR aligned.
+        byte[] stub = script.getBytes(StandardCharsets.UTF_8);
+        int padding = (FatJar.ALIGNMENT - stub.length % FatJar.ALIGNMENT) % FatJar.ALIGNMENT;
+        return (script + "\n".repeat(padding)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the string single-quoted for bash. */
+    private static String shellQuote(String string) {
+        return "'" + string.replace("'", "'\\''") + "'";
     }
 }
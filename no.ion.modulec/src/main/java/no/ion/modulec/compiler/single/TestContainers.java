@@ -0,0 +1,171 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.jhms.HybridModuleContainer;
+import no.ion.jhms.RootHybridModule;
+import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.cache.Digest;
+import no.ion.modulec.classfile.ClassFile;
+import no.ion.modulec.compiler.ModulePath;
+import no.ion.modulec.file.FileCounters;
+import no.ion.modulec.file.Pathname;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Warm containers for running the tests of modules in the JVM of the compiler, one per module under test, to avoid
+ * discovering the module path, and loading and JIT compiling JUnit and the other dependencies, on each make of a
+ * {@link ModuleCompiler} that makes the same module repeatedly, e.g. in a loop or a watch mode.
+ *
+ * <p>A container is reused as long as the module path and its content are unchanged.  A hybrid module cannot be
+ * replaced in a container, so when the test JAR has changed, a copy of the new test JAR is added with a version
+ * unique within the container, see {@link #generationVersion(Optional, int)}, making a new generation of the module
+ * under test.  The class loaders of the dependencies are shared by the generations, while the classes of the module
+ * under test are loaded anew.  The old generations stay in the container until it is replaced after
+ * {@link #MAX_GENERATIONS} generations.</p>
+ */
+class TestContainers implements AutoCloseable {
+    static final String TEST_RUNNER_MODULE = "no.ion.modulec.junit";
+    static final String TEST_RUNNER_VERSION = "5.9.1";
+    static final int MAX_GENERATIONS = 10;
+
+    private final Map<String, Pooled> containers = new HashMap<>();
+
+    /** The test runner and the module under test resolved in a container, and whether the container was reused. */
+    record Lease(RootHybridModule testBooter, RootHybridModule module, boolean warm) {}
+
+    private static class Pooled implements AutoCloseable {
+        private final String dependencyKey;
+        private final HybridModuleContainer container;
+        private final RootHybridModule testBooter;
+        private int generation = 0;
+        private String testJarDigest = null;
+        private RootHybridModule module = null;
+        private Pathname testJarCopy = null;
+
+        private Pooled(String dependencyKey, HybridModuleContainer container, RootHybridModule testBooter) {
+            this.dependencyKey = dependencyKey;
+            this.container = container;
+            this.testBooter = testBooter;
+        }
+
+        @Override
+        public void close() {
+            container.close();
+            if (testJarCopy != null)
+                testJarCopy.delete();
+        }
+    }
+
+    TestContainers() {}
+
+    /**
+     * Returns the test runner and the module under test resolved in a warm container if possible.  The dependency key
+     * must change whenever the content of the module path changes.  Copies of the test JAR are written to
+     * {@code copyDirectory}.
+     */
+    synchronized Lease acquire(String moduleName, Optional<ModuleDescriptor.Version> version, ModulePath modulePath,
+                               String dependencyKey, Pathname testJar, Pathname copyDirectory) {
+        Pooled pooled = containers.get(moduleName);
+        boolean warm = pooled != null && pooled.dependencyKey.equals(dependencyKey) && pooled.generation < MAX_GENERATIONS;
+        if (!warm) {
+            if (pooled != null)
+                pooled.close();
+            containers.remove(moduleName);
+
+            var container = new HybridModuleContainer();
+            try {
+                if (!modulePath.isEmpty())
+                    container.discoverHybridModulesFromModulePath(modulePath.toColonSeparatedString());
+                RootHybridModule testBooter = container.resolve(new HybridModuleContainer
+                        .ResolveParams(TEST_RUNNER_MODULE)
+                        .requireVersion(TEST_RUNNER_VERSION));
+                pooled = new Pooled(dependencyKey, container, testBooter);
+            } catch (RuntimeException e) {
+                container.close();
+                throw e;
+            }
+            containers.put(moduleName, pooled);
+        }
+
+        String testJarDigest = new Digest().addFile(testJar).hex();
+        if (pooled.module == null || !pooled.testJarDigest.equals(testJarDigest)) {
+            ++pooled.generation;
+            HybridModuleContainer.ResolveParams resolveParams = new HybridModuleContainer.ResolveParams(moduleName);
+            if (pooled.generation == 1) {
+                // The first generation is the test JAR itself, as when not reusing containers.  The test JAR may be
+                // rewritten by a later make, but by then its generation is no longer used.
+                pooled.container.discoverHybridModules(testJar.path());
+                version.ifPresent(resolveParams::requireVersion);
+            } else {
+                ModuleDescriptor.Version generationVersion = generationVersion(version, pooled.generation);
+                Pathname copy = copyDirectory.resolve(moduleName + "@" + generationVersion + ".jar");
+                writeVersionedCopy(testJar, copy, generationVersion.toString());
+                pooled.container.discoverHybridModules(copy.path());
+                resolveParams.requireVersion(generationVersion);
+                // The container keeps the previous copy open, which is fine after deleting it.
+                if (pooled.testJarCopy != null)
+                    pooled.testJarCopy.delete();
+                pooled.testJarCopy = copy;
+            }
+            pooled.module = pooled.container.resolve(resolveParams);
+            pooled.testJarDigest = testJarDigest;
+        }
+
+        return new Lease(pooled.testBooter, pooled.module, warm);
+    }
+
+    /** The version of generation 2 and later of a module, e.g. 1.2+modco.3 for generation 3 of version 1.2. */
+    static ModuleDescriptor.Version generationVersion(Optional<ModuleDescriptor.Version> version, int generation) {
+        String base = version.map(ModuleDescriptor.Version::toString).orElse("0");
+        return ModuleDescriptor.Version.parse(base + (base.contains("+") ? "." : "+") + "modco." + generation);
+    }
+
+    @Override
+    public synchronized void close() {
+        containers.values().forEach(Pooled::close);
+        containers.clear();
+    }
+
+    /** Copies the JAR with the version of the module descriptors set to version. */
+    private static void writeVersionedCopy(Pathname jar, Pathname copy, String version) {
+        copy.makeParentDirectories();
+        try (JarFile jarFile = new JarFile(jar.file(), false);
+             OutputStream outputStream = Files.newOutputStream(copy.path());
+             var jarOutputStream = new JarOutputStream(outputStream)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                var newEntry = new JarEntry(entry.getName());
+                newEntry.setTime(entry.getTime());
+                jarOutputStream.putNextEntry(newEntry);
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    if (entry.getName().endsWith("module-info.class")) {
+                        byte[] moduleInfo = inputStream.readAllBytes();
+                        FileCounters.bytesRead(moduleInfo.length);
+                        try {
+                            jarOutputStream.write(ClassFile.withModuleVersion(moduleInfo, version));
+                        } catch (IllegalArgumentException e) {
+                            throw new ModuleCompilerException("Failed to set the version of " + entry.getName() +
+                                                              " in " + jar + ": " + e.getMessage());
+                        }
+                    } else {
+                        FileCounters.bytesCopied(inputStream.transferTo(jarOutputStream));
+                    }
+                }
+                jarOutputStream.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
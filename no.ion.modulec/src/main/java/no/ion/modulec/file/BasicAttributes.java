@@ -16,11 +16,13 @@ public class BasicAttributes {
 
     public static BasicAttributes of(Path path, boolean followSymlink) {
         var options = toOpenLinks(followSymlink);
+        FileCounters.statCall();
         BasicFileAttributes attributes = uncheckIO(() -> Files.readAttributes(path, BasicFileAttributes.class, options));
         return new BasicAttributes(attributes);
     }
 
     public static Optional<BasicAttributes> ifExists(Path path, boolean followSymlink) {
+        FileCounters.statCall();
         return uncheckIOIgnoring(() -> Files.readAttributes(path, BasicFileAttributes.class, toOpenLinks(followSymlink)),
                                  NoSuchFileException.class)
                 .map(BasicAttributes::new);
@@ -0,0 +1,160 @@
+package no.ion.modulec.file;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
+import static no.ion.modulec.util.Exceptions.uncheckInterrupted;
+
+/**
+ * Watches directory trees and files for changes with a {@link WatchService}.
+ *
+ * <p>A directory tree is watched by watching each directory in it, including directories created later.  A file is
+ * watched by watching its parent directory for events on that filename.  Changes may be lost, e.g. when the events
+ * overflow, in which case {@link Changes#overflow()} is true and the caller must assume anything may have
+ * changed.</p>
+ */
+public class DirectoryWatcher implements AutoCloseable {
+    private final WatchService watchService;
+    private final Map<WatchKey, Watched> watched = new HashMap<>();
+    private final Map<Pathname, WatchKey> keys = new HashMap<>();
+
+    /** The paths that changed, and whether other changes may have been lost. */
+    public record Changes(Set<Pathname> paths, boolean overflow) {
+        public Changes {
+            paths = Set.copyOf(paths);
+        }
+    }
+
+    /** A watched directory, with the filenames to watch in it, or all if empty. */
+    private record Watched(Pathname directory, boolean tree, Optional<Set<String>> filenames) {}
+
+    public DirectoryWatcher(Pathname anyPathname) {
+        this.watchService = uncheckIO(() -> anyPathname.fileSystem().newWatchService());
+    }
+
+    /**
+     * Watches the directory tree, or file, at pathname.  A pathname already watched is ignored.  A file that does not
+     * exist is watched if its parent directory exists.
+     */
+    public DirectoryWatcher watch(Pathname pathname) {
+        if (pathname.isDirectory()) {
+            watchTree(pathname);
+        } else {
+            Pathname directory = pathname.parent();
+            if (directory.isDirectory())
+                register(directory, false, Optional.of(Set.of(pathname.filename())));
+        }
+        return this;
+    }
+
+    /**
+     * Waits until something has changed and then until nothing has changed for the quiet period, to collect a burst of
+     * changes, e.g. when an editor saves a file, or when switching branches.
+     */
+    public Changes awaitChanges(Duration quietPeriod) {
+        Set<Pathname> paths = new HashSet<>();
+        boolean[] overflow = { false };
+        // Events on files in a watched directory that are not watched themselves are ignored.
+        while (paths.isEmpty() && !overflow[0])
+            handle(uncheckInterrupted(() -> watchService.take()), paths, overflow);
+        for (WatchKey key; (key = uncheckInterrupted(() -> watchService.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS))) != null; )
+            handle(key, paths, overflow);
+        return new Changes(paths, overflow[0]);
+    }
+
+    /** Returns the changes seen so far without waiting, which may be none. */
+    public Changes pollChanges() {
+        Set<Pathname> paths = new HashSet<>();
+        boolean[] overflow = { false };
+        for (WatchKey key; (key = watchService.poll()) != null; )
+            handle(key, paths, overflow);
+        return new Changes(paths, overflow[0]);
+    }
+
+    @Override
+    public void close() {
+        uncheckIO(watchService::close);
+    }
+
+    private void handle(WatchKey key, Set<Pathname> paths, boolean[] overflow) {
+        Watched directory = watched.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow[0] = true;
+                continue;
+            }
+            if (directory == null) continue;
+            String filename = ((Path) event.context()).toString();
+            if (directory.filenames().isPresent() && !directory.filenames().get().contains(filename)) continue;
+            Pathname pathname = directory.directory().resolve(filename);
+            paths.add(pathname);
+            if (directory.tree() && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && pathname.isDirectory()) {
+                // Files may have been created in the new directory before it was watched.
+                register(pathname, true, Optional.empty());
+                pathname.visit(false, false, (child, attributes) -> {
+                    if (attributes.isDirectory())
+                        register(child, true, Optional.empty());
+                    paths.add(child);
+                    return Pathname.VisitHint.CONTINUE;
+                });
+            }
+        }
+
+        if (!key.reset()) {
+            // The directory has been removed, or is no longer accessible.
+            watched.remove(key);
+            if (directory != null) {
+                keys.remove(directory.directory());
+                paths.add(directory.directory());
+            }
+        }
+    }
+
+    private void watchTree(Pathname root) {
+        root.visit(false, true, (pathname, attributes) -> {
+            if (attributes.isDirectory())
+                register(pathname, true, Optional.empty());
+            return Pathname.VisitHint.CONTINUE;
+        });
+    }
+
+    private void register(Pathname directory, boolean tree, Optional<Set<String>> filenames) {
+        WatchKey key = keys.get(directory);
+        // The key of a removed directory is invalid until its removal has been handled.
+        Watched existing = key == null || !key.isValid() ? null : watched.get(key);
+        if (existing != null) {
+            if (existing.filenames().isEmpty() || (filenames.isPresent() && existing.filenames().get().containsAll(filenames.get())))
+                return;
+            if (filenames.isPresent()) {
+                Set<String> union = new HashSet<>(existing.filenames().get());
+                union.addAll(filenames.get());
+                filenames = Optional.of(Set.copyOf(union));
+            }
+            tree = tree || existing.tree();
+        }
+
+        try {
+            key = directory.path().register(watchService,
+                                            StandardWatchEventKinds.ENTRY_CREATE,
+                                            StandardWatchEventKinds.ENTRY_DELETE,
+                                            StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            // E.g. the directory was removed while visiting the tree:  Its removal is reported by its parent.
+            return;
+        }
+        keys.put(directory, key);
+        watched.put(key, new Watched(directory, tree, filenames));
+    }
+}
@@ -0,0 +1,38 @@
+package no.ion.modulec.file;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters of the file system operations done through the classes of this package.  File system
+ * operations done by e.g. javac and jar(1) are not counted.
+ */
+public final class FileCounters {
+    private static final LongAdder filesScanned = new LongAdder();
+    private static final LongAdder statCalls = new LongAdder();
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+
+    private FileCounters() {}
+
+    public record Snapshot(long filesScanned, long statCalls, long bytesRead, long bytesWritten) {
+        public Snapshot minus(Snapshot that) {
+            return new Snapshot(filesScanned - that.filesScanned,
+                                statCalls - that.statCalls,
+                                bytesRead - that.bytesRead,
+                                bytesWritten - that.bytesWritten);
+        }
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(filesScanned.sum(), statCalls.sum(), bytesRead.sum(), bytesWritten.sum());
+    }
+
+    /** A directory entry was found while listing a directory. */
+    static void fileScanned() { filesScanned.increment(); }
+    static void statCall() { statCalls.increment(); }
+
+    /** Count bytes read or written outside of this package, e.g. when copying a stream. */
+    public static void bytesRead(long bytes) { if (bytes > 0) bytesRead.add(bytes); }
+    public static void bytesWritten(long bytes) { if (bytes > 0) bytesWritten.add(bytes); }
+    public static void bytesCopied(long bytes) { bytesRead(bytes); bytesWritten(bytes); }
+}
@@ -0,0 +1,269 @@
+package no.ion.modulec.file;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A resident snapshot of the basic attributes of the files and directories in directory trees, kept up to date with
+ * change notifications from a {@link DirectoryWatcher}, for a long-running process making the same module repeatedly.
+ *
+ * <p>Getting a {@link Snapshot} of a tree reads the pending notifications and reads the attributes of only the changed
+ * paths, so the cost is proportional to the number of changes rather than to the size of the tree.  A tree is scanned
+ * anew when notifications have been lost, or when a notification is inconsistent with the snapshot, e.g. a file in a
+ * directory not in the snapshot.  The {@link Snapshot#version() version} of a snapshot changes whenever it might have
+ * changed, so equal versions mean an unchanged tree.</p>
+ *
+ * <p>A notification is delivered shortly after the change, so before a snapshot is returned, the modification time
+ * of each directory in it is checked:  A directory with a changed modification time is listed, and the entries
+ * created or removed since the snapshot, but not yet notified, are added or removed.  A directory modified within
+ * {@link #RACY_PERIOD} of being checked is listed each time, as a later change may not change its modification time
+ * given the granularity of the file system timestamps.  This costs one stat(2) per directory, but no reading of
+ * directories or of the files in them.  A file modified in place just before getting a snapshot may still not be
+ * seen until its notification arrives, which suits a process that makes on notifications, like modco --watch.</p>
+ */
+public class FileStates implements AutoCloseable {
+    static final Duration RACY_PERIOD = Duration.ofSeconds(2);
+
+    private final DirectoryWatcher watcher;
+    private final Map<Pathname, Tree> trees = new HashMap<>();
+    private long nextVersion = 1;
+
+    /** The attributes of the paths below the root by path relative the root, and the version of the snapshot. */
+    public record Snapshot(Pathname root, long version, NavigableMap<String, BasicAttributes> entries) {}
+
+    private static class Tree {
+        private final Pathname root;
+        private final boolean followSymlinks;
+        private final TreeMap<String, BasicAttributes> entries = new TreeMap<>();
+        /** The attributes of the root directory, or null if it is not a directory. */
+        private BasicAttributes rootAttributes = null;
+        /** The directories, by path relative the root, with "" for the root, to list on the next check. */
+        private final Set<String> racyDirectories = new HashSet<>();
+        private boolean valid = false;
+        private long version = 0;
+
+        private Tree(Pathname root, boolean followSymlinks) {
+            this.root = root;
+            this.followSymlinks = followSymlinks;
+        }
+    }
+
+    public FileStates(Pathname anyPathname) {
+        this.watcher = new DirectoryWatcher(anyPathname);
+    }
+
+    /**
+     * Returns the snapshot of the directory tree at root, which should not change while in use.  A root that is not a
+     * directory has no entries.
+     */
+    public synchronized Snapshot snapshot(Pathname root, boolean followSymlinks) {
+        root = root.normalize();
+        update();
+
+        Tree tree = trees.get(root);
+        if (tree == null || tree.followSymlinks != followSymlinks) {
+            tree = new Tree(root, followSymlinks);
+            trees.put(root, tree);
+        }
+        if (tree.valid)
+            checkDirectories(tree);
+        if (!tree.valid)
+            rescan(tree);
+        return new Snapshot(root, tree.version, Collections.unmodifiableNavigableMap(tree.entries));
+    }
+
+    @Override
+    public synchronized void close() {
+        watcher.close();
+        trees.clear();
+    }
+
+    /** Returns the entries of the directory tree at root by scanning it, without keeping a snapshot. */
+    public static TreeMap<String, BasicAttributes> scan(Pathname root, boolean followSymlinks) {
+        var entries = new TreeMap<String, BasicAttributes>();
+        Pathname normalizedRoot = root.normalize();
+        normalizedRoot.visit(followSymlinks, false, (pathname, attributes) -> {
+            entries.put(pathname.relative(normalizedRoot).toString(), attributes);
+            return Pathname.VisitHint.CONTINUE;
+        });
+        return entries;
+    }
+
+    private void rescan(Tree tree) {
+        // Watch before scanning, to not miss changes made during the scan.
+        watcher.watch(tree.root);
+        Instant checked = Instant.now();
+        tree.rootAttributes = tree.root.readAttributesIfExists(tree.followSymlinks).filter(BasicAttributes::isDirectory).orElse(null);
+        tree.entries.clear();
+        tree.entries.putAll(scan(tree.root, tree.followSymlinks));
+        tree.racyDirectories.clear();
+        if (tree.rootAttributes != null)
+            checkedDirectory(tree, "", tree.rootAttributes, checked);
+        tree.entries.forEach((relative, attributes) -> {
+            if (attributes.isDirectory())
+                checkedDirectory(tree, relative, attributes, checked);
+        });
+        tree.valid = true;
+        tree.version = nextVersion++;
+    }
+
+    /**
+     * Adds and removes the entries of the directories created or removed since the snapshot, for which no notification
+     * has been applied yet, as found by listing each directory whose modification time has changed since the snapshot.
+     * Invalidates the tree if the root has been created or removed.
+     */
+    private void checkDirectories(Tree tree) {
+        Instant checked = Instant.now();
+        BasicAttributes rootAttributes = tree.root.readAttributesIfExists(tree.followSymlinks).filter(BasicAttributes::isDirectory).orElse(null);
+        if (rootAttributes == null || tree.rootAttributes == null) {
+            if (rootAttributes != null || tree.rootAttributes != null)
+                tree.valid = false;
+            return;
+        }
+
+        boolean changed = false;
+        try {
+            if (mustList(tree, "", tree.rootAttributes, rootAttributes)) {
+                changed = listDirectory(tree, tree.root, "");
+                tree.rootAttributes = rootAttributes;
+                checkedDirectory(tree, "", rootAttributes, checked);
+            }
+
+            // A directory sorts before the entries below it, so the entries of a removed directory are removed before
+            // they are checked.
+            List<String> directories = new ArrayList<>();
+            tree.entries.forEach((relative, attributes) -> {
+                if (attributes.isDirectory())
+                    directories.add(relative);
+            });
+            for (String relative : directories) {
+                BasicAttributes previous = tree.entries.get(relative);
+                if (previous == null || !previous.isDirectory()) continue;
+                Pathname directory = tree.root.resolve(relative);
+                Optional<BasicAttributes> attributes = directory.readAttributesIfExists(tree.followSymlinks);
+                if (attributes.isEmpty() || !attributes.get().isDirectory()) {
+                    // Removed or replaced without a change to the modification time of its parent.
+                    tree.valid = false;
+                    return;
+                }
+                if (mustList(tree, relative, previous, attributes.get())) {
+                    changed |= listDirectory(tree, directory, relative);
+                    tree.entries.put(relative, attributes.get());
+                    checkedDirectory(tree, relative, attributes.get(), checked);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // E.g. a directory removed while listing it.
+            tree.valid = false;
+            return;
+        }
+
+        if (changed)
+            tree.version = nextVersion++;
+    }
+
+    private static boolean mustList(Tree tree, String relative, BasicAttributes previous, BasicAttributes current) {
+        return tree.racyDirectories.contains(relative) || !previous.lastModified().equals(current.lastModified());
+    }
+
+    /** Remembers to list a directory on the next check if it was modified too recently before checked. */
+    private static void checkedDirectory(Tree tree, String relative, BasicAttributes attributes, Instant checked) {
+        if (attributes.lastModified().isAfter(checked.minus(RACY_PERIOD))) {
+            tree.racyDirectories.add(relative);
+        } else {
+            tree.racyDirectories.remove(relative);
+        }
+    }
+
+    /** Adds the new and removes the missing entries of the directory, returning whether the snapshot changed. */
+    private boolean listDirectory(Tree tree, Pathname directory, String relative) {
+        String prefix = relative.isEmpty() ? "" : relative + "/";
+        Set<String> filenames = new HashSet<>();
+        directory.forEachDirectoryEntry(entry -> filenames.add(entry.filename()));
+
+        Set<String> previousFilenames = new HashSet<>();
+        NavigableMap<String, BasicAttributes> below = relative.isEmpty() ? tree.entries : tree.entries.subMap(prefix, true, relative + "0", false);
+        below.keySet().forEach(path -> {
+            String rest = path.substring(prefix.length());
+            if (rest.indexOf('/') == -1)
+                previousFilenames.add(rest);
+        });
+
+        boolean changed = false;
+        for (String filename : previousFilenames) {
+            if (filenames.contains(filename)) continue;
+            String path = prefix + filename;
+            tree.entries.remove(path);
+            tree.entries.subMap(path + "/", path + "0").clear();
+            changed = true;
+        }
+        for (String filename : filenames) {
+            if (previousFilenames.contains(filename)) continue;
+            String path = prefix + filename;
+            Pathname pathname = directory.resolve(filename);
+            Optional<BasicAttributes> attributes = pathname.readAttributesIfExists(tree.followSymlinks);
+            if (attributes.isEmpty()) continue;
+            tree.entries.put(path, attributes.get());
+            if (attributes.get().isDirectory())
+                scan(pathname, tree.followSymlinks).forEach((subpath, subattributes) -> tree.entries.put(path + "/" + subpath, subattributes));
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** Applies the pending notifications to the snapshots. */
+    private void update() {
+        DirectoryWatcher.Changes changes = watcher.pollChanges();
+        if (changes.overflow()) {
+            trees.values().forEach(tree -> tree.valid = false);
+            return;
+        }
+
+        // A directory sorts before the paths below it.
+        List<Pathname> sorted = changes.paths().stream().map(Pathname::normalize).sorted(Comparator.comparing(Pathname::string)).toList();
+        for (Pathname pathname : sorted) {
+            for (Tree tree : trees.values()) {
+                if (!tree.valid || !pathname.path().startsWith(tree.root.path())) continue;
+                if (pathname.equals(tree.root)) {
+                    tree.valid = false;
+                    continue;
+                }
+
+                String relative = pathname.relative(tree.root).toString();
+                Optional<BasicAttributes> attributes = pathname.readAttributesIfExists(tree.followSymlinks);
+                Pathname parent = pathname.parent();
+                if (attributes.isPresent() && !parent.equals(tree.root) &&
+                    !isDirectory(tree.entries.get(parent.relative(tree.root).toString()))) {
+                    // The parent directory is not in the snapshot.
+                    tree.valid = false;
+                    continue;
+                }
+
+                BasicAttributes previous = attributes.isPresent() ?
+                        tree.entries.put(relative, attributes.get()) :
+                        tree.entries.remove(relative);
+                if (isDirectory(previous) && !attributes.map(BasicAttributes::isDirectory).orElse(false)) {
+                    // The entries of a removed directory are all below relative + "/", and before relative + "0".
+                    tree.entries.subMap(relative + "/", relative + "0").clear();
+                }
+                tree.version = nextVersion++;
+            }
+        }
+    }
+
+    private static boolean isDirectory(BasicAttributes attributes) {
+        return attributes != null && attributes.isDirectory();
+    }
+}
@@ -18,11 +18,13 @@ public class FileStatus {
     private final Map<String, Object> attributes;
 
     public static FileStatus of(Path path, boolean followSymlinks) {
+        FileCounters.statCall();
         Map<String, Object> attributes = uncheckIO(() -> Files.readAttributes(path, "unix:*", toOpenLinks(followSymlinks)));
         return new FileStatus(attributes);
     }
 
     public static Optional<FileStatus> ifExists(Path path, boolean followSymlinks) {
+        FileCounters.statCall();
         final Map<String, Object> attributes;
         try {
             attributes = Files.readAttributes(path, "unix:*", toOpenLinks(followSymlinks));
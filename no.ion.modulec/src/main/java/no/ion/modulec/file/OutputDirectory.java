@@ -37,6 +37,8 @@ public class OutputDirectory {
         this.owner = owner;
     }
 
+    public Pathname out() { return out; }
+
     private Pathname ownerPathname() { return out.resolve("owner"); }
 
     public Pathname emptyDirectory() {
@@ -69,10 +71,44 @@ public class OutputDirectory {
         return outputTestClassDirectory;
     }
 
+    /** The directory of the generated files added to the test JAR, e.g. the test index. */
+    public Pathname testIndexDirectory() {
+        return out.resolve("test/index");
+    }
+
     public Pathname testCompilationChecksumFile() {
         return out.resolve("testCompile.sum");
     }
 
+    /** The results of the previous test runs, see {@link no.ion.modulec.cache.TestResults}. */
+    public Pathname testResultsFile() {
+        return out.resolve("test-results");
+    }
+
+    /** The results written by the test runner of the current test run. */
+    public Pathname testRunResultsFile() {
+        return out.resolve("test-run-results");
+    }
+
+    /** The directory of the copies of the test JAR loaded into a reused test container. */
+    public Pathname testJarCopyDirectory() {
+        return out.resolve("test/copies");
+    }
+
+    /** The results written by the test runner of shard {@code shard} of the current test run. */
+    public Pathname testShardRunResultsFile(int shard) {
+        return out.resolve("test-run-results." + shard);
+    }
+
+    /** The output of the test runner of shard {@code shard} of the current test run. */
+    public Pathname testShardOutputFile(int shard) {
+        return out.resolve("test-run-output." + shard);
+    }
+
+    public Pathname buildReportFile() {
+        return out.resolve("build-report.json");
+    }
+
     public void setJarFilename(String filename) {
         if (this.jarFilename != null)
             throw new IllegalStateException("jar filename already set");
@@ -81,6 +117,8 @@ public class OutputDirectory {
         this.jarFilename = filename;
     }
 
+    public Optional<String> jarFilename() { return Optional.ofNullable(jarFilename); }
+
     /** Prerequisite: {@link #setJarFilename(String)} must already have been invoked. */
     public Pathname jarPathname() {
         if (jar == null) {
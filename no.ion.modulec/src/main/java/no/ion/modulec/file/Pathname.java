@@ -3,6 +3,8 @@ package no.ion.modulec.file;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
@@ -119,6 +121,7 @@ public class Pathname {
         DirectoryStream<Path> directoryStream = uncheckIO(() -> Files.newDirectoryStream(path));
         try {
             for (Path subpath : directoryStream) {
+                FileCounters.fileScanned();
                 callback.accept(Pathname.of(subpath));
             }
         } finally {
@@ -164,6 +167,7 @@ public class Pathname {
         do {
             try (OpenDirectory openDirectory = dirs.remove(dirs.size() - 1).openDirectory()) {
                 for (Pathname directory : openDirectory) {
+                    FileCounters.fileScanned();
                     BasicAttributes attributes = directory.readAttributes(followSymlinks);
                     VisitHint hint = callback.apply(directory, attributes);
                     if (hint == VisitHint.STOP)
@@ -335,10 +339,18 @@ public class Pathname {
     }
 
     /** Reads and returns the UTF-8 content of the regular file at this pathname. */
-    public String readUtf8() { return uncheckIO(() -> Files.readString(path)); }
+    public String readUtf8() {
+        return uncheckIO(() -> decodeUtf8(Files.readAllBytes(path)));
+    }
 
     public Optional<String> readUtf8IfExists() {
-        return uncheckIOIgnoring(() -> Files.readString(path), NoSuchFileException.class);
+        return uncheckIOIgnoring(() -> decodeUtf8(Files.readAllBytes(path)), NoSuchFileException.class);
+    }
+
+    /** Decodes the bytes read as UTF-8, failing on malformed input as Files.readString() does. */
+    private static String decodeUtf8(byte[] bytes) throws CharacterCodingException {
+        FileCounters.bytesRead(bytes.length);
+        return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
     }
 
     /** Open input stream. */
@@ -348,7 +360,9 @@ public class Pathname {
 
     /** Writes the string in UTF-8 encoding as the content of the regular file at this pathname. */
     public Pathname writeUtf8(String string, OpenOption... openOptions) {
-        uncheckIO(() -> Files.writeString(path, string, StandardCharsets.UTF_8, openOptions));
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        uncheckIO(() -> Files.write(path, bytes, openOptions));
+        FileCounters.bytesWritten(bytes.length);
         return this;
     }
 
@@ -377,6 +391,12 @@ public class Pathname {
         return this;
     }
 
+    /** Create a hard link at this path to the existing file, see link(2). */
+    public Pathname makeHardLinkTo(Pathname existing) {
+        uncheckIO(() -> Files.createLink(path, existing.path()));
+        return this;
+    }
+
     /** Get the UNIX file status, see stat(2). */
     public FileStatus readStatus(boolean followSymlinks) { return FileStatus.of(path, followSymlinks); }
 
@@ -472,6 +492,9 @@ public class Pathname {
 
     public void copyTo(Path target, CopyOption... options) {
         uncheckIO(() -> Files.copy(path, target, options));
+        long size = uncheckIO(() -> Files.size(target));
+        FileCounters.bytesRead(size);
+        FileCounters.bytesWritten(size);
     }
 
     public void copyTo(String target, CopyOption... options) { copyTo(fileSystem().getPath(target), options); }
@@ -13,11 +13,11 @@ public class UncheckedInputStream extends InputStream {
         this.inputStream = inputStream;
     }
 
-    @Override public int read(byte[] b) throws IOException { return inputStream.read(b); }
-    @Override public int read(byte[] b, int off, int len) throws IOException { return inputStream.read(b, off, len); }
-    @Override public byte[] readAllBytes() throws IOException { return inputStream.readAllBytes(); }
-    @Override public byte[] readNBytes(int len) throws IOException {  return inputStream.readNBytes(len); }
-    @Override public int readNBytes(byte[] b, int off, int len) throws IOException { return inputStream.readNBytes(b, off, len); }
+    @Override public int read(byte[] b) throws IOException { return counted(inputStream.read(b)); }
+    @Override public int read(byte[] b, int off, int len) throws IOException { return counted(inputStream.read(b, off, len)); }
+    @Override public byte[] readAllBytes() throws IOException { return counted(inputStream.readAllBytes()); }
+    @Override public byte[] readNBytes(int len) throws IOException {  return counted(inputStream.readNBytes(len)); }
+    @Override public int readNBytes(byte[] b, int off, int len) throws IOException { return counted(inputStream.readNBytes(b, off, len)); }
     @Override public long skip(long n) throws IOException { return inputStream.skip(n); }
     @Override public void skipNBytes(long n) throws IOException { inputStream.skipNBytes(n); }
     @Override public int available() throws IOException { return inputStream.available(); }
@@ -25,7 +25,25 @@ public class UncheckedInputStream extends InputStream {
     @Override public synchronized void mark(int readlimit) { inputStream.mark(readlimit); }
     @Override public synchronized void reset() throws IOException { inputStream.reset(); }
     @Override public boolean markSupported() { return inputStream.markSupported(); }
-    @Override public long transferTo(OutputStream out) throws IOException { return inputStream.transferTo(out); }
-    @Override public int read() throws IOException { return inputStream.read(); }
+    @Override public long transferTo(OutputStream out) throws IOException {
+        long bytes = inputStream.transferTo(out);
+        FileCounters.bytesRead(bytes);
+        return bytes;
+    }
+    @Override public int read() throws IOException {
+        int b = inputStream.read();
+        if (b != -1) FileCounters.bytesRead(1);
+        return b;
+    }
+
+    private static int counted(int bytes) {
+        FileCounters.bytesRead(bytes);
+        return bytes;
+    }
+
+    private static byte[] counted(byte[] bytes) {
+        FileCounters.bytesRead(bytes.length);
+        return bytes;
+    }
 }
 
@@ -1,49 +1,72 @@
 package no.ion.modulec.jar;
 
 import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.file.FileCounters;
 import no.ion.modulec.file.Pathname;
 
-import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 /**
  * Class to create a fat JAR by copying and extending an existing JAR.
+ *
+ * <p>The modular JARs added with {@link FatJarSpec#addModule(Pathname, String, ModuleDescriptor) addModule} are stored
+ * uncompressed with their content aligned to {@link #ALIGNMENT} bytes, so they can be read or mapped in place, and
+ * are listed in a {@link ModuleIndex} written as the last entry.</p>
  */
 public class FatJar {
     /** The path of the module directory in a fat JAR, WITH an ending '/'. */
     public static String MODULE_DIRECTORY = "META-INF/mod/";
 
+    /** The alignment of the content of a stored module JAR, relative to the start of the fat JAR file. */
+    public static final int ALIGNMENT = 4;
+
+    /** The header ID of the extra field used to pad a local file header, the same as used by Android's zipalign. */
+    private static final int PADDING_HEADER_ID = 0xD935;
+
+    /** The length of a local file header, excluding the file name and extra field. */
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
     public void extend(FatJarSpec extension) {
         if (!extension.baseJar().isFile())
             throw new ModuleCompilerException("No such JAR file: " + extension.baseJar());
         extension.outputJar().makeParentDirectories();
 
         try {
-            try (OutputStream outputStream = Files.newOutputStream(extension.outputJar().path(),
-                                                                   StandardOpenOption.CREATE,
-                                                                   StandardOpenOption.TRUNCATE_EXISTING,
-                                                                   StandardOpenOption.WRITE)) {
+            try (var outputStream = new CountingOutputStream(Files.newOutputStream(extension.outputJar().path(),
+                                                                                   StandardOpenOption.CREATE,
+                                                                                   StandardOpenOption.TRUNCATE_EXISTING,
+                                                                                   StandardOpenOption.WRITE))) {
                 if (extension.header() != null)
                     outputStream.write(extension.header());
 
                 try (JarOutputStream jarOutputStream = new JarOutputStream(outputStream)) {
                     try (JarFile baseJarFile = new JarFile(extension.baseJar().file())) {
-                        copyAndExtendJar(baseJarFile, extension.outputJar().path(), jarOutputStream, extension.adds());
+                        var writer = new EntryWriter(jarOutputStream, outputStream, extension.reproducibleTimestamp());
+                        copyAndExtendJar(baseJarFile, extension.outputJar().path(), writer, extension.adds(),
+                                         extension.modules());
                     }
                 }
             }
@@ -53,78 +76,172 @@ public class FatJar {
 
     }
 
-    private void copyAndExtendJar(JarFile baseJar, Path outputPath, JarOutputStream outputJar,
-                                  List<FatJarSpec.AddSpec> adds) throws IOException {
-        Map<String, Pathname> additions = new HashMap<>();
-        adds.forEach(spec -> {
-            if (additions.containsKey(spec.pathInJar())) {
-                Pathname previousPathname = additions.get(spec.pathInJar());
-                if (!Objects.equals(Optional.ofNullable(previousPathname).map(Pathname::normalize),
-                                    Optional.ofNullable(spec.filePathname()).map(Pathname::normalize))) {
-                    throw new ModuleCompilerException("Duplicate entry for " + spec.pathInJar() + ": " +
-                                                      spec.filePathname() + " vs " + previousPathname);
-                }
-            }
-            additions.put(spec.pathInJar(), spec.filePathname());
-
-            // Validate now that we anyway are looping over the add-specs
-            if (spec.filePathname() != null && !spec.filePathname().isFile())
-                throw new ModuleCompilerException("Unable to add " + spec.filePathname() + " to " +
-                                                  outputPath + ": Not a file");
+    private void copyAndExtendJar(JarFile baseJar, Path outputPath, EntryWriter writer, List<FatJarSpec.AddSpec> adds,
+                                  List<FatJarSpec.ModuleSpec> modules) throws IOException {
+        // Sorted to make the order of the added entries independent of the order of the adds.
+        Map<String, Pathname> additions = new TreeMap<>(ReproducibleJar.ENTRY_ORDER);
+        Map<String, ModuleDescriptor> descriptors = new HashMap<>();
+        adds.forEach(spec -> addAddition(additions, spec.pathInJar(), spec.filePathname(), outputPath));
+        modules.forEach(spec -> {
+            addAddition(additions, spec.pathInJar(), spec.filePathname(), outputPath);
+            descriptors.put(spec.pathInJar(), spec.descriptor());
         });
 
         for (Enumeration<JarEntry> jarEntries = baseJar.entries(); jarEntries.hasMoreElements();) {
             JarEntry entry = jarEntries.nextElement();
             String entryPath = entry.getName();
             if (additions.containsKey(entryPath)) {
-                Pathname overridingPathname = additions.remove(entryPath);
                 // Instead of the entry in baseJar, copy the replacement to outputJar.
-                if (entryPath.endsWith("/")) {
-                    // I.e. directory
-                    JarEntry newEntry = new JarEntry(entryPath);
-                    outputJar.putNextEntry(newEntry);
-                    outputJar.closeEntry();
-                } else {
-                    // I.e. regular file
-                    File overridingFile = overridingPathname.file();
-                    JarEntry newEntry = new JarEntry(entryPath);
-                    newEntry.setTime(overridingFile.lastModified());
-                    outputJar.putNextEntry(newEntry);
-                    try (InputStream inputStream = Files.newInputStream(overridingPathname.path())) {
-                        inputStream.transferTo(outputJar);
-                    }
-                    outputJar.closeEntry();
-                }
+                writer.add(entryPath, additions.remove(entryPath), descriptors.get(entryPath));
             } else {
                 // Copy the entry from baseJar to outputJar.
-                JarEntry newEntry = new JarEntry(entry);
-                outputJar.putNextEntry(newEntry);
-                try (InputStream inputStream = baseJar.getInputStream(entry)) {
-                    inputStream.transferTo(outputJar);
-                }
-                outputJar.closeEntry();
+                writer.copy(baseJar, entry);
             }
         }
 
         // Add all files not already added
-        additions.forEach((pathInJar, pathnameOnDisk) -> {
+        for (var addition : additions.entrySet())
+            writer.add(addition.getKey(), addition.getValue(), descriptors.get(addition.getKey()));
+
+        if (!modules.isEmpty())
+            writer.write(ModuleIndex.PATH, writer.moduleIndex().toUtf8());
+    }
+
+    private static void addAddition(Map<String, Pathname> additions, String pathInJar, Pathname filePathname, Path outputPath) {
+        if (additions.containsKey(pathInJar)) {
+            Pathname previousPathname = additions.get(pathInJar);
+            if (!Objects.equals(Optional.ofNullable(previousPathname).map(Pathname::normalize),
+                                Optional.ofNullable(filePathname).map(Pathname::normalize))) {
+                throw new ModuleCompilerException("Duplicate entry for " + pathInJar + ": " +
+                                                  filePathname + " vs " + previousPathname);
+            }
+        }
+        additions.put(pathInJar, filePathname);
+
+        // Validate now that we anyway are looping over the add-specs
+        if (filePathname != null && !filePathname.isFile())
+            throw new ModuleCompilerException("Unable to add " + filePathname + " to " + outputPath + ": Not a file");
+    }
+
+    private static class EntryWriter {
+        private final JarOutputStream outputJar;
+        private final CountingOutputStream outputStream;
+        private final Optional<LocalDateTime> timestamp;
+        private final List<ModuleIndex.Entry> indexEntries = new ArrayList<>();
+
+        private EntryWriter(JarOutputStream outputJar, CountingOutputStream outputStream, Optional<LocalDateTime> timestamp) {
+            this.outputJar = outputJar;
+            this.outputStream = outputStream;
+            this.timestamp = timestamp;
+        }
+
+        ModuleIndex moduleIndex() { return new ModuleIndex(indexEntries); }
+
+        void copy(JarFile baseJar, JarEntry entry) throws IOException {
+            JarEntry newEntry;
+            if (timestamp.isPresent()) {
+                newEntry = new JarEntry(entry.getName());
+                ReproducibleJar.setTimestamp(newEntry, timestamp.get());
+            } else {
+                newEntry = new JarEntry(entry);
+            }
+            outputJar.putNextEntry(newEntry);
+            try (InputStream inputStream = baseJar.getInputStream(entry)) {
+                FileCounters.bytesCopied(inputStream.transferTo(outputJar));
+            }
+            outputJar.closeEntry();
+        }
+
+        /** Add the directory (pathname is null), file, or module JAR (descriptor is non-null) at pathInJar. */
+        void add(String pathInJar, Pathname pathname, ModuleDescriptor descriptor) throws IOException {
             JarEntry newEntry = new JarEntry(pathInJar);
+            if (timestamp.isPresent()) {
+                ReproducibleJar.setTimestamp(newEntry, timestamp.get());
+            } else if (pathname != null) {
+                newEntry.setTime(pathname.file().lastModified());
+            }
 
-            try {
-                if (pathInJar.endsWith("/")) {
-                    outputJar.putNextEntry(newEntry);
-                } else {
-                    newEntry.setTime(pathnameOnDisk.file().lastModified());
-                    outputJar.putNextEntry(newEntry);
-                    try (InputStream inputStream = Files.newInputStream(pathnameOnDisk.path())) {
-                        inputStream.transferTo(outputJar);
-                    }
+            if (pathname == null) {
+                outputJar.putNextEntry(newEntry);
+            } else if (descriptor == null) {
+                outputJar.putNextEntry(newEntry);
+                try (InputStream inputStream = Files.newInputStream(pathname.path())) {
+                    FileCounters.bytesCopied(inputStream.transferTo(outputJar));
                 }
+            } else {
+                byte[] content = Files.readAllBytes(pathname.path());
+                FileCounters.bytesRead(content.length);
+                long offset = putNextStoredEntry(newEntry, content);
+                outputJar.write(content);
+                FileCounters.bytesWritten(content.length);
+                indexEntries.add(ModuleIndex.Entry.of(descriptor, pathInJar, offset, content.length));
+            }
+            outputJar.closeEntry();
+        }
+
+        /** Write a deflated entry with the given content. */
+        void write(String pathInJar, byte[] content) throws IOException {
+            JarEntry newEntry = new JarEntry(pathInJar);
+            timestamp.ifPresent(time -> ReproducibleJar.setTimestamp(newEntry, time));
+            outputJar.putNextEntry(newEntry);
+            outputJar.write(content);
+            FileCounters.bytesWritten(content.length);
+            outputJar.closeEntry();
+        }
 
-                outputJar.closeEntry();
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+        /**
+         * Start an uncompressed entry, padding the local file header with an extra field to align the content.
+         * Returns the offset of the content in the file.
+         */
+        private long putNextStoredEntry(JarEntry entry, byte[] content) throws IOException {
+            var crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+
+            // The previous entry has been closed, so all of its bytes have been written to outputStream.
+            long headerEnd = outputStream.count() + LOCAL_HEADER_LENGTH + entry.getName().getBytes(StandardCharsets.UTF_8).length;
+            int padding = (int) ((ALIGNMENT - headerEnd % ALIGNMENT) % ALIGNMENT);
+            if (padding > 0) {
+                // An extra field is at least the 2 byte header ID and the 2 byte data size.
+                if (padding < 4)
+                    padding += ALIGNMENT;
+                byte[] extra = new byte[padding];
+                extra[0] = (byte) PADDING_HEADER_ID;
+                extra[1] = (byte) (PADDING_HEADER_ID >>> 8);
+                extra[2] = (byte) (padding - 4);
+                extra[3] = (byte) ((padding - 4) >>> 8);
+                entry.setExtra(extra);
             }
-        });
+
+            outputJar.putNextEntry(entry);
+            long offset = headerEnd + padding;
+            if (outputStream.count() != offset)
+                throw new IllegalStateException("Unexpected local file header length of " + entry.getName() +
+                                                ": content at offset " + outputStream.count() + " instead of " + offset);
+            return offset;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream outputStream) { super(outputStream); }
+
+        long count() { return count; }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 }
@@ -2,14 +2,20 @@ package no.ion.modulec.jar;
 
 import no.ion.modulec.file.Pathname;
 
+import java.lang.module.ModuleDescriptor;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 public class FatJarSpec {
     private final Pathname baseJar;
     private final Pathname outputJar;
     private byte[] header = null;
     private final List<AddSpec> adds = new ArrayList<>();
+    private final List<ModuleSpec> modules = new ArrayList<>();
+    private Optional<LocalDateTime> reproducibleTimestamp = Optional.empty();
 
     public static record AddSpec(Pathname filePathname, String pathInJar) {
         public AddSpec {
@@ -28,6 +34,17 @@ public class FatJarSpec {
         public boolean isDirectory() { return pathInJar.endsWith("/"); }
     }
 
+    /** A modular JAR to store uncompressed and aligned at pathInJar, and to add to the {@link ModuleIndex}. */
+    public static record ModuleSpec(Pathname filePathname, String pathInJar, ModuleDescriptor descriptor) {
+        public ModuleSpec {
+            Objects.requireNonNull(filePathname, "filePathname cannot be null");
+            Objects.requireNonNull(pathInJar, "pathInJar cannot be null");
+            Objects.requireNonNull(descriptor, "descriptor cannot be null");
+            if (pathInJar.endsWith("/"))
+                throw new IllegalArgumentException("A module JAR entry cannot be a directory: " + pathInJar);
+        }
+    }
+
     public FatJarSpec(Pathname baseJar, Pathname outputJar) {
         this.baseJar = baseJar;
         this.outputJar = outputJar;
@@ -50,8 +67,22 @@ public class FatJarSpec {
         return this;
     }
 
+    /** Add the modular JAR file with the given module descriptor, see {@link ModuleSpec}. */
+    public FatJarSpec addModule(Pathname file, String pathInJar, ModuleDescriptor descriptor) {
+        modules.add(new ModuleSpec(file, pathInJar, descriptor));
+        return this;
+    }
+
+    /** Give all entries the given timestamp, see {@link ReproducibleJar}. */
+    public FatJarSpec setReproducibleTimestamp(LocalDateTime timestamp) {
+        this.reproducibleTimestamp = Optional.of(Objects.requireNonNull(timestamp, "timestamp cannot be null"));
+        return this;
+    }
+
     public Pathname baseJar() { return baseJar; }
     public Pathname outputJar() { return outputJar; }
     public byte[] header() { return header; }
     public List<AddSpec> adds() { return List.copyOf(adds); }
+    public List<ModuleSpec> modules() { return List.copyOf(modules); }
+    public Optional<LocalDateTime> reproducibleTimestamp() { return reproducibleTimestamp; }
 }
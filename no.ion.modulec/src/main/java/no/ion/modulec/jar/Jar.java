@@ -2,7 +2,9 @@ package no.ion.modulec.jar;
 
 import no.ion.modulec.Context;
 import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.file.FileCounters;
 import no.ion.modulec.file.Pathname;
+import no.ion.modulec.report.BuildEvents;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -60,11 +62,27 @@ public class Jar {
 
         context.log().command("jar", arguments);
 
+        BuildEvents.JarPackEvent event = BuildEvents.jarPack();
+        event.begin();
         // JarToolProvider returns 0 on success and 1 on failure.
         boolean success = jarTool.run(printWriter, printWriter, args) == 0;
+        event.end();
         printWriter.flush(); // also flushes writer
         String out = writer.toString();
         printWriter.close(); // also closes writer
+
+        if (success) {
+            // jar(1) does its own file I/O, so only the size of the resulting JAR is counted.
+            long size = Pathname.of(packaging.jarFile()).readAttributes(true).size();
+            FileCounters.bytesWritten(size);
+            if (event.shouldCommit()) {
+                String jarFilename = packaging.jarFile().getFileName().toString();
+                String module = jarFilename.endsWith(".jar") ? jarFilename.substring(0, jarFilename.length() - ".jar".length()) : null;
+                event.set(module, packaging.includes().size(), size).commit();
+            }
+            packaging.reproducibleTimestamp().ifPresent(timestamp -> ReproducibleJar.normalize(Pathname.of(packaging.jarFile()), timestamp));
+        }
+
         return new PackagingResult(success, out, Pathname.of(packaging.jarFile()));
     }
 }
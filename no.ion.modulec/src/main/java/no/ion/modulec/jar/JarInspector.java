@@ -4,6 +4,7 @@ import no.ion.modulec.compiler.ModulePath;
 import no.ion.modulec.file.Pathname;
 import no.ion.modulec.file.UncheckedInputStream;
 import no.ion.modulec.module.ModuleVersion;
+import no.ion.modulec.report.BuildEvents;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -11,8 +12,10 @@ import java.io.UncheckedIOException;
 import java.lang.module.ModuleDescriptor;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -28,6 +31,8 @@ public class JarInspector {
     }
 
     public static Map<ModuleVersion, HybridModularJarInfo> hybridModulesOf(ModulePath modulePath) {
+        BuildEvents.JarInspectEvent event = BuildEvents.jarInspect();
+        event.begin();
         Map<ModuleVersion, HybridModularJarInfo> map = new HashMap<>();
 
         for (Pathname pathname : modulePath.toPathnames()) {
@@ -49,6 +54,9 @@ public class JarInspector {
             }
         }
 
+        event.end();
+        if (event.shouldCommit())
+            event.set(null, map.size(), 0).commit();
         return map;
     }
 
@@ -75,11 +83,26 @@ public class JarInspector {
                 return Optional.empty();
 
             try (InputStream moduleInfoClassInputStream = jarFile.getInputStream(moduleInfoClassEntry)) {
-                ModuleDescriptor moduleDescriptor = ModuleDescriptor.read(moduleInfoClassInputStream);
+                // The package finder is only invoked if module-info.class lacks the ModulePackages attribute.
+                ModuleDescriptor moduleDescriptor = ModuleDescriptor.read(moduleInfoClassInputStream,
+                                                                          () -> packagesOf(jarFile));
                 return Optional.of(moduleDescriptor);
             }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    private static Set<String> packagesOf(JarFile jarFile) {
+        Set<String> packages = new HashSet<>();
+        jarFile.stream()
+               .map(JarEntry::getName)
+               .filter(name -> name.endsWith(".class") && !name.startsWith("META-INF/"))
+               .forEach(name -> {
+                   int slashIndex = name.lastIndexOf('/');
+                   if (slashIndex > 0)
+                       packages.add(name.substring(0, slashIndex).replace('/', '.'));
+               });
+        return packages;
+    }
 }
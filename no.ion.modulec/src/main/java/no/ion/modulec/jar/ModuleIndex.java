@@ -0,0 +1,100 @@
+package no.ion.modulec.jar;
+
+import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The index of the modular JARs in a fat JAR, written to {@link #PATH} by {@link FatJar} to allow a launcher to find
+ * the modules and their packages without inflating and scanning each nested JAR.
+ *
+ * <p>The index is UTF-8 text with one line per module, in the order of the nested JARs:</p>
+ *
+ * <pre>
+ * NAME VERSION PATH OFFSET SIZE PACKAGE,... REQUIRES,...
+ * </pre>
+ *
+ * <p>VERSION, the packages, and the requires are '-' if there are none.  PATH is the path of the nested JAR in the fat
+ * JAR.  The nested JAR is stored uncompressed at byte OFFSET of the fat JAR file, aligned to {@link FatJar#ALIGNMENT},
+ * and is SIZE bytes.  If the fat JAR is prefixed with e.g. a launcher script, the length of the prefix must be added
+ * to OFFSET.</p>
+ */
+public class ModuleIndex {
+    public static final String PATH = "META-INF/modulec/modules.idx";
+
+    private final List<Entry> entries;
+
+    public record Entry(String name, Optional<String> version, String pathInJar, long offset, long size,
+                        Set<String> packages, Set<String> requires) {
+        public Entry {
+            Objects.requireNonNull(name, "name cannot be null");
+            Objects.requireNonNull(version, "version cannot be null");
+            Objects.requireNonNull(pathInJar, "pathInJar cannot be null");
+            packages = Set.copyOf(packages);
+            requires = Set.copyOf(requires);
+        }
+
+        /** Returns the entry of a module with the given descriptor, stored as pathInJar at offset with the given size. */
+        public static Entry of(ModuleDescriptor descriptor, String pathInJar, long offset, long size) {
+            Set<String> requires = new TreeSet<>();
+            descriptor.requires().forEach(required -> requires.add(required.name()));
+            return new Entry(descriptor.name(), descriptor.rawVersion(), pathInJar, offset, size, descriptor.packages(), requires);
+        }
+    }
+
+    public ModuleIndex(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+    }
+
+    public List<Entry> entries() { return entries; }
+
+    public byte[] toUtf8() {
+        var index = new StringBuilder();
+        for (Entry entry : entries) {
+            index.append(entry.name())
+                 .append(' ').append(entry.version().orElse("-"))
+                 .append(' ').append(entry.pathInJar())
+                 .append(' ').append(entry.offset())
+                 .append(' ').append(entry.size())
+                 .append(' ').append(join(entry.packages()))
+                 .append(' ').append(join(entry.requires()))
+                 .append('\n');
+        }
+        return index.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static ModuleIndex fromUtf8(byte[] bytes) {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(" ", -1);
+            if (fields.length != 7)
+                throw new IllegalArgumentException("Invalid module index line: '" + line + "'");
+            try {
+                entries.add(new Entry(fields[0],
+                                      fields[1].equals("-") ? Optional.empty() : Optional.of(fields[1]),
+                                      fields[2],
+                                      Long.parseLong(fields[3]),
+                                      Long.parseLong(fields[4]),
+                                      split(fields[5]),
+                                      split(fields[6])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid module index line: '" + line + "'", e);
+            }
+        }
+        return new ModuleIndex(entries);
+    }
+
+    private static String join(Set<String> names) {
+        return names.isEmpty() ? "-" : String.join(",", new TreeSet<>(names));
+    }
+
+    private static Set<String> split(String names) {
+        return names.equals("-") ? Set.of() : Set.of(names.split(","));
+    }
+}
@@ -2,6 +2,7 @@ package no.ion.modulec.jar;
 
 import java.lang.module.ModuleDescriptor;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -18,6 +19,7 @@ public class ModulePackaging {
     /** null means no jar arg and get default manifest, empty mean --no-manifest, and otherwise --manifest FILE. */
     private Optional<Path> manifest = null;
     private String mainClass = null;
+    private Optional<LocalDateTime> reproducibleTimestamp = Optional.empty();
 
     /** The directory of the jarFile must exist. */
     public static ModulePackaging forCreatingJar(Path jarFile) {
@@ -66,6 +68,12 @@ public class ModulePackaging {
         return this;
     }
 
+    /** Normalize the JAR after packing, with all entries having the given timestamp.  See {@link ReproducibleJar}. */
+    public ModulePackaging setReproducibleTimestamp(LocalDateTime timestamp) {
+        this.reproducibleTimestamp = Optional.of(Objects.requireNonNull(timestamp, "timestamp cannot be null"));
+        return this;
+    }
+
     public Path jarFile() { return jarFile; }
     /** One of -c or -u. */
     public String action() { return action; }
@@ -73,4 +81,5 @@ public class ModulePackaging {
     public Optional<Path> manifest() { return manifest; }
     public String mainClass() { return mainClass; }
     public ModuleDescriptor.Version version() { return version; }
+    public Optional<LocalDateTime> reproducibleTimestamp() { return reproducibleTimestamp; }
 }
@@ -0,0 +1,145 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.file.Pathname;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Utilities to make the bytes of a JAR a function of only the names and content of its entries:  The entries are
+ * ordered by name except that the manifest is first, the timestamps are fixed, and the manifest attributes are sorted.
+ * No file permissions are stored.
+ */
+public class ReproducibleJar {
+    /** The default timestamp of entries, same as the one used by e.g. Maven and Gradle, and within the DOS date range. */
+    public static final LocalDateTime DEFAULT_TIMESTAMP = LocalDateTime.of(1980, 2, 1, 0, 0);
+
+    private ReproducibleJar() {}
+
+    /**
+     * Returns the timestamp to use for JAR entries, given the value of the SOURCE_DATE_EPOCH environment variable,
+     * see https://reproducible-builds.org/specs/source-date-epoch/.
+     */
+    public static LocalDateTime timestampFromSourceDateEpoch(Optional<String> sourceDateEpoch) {
+        if (sourceDateEpoch.isEmpty() || sourceDateEpoch.get().isEmpty())
+            return DEFAULT_TIMESTAMP;
+
+        long epochSecond;
+        try {
+            epochSecond = Long.parseLong(sourceDateEpoch.get());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid SOURCE_DATE_EPOCH: '" + sourceDateEpoch.get() + "'");
+        }
+
+        LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC);
+        // The DOS date-time of a ZIP entry cannot represent times before 1980.
+        return timestamp.isBefore(DEFAULT_TIMESTAMP) ? DEFAULT_TIMESTAMP : timestamp;
+    }
+
+    /** Sets the timestamp of the entry, independent of the local time zone. */
+    static void setTimestamp(ZipEntry entry, LocalDateTime timestamp) {
+        entry.setTimeLocal(timestamp);
+    }
+
+    /** Orders entry names such that META-INF/ and META-INF/MANIFEST.MF come first, as required by JarInputStream. */
+    static final Comparator<String> ENTRY_ORDER = Comparator.comparingInt(ReproducibleJar::rank)
+                                                            .thenComparing(Comparator.naturalOrder());
+
+    private static int rank(String name) {
+        return switch (name) {
+            case "META-INF/" -> 0;
+            case JarFile.MANIFEST_NAME -> 1;
+            default -> 2;
+        };
+    }
+
+    /**
+     * Rewrite the JAR in place with its entries normalized.  Only the names are held in memory:  The entries are
+     * copied one at a time in the sorted order, except the manifest which is read to be normalized.
+     */
+    public static void normalize(Pathname jar, LocalDateTime timestamp) {
+        Pathname directory = jar.parent();
+        try (Pathname.TemporaryFile tmpFile = directory.makeTemporaryFile(jar.filename() + ".", ".tmp", null)) {
+            try (JarFile jarFile = new JarFile(jar.file(), false);
+                 OutputStream outputStream = Files.newOutputStream(tmpFile.pathname().path());
+                 // Not a JarOutputStream, which would add an extra field to the first entry.
+                 var zipOutputStream = new ZipOutputStream(outputStream)) {
+                var names = new TreeSet<>(ENTRY_ORDER);
+                for (Enumeration<JarEntry> jarEntries = jarFile.entries(); jarEntries.hasMoreElements();)
+                    names.add(jarEntries.nextElement().getName());
+
+                for (String name : names) {
+                    ZipEntry zipEntry = new ZipEntry(name);
+                    setTimestamp(zipEntry, timestamp);
+                    zipOutputStream.putNextEntry(zipEntry);
+                    try (InputStream inputStream = jarFile.getInputStream(jarFile.getJarEntry(name))) {
+                        if (name.equals(JarFile.MANIFEST_NAME)) {
+                            zipOutputStream.write(normalizeManifest(inputStream.readAllBytes()));
+                        } else {
+                            inputStream.transferTo(zipOutputStream);
+                        }
+                    }
+                    zipOutputStream.closeEntry();
+                }
+            }
+            Files.move(tmpFile.pathname().path(), jar.path(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns the manifest with Manifest-Version first, followed by the other main attributes and sections sorted by name. */
+    static byte[] normalizeManifest(byte[] bytes) {
+        Manifest manifest;
+        try {
+            manifest = new Manifest(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var normalized = new Manifest();
+        // Manifest.write() writes Manifest-Version first, and the remaining attributes in insertion order.
+        sortedInto(manifest.getMainAttributes(), normalized.getMainAttributes());
+        new TreeMap<>(manifest.getEntries()).forEach((name, attributes) -> {
+            var sortedAttributes = new Attributes();
+            sortedInto(attributes, sortedAttributes);
+            normalized.getEntries().put(name, sortedAttributes);
+        });
+
+        var outputStream = new ByteArrayOutputStream();
+        try {
+            normalized.write(outputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void sortedInto(Attributes from, Attributes to) {
+        List<Attributes.Name> names = new ArrayList<>(from.keySet().stream().map(Attributes.Name.class::cast).toList());
+        names.sort(Comparator.comparing(Attributes.Name::toString));
+        names.forEach(name -> to.put(name, from.get(name)));
+    }
+}
@@ -0,0 +1,107 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.classfile.ClassFile;
+import no.ion.modulec.file.FileCounters;
+import no.ion.modulec.file.Pathname;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static no.ion.modulec.util.Exceptions.uncheckIO;
+
+/**
+ * The index of the test classes of a test JAR, written to {@link #PATH} when packaging the test JAR to allow the
+ * no.ion.modulec.junit runner to select the test classes directly instead of scanning the test JAR.
+ *
+ * <p>The index is UTF-8 text with one line per test class, sorted by class name:</p>
+ *
+ * <pre>
+ * CLASS METHOD,...
+ * </pre>
+ *
+ * <p>The test classes are the concrete classes whose binary name ends with "Test", like the classes run by the
+ * runner.  The methods are the methods annotated with one of {@link #TEST_ANNOTATIONS}, and '-' if there are none,
+ * e.g. for a class with only @Nested tests.</p>
+ */
+public class TestIndex {
+    public static final String PATH = "META-INF/modulec/tests.idx";
+    /** The JUnit Jupiter annotations of test methods, by internal name. */
+    public static final Set<String> TEST_ANNOTATIONS = Set.of("org/junit/jupiter/api/Test",
+                                                              "org/junit/jupiter/api/RepeatedTest",
+                                                              "org/junit/jupiter/api/TestFactory",
+                                                              "org/junit/jupiter/api/TestTemplate",
+                                                              "org/junit/jupiter/params/ParameterizedTest");
+
+    private final List<Entry> entries;
+
+    public record Entry(String className, Set<String> methods) {
+        public Entry {
+            Objects.requireNonNull(className, "className cannot be null");
+            methods = Set.copyOf(methods);
+        }
+    }
+
+    public TestIndex(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+    }
+
+    /** Returns the index of the test classes in the directory tree of class files, e.g. from compiling the tests. */
+    public static TestIndex of(Pathname classDirectory) {
+        List<Pathname> classFiles = classDirectory.find(true, (pathname, attributes) ->
+                attributes.isFile() && pathname.filename().endsWith("Test.class") ? Optional.of(pathname) : Optional.empty());
+
+        List<Entry> entries = new ArrayList<>();
+        for (Pathname classFilePathname : classFiles) {
+            byte[] bytes = uncheckIO(() -> Files.readAllBytes(classFilePathname.path()));
+            FileCounters.bytesRead(bytes.length);
+            ClassFile classFile;
+            try {
+                classFile = ClassFile.read(bytes);
+            } catch (IllegalArgumentException e) {
+                throw new ModuleCompilerException("Failed to read " + classFilePathname + ": " + e.getMessage());
+            }
+            if (!classFile.isConcrete()) continue;
+
+            Set<String> methods = new TreeSet<>();
+            for (ClassFile.Method method : classFile.methods()) {
+                if (method.annotations().stream().anyMatch(TEST_ANNOTATIONS::contains))
+                    methods.add(method.name());
+            }
+            entries.add(new Entry(classFile.name().replace('/', '.'), methods));
+        }
+        entries.sort(Comparator.comparing(Entry::className));
+        return new TestIndex(entries);
+    }
+
+    public List<Entry> entries() { return entries; }
+
+    public byte[] toUtf8() {
+        var index = new StringBuilder();
+        for (Entry entry : entries) {
+            index.append(entry.className())
+                 .append(' ').append(entry.methods().isEmpty() ? "-" : String.join(",", new TreeSet<>(entry.methods())))
+                 .append('\n');
+        }
+        return index.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static TestIndex fromUtf8(byte[] bytes) {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(" ", -1);
+            if (fields.length != 2)
+                throw new IllegalArgumentException("Invalid test index line: '" + line + "'");
+            entries.add(new Entry(fields[0], fields[1].equals("-") ? Set.of() : Set.of(fields[1].split(","))));
+        }
+        return new TestIndex(entries);
+    }
+}
@@ -0,0 +1,252 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.ModuleCompilerException;
+import no.ion.modulec.classfile.ClassFile;
+import no.ion.modulec.file.FileCounters;
+import no.ion.modulec.file.Pathname;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the classes of a set of modular JARs that cannot be reached from a set of root classes.
+ *
+ * <p>A class reaches the classes it references in its constant pool, see {@link ClassFile}, and the classes named by
+ * its string constants, e.g. in Class.forName("a.b.C").  The roots are the added root classes, e.g. the main classes
+ * of the programs, the classes matching a keep rule, and from each module descriptor:  The main class, the service
+ * interfaces it uses, the service interfaces and providers it provides, and all classes of its open packages (or of all
+ * packages of an open module), which are open for reflection.  Resources, module-info.class, and META-INF/ entries are
+ * always kept.</p>
+ *
+ * <p>The module descriptors are not modified, so the packages of a module are read from its ModulePackages attribute,
+ * even if some of them no longer have any classes.  The classes of a module without the attribute are all kept.</p>
+ */
+public class TreeShaker {
+    private static final String MODULE_INFO_CLASS = "module-info.class";
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+    private final Set<String> roots = new HashSet<>();
+    private final List<Pattern> keepRules = new ArrayList<>();
+
+    public record Module(ModuleDescriptor descriptor, Pathname jar) {
+        public Module {
+            Objects.requireNonNull(descriptor, "descriptor cannot be null");
+            Objects.requireNonNull(jar, "jar cannot be null");
+        }
+    }
+
+    /**
+     * The resulting JAR of each module in the order of the modules (possibly the original JAR), and the number of
+     * classes before and after.
+     */
+    public record Result(List<Pathname> jars, int classes, int keptClasses) {}
+
+    private record Node(int module, List<ClassFile> classFiles) {}
+
+    public TreeShaker() {}
+
+    /** Add a root class by its binary name, e.g. a.b.C$D. */
+    public TreeShaker addRoot(String className) {
+        roots.add(Objects.requireNonNull(className, "className cannot be null").replace('.', '/'));
+        return this;
+    }
+
+    /**
+     * Keep the classes whose binary names match the pattern, and the classes reachable from them.  In the pattern,
+     * '*' matches any sequence of characters except '.', and '**' matches any sequence of characters, e.g.
+     * a.b.* matches the classes of package a.b, and a.b.** also those of its subpackages.
+     */
+    public TreeShaker addKeepRule(String pattern) {
+        keepRules.add(keepRulePattern(pattern));
+        return this;
+    }
+
+    static Pattern keepRulePattern(String pattern) {
+        Objects.requireNonNull(pattern, "pattern cannot be null");
+        if (pattern.isEmpty())
+            throw new IllegalArgumentException("Empty keep rule");
+        var regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); ++i) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    ++i;
+                } else {
+                    regex.append("[^.]*");
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /** Write the shaken JARs of the modules to the directory, which should be empty. */
+    public Result shake(List<Module> modules, Pathname directory) {
+        // Maps the internal name of each class to its module and class files, the latter in case of multi-release JARs.
+        Map<String, Node> nodes = new HashMap<>();
+        Set<String> reachable = new HashSet<>();
+        Deque<String> unvisited = new ArrayDeque<>();
+
+        boolean[] keepAll = new boolean[modules.size()];
+        for (int index = 0; index < modules.size(); ++index)
+            keepAll[index] = readClasses(index, modules.get(index), nodes);
+
+        // The roots of a module may be in other modules, e.g. the service interfaces, so all must have been read.
+        for (int index = 0; index < modules.size(); ++index) {
+            ModuleDescriptor descriptor = modules.get(index).descriptor();
+            Set<String> rootPackages = new HashSet<>(keepAll[index] || descriptor.isOpen() ? descriptor.packages() : Set.of());
+            descriptor.opens().forEach(opens -> rootPackages.add(opens.source()));
+
+            List<String> moduleRoots = new ArrayList<>();
+            descriptor.mainClass().ifPresent(moduleRoots::add);
+            moduleRoots.addAll(descriptor.uses());
+            descriptor.provides().forEach(provides -> {
+                moduleRoots.add(provides.service());
+                moduleRoots.addAll(provides.providers());
+            });
+            moduleRoots.forEach(className -> visit(className.replace('.', '/'), nodes, reachable, unvisited));
+
+            final int moduleIndex = index;
+            nodes.forEach((name, node) -> {
+                if (node.module() == moduleIndex && rootPackages.contains(packageOf(name)))
+                    visit(name, nodes, reachable, unvisited);
+            });
+        }
+
+        roots.forEach(name -> visit(name, nodes, reachable, unvisited));
+        if (!keepRules.isEmpty()) {
+            nodes.keySet().forEach(name -> {
+                String binaryName = name.replace('/', '.');
+                if (keepRules.stream().anyMatch(rule -> rule.matcher(binaryName).matches()))
+                    visit(name, nodes, reachable, unvisited);
+            });
+        }
+
+        while (!unvisited.isEmpty()) {
+            String name = unvisited.removeFirst();
+            for (ClassFile classFile : nodes.get(name).classFiles()) {
+                classFile.referencedClasses().forEach(referenced -> visit(referenced, nodes, reachable, unvisited));
+                classFile.stringConstants().forEach(string -> visit(string.replace('.', '/'), nodes, reachable, unvisited));
+            }
+        }
+
+        List<Pathname> jars = new ArrayList<>();
+        for (int index = 0; index < modules.size(); ++index) {
+            Module module = modules.get(index);
+            final int moduleIndex = index;
+            long classes = nodes.values().stream().filter(node -> node.module() == moduleIndex).count();
+            long kept = reachable.stream().filter(name -> nodes.get(name).module() == moduleIndex).count();
+            if (kept == classes) {
+                jars.add(module.jar());
+            } else {
+                Pathname shakenJar = directory.resolve(module.descriptor().toNameAndVersion() + ".jar");
+                writeShakenJar(module.jar(), shakenJar, reachable);
+                jars.add(shakenJar);
+            }
+        }
+
+        return new Result(List.copyOf(jars), nodes.size(), reachable.size());
+    }
+
+    private static void visit(String name, Map<String, Node> nodes, Set<String> reachable, Deque<String> unvisited) {
+        if (nodes.containsKey(name) && reachable.add(name))
+            unvisited.addLast(name);
+    }
+
+    /** Reads the classes of the module into nodes.  Returns true if all classes of the module must be kept. */
+    private static boolean readClasses(int index, Module module, Map<String, Node> nodes) {
+        boolean keepAll = false;
+        try (JarFile jarFile = new JarFile(module.jar().file(), false)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                String entryName = entry.getName();
+                if (!entryName.endsWith(".class")) continue;
+                boolean versioned = entryName.startsWith(VERSIONS_DIRECTORY);
+                if (entryName.startsWith("META-INF/") && !versioned) continue;
+
+                byte[] bytes;
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    bytes = inputStream.readAllBytes();
+                }
+                FileCounters.bytesRead(bytes.length);
+                ClassFile classFile;
+                try {
+                    classFile = ClassFile.read(bytes);
+                } catch (IllegalArgumentException e) {
+                    throw new ModuleCompilerException("Failed to read " + entryName + " in " + module.jar() + ": " + e.getMessage());
+                }
+
+                if (entryName.endsWith(MODULE_INFO_CLASS)) {
+                    if (!versioned && !classFile.hasAttribute("ModulePackages"))
+                        keepAll = true;
+                    continue;
+                }
+
+                Node node = nodes.get(classFile.name());
+                if (node == null) {
+                    nodes.put(classFile.name(), new Node(index, new ArrayList<>(List.of(classFile))));
+                } else if (node.module() == index) {
+                    // A class of a multi-release JAR:  The versions are kept or removed together.
+                    node.classFiles().add(classFile);
+                } else {
+                    throw new ModuleCompilerException("Class " + classFile.name().replace('/', '.') + " of " + module.jar() +
+                                                      " is in more than one module");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return keepAll;
+    }
+
+    private static void writeShakenJar(Pathname jar, Pathname shakenJar, Set<String> reachable) {
+        shakenJar.makeParentDirectories();
+        try (JarFile jarFile = new JarFile(jar.file(), false);
+             OutputStream outputStream = Files.newOutputStream(shakenJar.path());
+             var jarOutputStream = new JarOutputStream(outputStream)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                String entryName = entry.getName();
+                if (entryName.endsWith(".class") && !entryName.endsWith(MODULE_INFO_CLASS)) {
+                    String name = entryName.substring(0, entryName.length() - ".class".length());
+                    if (name.startsWith(VERSIONS_DIRECTORY))
+                        name = name.substring(name.indexOf('/', VERSIONS_DIRECTORY.length()) + 1);
+                    if (!reachable.contains(name)) continue;
+                }
+
+                var newEntry = new JarEntry(entryName);
+                newEntry.setTime(entry.getTime());
+                jarOutputStream.putNextEntry(newEntry);
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    FileCounters.bytesCopied(inputStream.transferTo(jarOutputStream));
+                }
+                jarOutputStream.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String packageOf(String internalName) {
+        int slashIndex = internalName.lastIndexOf('/');
+        return slashIndex == -1 ? "" : internalName.substring(0, slashIndex).replace('/', '.');
+    }
+}
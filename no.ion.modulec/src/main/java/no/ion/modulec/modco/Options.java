@@ -2,10 +2,12 @@ package no.ion.modulec.modco;
 
 import no.ion.modulec.UsageException;
 import no.ion.modulec.UserErrorException;
+import no.ion.modulec.cache.BuildCache;
 import no.ion.modulec.compiler.ModulePath;
 import no.ion.modulec.compiler.Release;
 import no.ion.modulec.compiler.single.ModuleCompiler;
 import no.ion.modulec.file.Pathname;
+import no.ion.modulec.jar.ReproducibleJar;
 
 import java.lang.module.ModuleDescriptor;
 import java.util.ArrayList;
@@ -15,21 +17,40 @@ import java.util.Optional;
 public class Options {
 
     private final ModuleCompiler.MakeParams params;
+    private final boolean watch;
 
-    private Options(ModuleCompiler.MakeParams params) {
+    private Options(ModuleCompiler.MakeParams params, boolean watch) {
         this.params = params;
+        this.watch = watch;
     }
 
     public ModuleCompiler.MakeParams params() { return params; }
 
+    /** Whether to make again whenever the source, test source, or resource paths change, until killed. */
+    public boolean watch() { return watch; }
+
     public static Options parse(ProgramContext context, String... args) {
+        Pathname buildCache = context.getenv("MODCO_BUILD_CACHE").filter(value -> !value.isEmpty()).map(context::pathname).orElse(null);
+        long buildCacheSize = BuildCache.DEFAULT_MAX_SIZE;
         String debug = "";  // Equivalent to javac's -g
         Pathname out = context.pathname("out");
         String mainClass = null;
         ModulePath modulePath = null;
         boolean testing = true;
+        boolean allTests = false;
+        boolean failFast = false;
+        int testParallelism = 1;
+        int testShards = 1;
         List<ProgramSpec> programs = new ArrayList<>();
+        List<String> programCdsTrainingArguments = null;
+        ProgramLayout programLayout = ProgramLayout.SELF_CONTAINED;
+        boolean shake = false;
+        boolean stripDebug = false;
+        String compress = null;
+        List<String> keepRules = new ArrayList<>();
         Release release = Release.ofJre();
+        boolean printBuildReport = false;
+        boolean reproducible = false;
         boolean showCommands = false;
         boolean showDebug = false;
         List<Pathname> sourceDirectories = new ArrayList<>();
@@ -39,10 +60,29 @@ public class Options {
         List<Pathname> testResourceDirectories = new ArrayList<>();
         ModuleDescriptor.Version version = null;
         String warnings = "all";
+        boolean watch = false;
 
         var arguments = new ProgramArgumentIterator(context.fileSystem(), args);
         for (; !arguments.atEnd(); arguments.next()) {
             switch (arguments.arg()) {
+                case "-A":
+                case "--all-tests":
+                    allTests = true;
+                    continue;
+                case "--build-cache":
+                    buildCache = arguments.getOptionValueAsPathname();
+                    continue;
+                case "--build-cache-size":
+                    int buildCacheSizeMiB = arguments.getOptionValueInt();
+                    if (buildCacheSizeMiB <= 0)
+                        throw new UserErrorException("Invalid build cache size: " + buildCacheSizeMiB);
+                    buildCacheSize = buildCacheSizeMiB * 1024L * 1024L;
+                    continue;
+                case "--compress":
+                    compress = arguments.getOptionValueString();
+                    if (!compress.matches("[0-2]"))
+                        throw new UserErrorException("Invalid compression level: '" + compress + "'");
+                    continue;
                 case "-g":
                 case "--debug":
                     debug = arguments.getOptionValueString();
@@ -51,9 +91,15 @@ public class Options {
                     if (debug.isEmpty())
                         debug = null;
                     continue;
+                case "--fail-fast":
+                    failFast = true;
+                    continue;
                 case "-h":
                 case "--help":
                     throw UsageException.fromResource("no/ion/modulec/modco.usage");
+                case "--keep":
+                    keepRules.add(arguments.getOptionValueString());
+                    continue;
                 case "-e":
                 case "--main-class":
                     mainClass = arguments.getOptionValueString();
@@ -88,6 +134,17 @@ public class Options {
                         programs.add(new ProgramSpec(filename, programMainClass));
                     }
                     continue;
+                case "--program-layout":
+                    String layout = arguments.getOptionValueString();
+                    programLayout = ProgramLayout.fromOptionValue(layout)
+                                                 .orElseThrow(() -> new UserErrorException("Invalid program layout: '" + layout + "'"));
+                    continue;
+                case "--program-cds":
+                    String trainingArguments = arguments.getOptionValueString().strip();
+                    programCdsTrainingArguments = trainingArguments.isEmpty() ?
+                                                  List.of() :
+                                                  List.of(trainingArguments.split("\\s+"));
+                    continue;
                 case "-l":
                 case "--release":
                     int releaseInt = arguments.getOptionValueInt();
@@ -97,6 +154,18 @@ public class Options {
                         throw new UserErrorException(e.getMessage());
                     }
                     continue;
+                case "--report":
+                    printBuildReport = true;
+                    continue;
+                case "--reproducible":
+                    reproducible = true;
+                    continue;
+                case "--shake":
+                    shake = true;
+                    continue;
+                case "--strip-debug":
+                    stripDebug = true;
+                    continue;
                 case "-r":
                 case "--resources":
                     resourceDirectories.add(arguments.getOptionValueAsExistingDirectory());
@@ -105,6 +174,16 @@ public class Options {
                 case "--source":
                     sourceDirectories.add(arguments.getOptionValueAsExistingSource());
                     continue;
+                case "--test-parallelism":
+                    testParallelism = arguments.getOptionValueInt();
+                    if (testParallelism < 1)
+                        throw new UserErrorException("Invalid test parallelism: " + testParallelism);
+                    continue;
+                case "--test-shards":
+                    testShards = arguments.getOptionValueInt();
+                    if (testShards < 1)
+                        throw new UserErrorException("Invalid number of test shards: " + testShards);
+                    continue;
                 case "-R":
                 case "--test-resources":
                     testResourceDirectories.add(arguments.getOptionValueAsExistingDirectory());
@@ -127,6 +206,9 @@ public class Options {
                         throw new UserErrorException("Invalid module version: '" + versionString + "'");
                     }
                     continue;
+                case "--watch":
+                    watch = true;
+                    continue;
                 case "-w":
                 case "--warnings":
                     warnings = arguments.getOptionValueString();
@@ -144,10 +226,23 @@ public class Options {
         context.showMilestones(true);
         ModuleCompiler.MakeParams params = new ModuleCompiler.MakeParams(context);
 
+        if (buildCache != null)
+            params.setBuildCacheDirectory(buildCache);
+        params.setBuildCacheSize(buildCacheSize);
+
         if (debug != null)
             params.setDebug(debug);
 
         params.setRelease(release);
+        params.setPrintBuildReport(printBuildReport);
+
+        if (reproducible) {
+            try {
+                params.setReproducibleTimestamp(ReproducibleJar.timestampFromSourceDateEpoch(context.getenv("SOURCE_DATE_EPOCH")));
+            } catch (IllegalArgumentException e) {
+                throw new UserErrorException(e.getMessage());
+            }
+        }
 
         // Verification and normalization of -T/--no-testing, -t/--test-source, and -N/--no-test-source
         if (!lookForTestSource) testing = false;
@@ -181,6 +276,33 @@ public class Options {
             }
         }
         programs.forEach(params::addProgram);
+        params.setProgramLayout(programLayout);
+        if (programLayout == ProgramLayout.JLINK) {
+            if (programCdsTrainingArguments != null)
+                throw new UserErrorException("--program-cds conflicts with --program-layout jlink");
+            params.setJlinkStripDebug(stripDebug);
+            if (compress != null)
+                params.setJlinkCompress(compress);
+        } else if (stripDebug || compress != null) {
+            throw new UserErrorException("--strip-debug and --compress require --program-layout jlink");
+        }
+        if (!keepRules.isEmpty() && !shake)
+            throw new UserErrorException("--keep requires --shake");
+        if (shake) {
+            if (programs.isEmpty())
+                throw new UserErrorException("--shake requires -P/--program");
+            params.setShake(true);
+            for (String keepRule : keepRules) {
+                if (keepRule.isEmpty() || !release.isName(keepRule.replace("**", "x").replace('*', 'x')))
+                    throw new UserErrorException("Invalid keep rule: '" + keepRule + "'");
+                params.addKeepRule(keepRule);
+            }
+        }
+        if (programCdsTrainingArguments != null) {
+            if (programs.isEmpty())
+                throw new UserErrorException("--program-cds requires -P/--program");
+            params.setProgramCds(programCdsTrainingArguments);
+        }
 
         if (version != null)
             params.setVersion(version);
@@ -245,6 +367,10 @@ public class Options {
                 throw new UserErrorException("Test resource directory specified but not test source directory");
         } else {
             params.setTesting(testing);
+            params.setAllTests(allTests);
+            params.setFailFast(failFast);
+            params.setTestParallelism(testParallelism);
+            params.setTestShards(testShards);
             params.addTestSourceDirectories(testSourceDirectories);
             testResourceDirectories.forEach(params::addTestResourceDirectory);
         }
@@ -256,6 +382,6 @@ public class Options {
         if (modulePath != null)
             params.addToModulePath(modulePath);
 
-        return new Options(params);
+        return new Options(params, watch);
     }
 }
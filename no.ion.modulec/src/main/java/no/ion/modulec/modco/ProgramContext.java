@@ -6,6 +6,7 @@ import no.ion.modulec.file.Pathname;
 
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.util.Optional;
 
 public class ProgramContext implements Context {
     private final FileSystem fileSystem;
@@ -24,6 +25,8 @@ public class ProgramContext implements Context {
     public Pathname pathname(String pathname) { return Pathname.of(fileSystem, pathname); }
     public Pathname pathOf(String pathname) { return Pathname.of(fileSystem, pathname); }
 
+    public Optional<String> getenv(String name) { return Optional.ofNullable(System.getenv(name)); }
+
     @Override public MessageSink log() { return standardOut; }
 
     public boolean showCommands() { return showCommands; }
@@ -0,0 +1,38 @@
+package no.ion.modulec.modco;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/** How the programs of a module are written to the program directory. */
+public enum ProgramLayout {
+    /** Each program is a launcher script followed by a copy of the fat JAR. */
+    SELF_CONTAINED("self-contained"),
+
+    /**
+     * Each program is a launcher script referring to the fat JAR MODULE.jar in the same directory, which must be
+     * copied along with the program.
+     */
+    SHARED("shared"),
+
+    /**
+     * The programs are hard links to one self-contained file, whose launcher script picks the main class by the
+     * filename the program is invoked as.  A program cannot be renamed.
+     */
+    HARDLINK("hardlink"),
+
+    /**
+     * A jlink runtime image OUT/image with the JDK and application modules, and a launcher image/bin/N per program,
+     * instead of a fat JAR.  Requires one version per module.
+     */
+    JLINK("jlink");
+
+    private final String optionValue;
+
+    ProgramLayout(String optionValue) { this.optionValue = optionValue; }
+
+    public String optionValue() { return optionValue; }
+
+    public static Optional<ProgramLayout> fromOptionValue(String optionValue) {
+        return Arrays.stream(values()).filter(layout -> layout.optionValue.equals(optionValue)).findFirst();
+    }
+}
@@ -0,0 +1,114 @@
+package no.ion.modulec.report;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for the phases of a build, e.g. shown next to GC and I/O events when running modco
+ * with -XX:StartFlightRecording.
+ *
+ * <p>The event classes are registered only once Flight Recorder has been initialized.  Until then, creating,
+ * timing, and committing an event is a no-op.  Create events with the static methods of this class, which ensures
+ * the registration is set up, and set the fields only if {@link Event#shouldCommit()} returns true.</p>
+ */
+public class BuildEvents {
+    private static final List<Class<? extends Event>> EVENT_CLASSES = List.of(ScanEvent.class,
+                                                                             JavacEvent.class,
+                                                                             JarPackEvent.class,
+                                                                             FatJarEvent.class,
+                                                                             JarInspectEvent.class,
+                                                                             TestRunEvent.class,
+                                                                             ProgramWriteEvent.class);
+
+    static {
+        if (FlightRecorder.isAvailable()) {
+            // Invoked immediately if already initialized, e.g. by -XX:StartFlightRecording, otherwise when JFR is
+            // started later, e.g. with jcmd PID JFR.start.
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(FlightRecorder recorder) {
+                    EVENT_CLASSES.forEach(FlightRecorder::register);
+                }
+            });
+        }
+    }
+
+    private BuildEvents() {}
+
+    public static ScanEvent scan() { return new ScanEvent(); }
+    public static JavacEvent javac() { return new JavacEvent(); }
+    public static JarPackEvent jarPack() { return new JarPackEvent(); }
+    public static FatJarEvent fatJar() { return new FatJarEvent(); }
+    public static JarInspectEvent jarInspect() { return new JarInspectEvent(); }
+    public static TestRunEvent testRun() { return new TestRunEvent(); }
+    public static ProgramWriteEvent programWrite() { return new ProgramWriteEvent(); }
+
+    @Category("modulec")
+    @Registered(false)
+    @StackTrace(false)
+    public abstract static class BuildEvent extends Event {
+        /** The module name, possibly followed by @VERSION, or null if not known. */
+        @Label("Module")
+        public String module;
+
+        @Label("Files")
+        public long files;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+
+        /** Sets the fields, and returns this. */
+        public BuildEvent set(String module, long files, long bytes) {
+            this.module = module;
+            this.files = files;
+            this.bytes = bytes;
+            return this;
+        }
+    }
+
+    @Name("no.ion.modulec.Scan")
+    @Label("Source Scan")
+    @Description("Scanning of the source and class directories to find the files to compile")
+    public static class ScanEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.Javac")
+    @Label("Javac")
+    @Description("Compilation of the source files by javac")
+    public static class JavacEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.JarPack")
+    @Label("JAR Pack")
+    @Description("Packaging of a modular JAR by jar(1)")
+    public static class JarPackEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.FatJar")
+    @Label("Fat JAR")
+    @Description("Creation of a fat JAR with the module and its dependencies")
+    public static class FatJarEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.JarInspect")
+    @Label("JAR Inspect")
+    @Description("Reading of the module descriptors of the modular JARs on a module path")
+    public static class JarInspectEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.TestRun")
+    @Label("Test Run")
+    @Description("Running of the tests of a module")
+    public static class TestRunEvent extends BuildEvent {}
+
+    @Name("no.ion.modulec.ProgramWrite")
+    @Label("Program Write")
+    @Description("Writing of a program, a launcher script followed by the fat JAR")
+    public static class ProgramWriteEvent extends BuildEvent {}
+}
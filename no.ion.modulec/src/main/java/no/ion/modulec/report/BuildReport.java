@@ -0,0 +1,152 @@
+package no.ion.modulec.report;
+
+import no.ion.modulec.file.FileCounters;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Records the wall time, CPU time, allocated bytes, and file system counters of each phase of a build, for
+ * emitting as a machine-readable JSON report.
+ *
+ * <p>The CPU time and allocated bytes are those of the thread that runs the phase, and are -1 if not supported
+ * by the JVM.  The file counters are process-wide, see {@link FileCounters}.</p>
+ */
+public class BuildReport {
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final long startNanos = System.nanoTime();
+    private final FileCounters.Snapshot startCounters = FileCounters.snapshot();
+    private final List<PhaseRecord> phases = new ArrayList<>();
+    private String module = null;
+
+    public record PhaseRecord(String name, long wallNanos, long cpuNanos, long allocatedBytes, FileCounters.Snapshot counters) {}
+
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final long startCpuNanos = cpuNanos();
+        private final long startAllocatedBytes = allocatedBytes();
+        private final FileCounters.Snapshot startCounters = FileCounters.snapshot();
+
+        private Phase(String name) {
+            this.name = Objects.requireNonNull(name, "name cannot be null");
+        }
+
+        /** Records the phase as ended. */
+        @Override
+        public void close() {
+            long wallNanos = System.nanoTime() - startNanos;
+            long endCpuNanos = cpuNanos();
+            long endAllocatedBytes = allocatedBytes();
+            var record = new PhaseRecord(name,
+                                         wallNanos,
+                                         startCpuNanos < 0 || endCpuNanos < 0 ? -1 : endCpuNanos - startCpuNanos,
+                                         startAllocatedBytes < 0 || endAllocatedBytes < 0 ? -1 : endAllocatedBytes - startAllocatedBytes,
+                                         FileCounters.snapshot().minus(startCounters));
+            synchronized (BuildReport.this) {
+                phases.add(record);
+            }
+        }
+    }
+
+    public BuildReport() {}
+
+    /** Starts a phase that is recorded when closed, see also {@link #time(String, Supplier)}. */
+    public Phase phase(String name) { return new Phase(name); }
+
+    /** Runs body as the phase, and returns its result. */
+    public <T> T time(String name, Supplier<T> body) {
+        Phase phase = phase(name);
+        try {
+            return body.get();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /** Runs body as the phase. */
+    public void time(String name, Runnable body) {
+        time(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public synchronized BuildReport setModule(String module) {
+        this.module = module;
+        return this;
+    }
+
+    public synchronized List<PhaseRecord> phases() { return List.copyOf(phases); }
+
+    /** Returns the report as a JSON object. */
+    public synchronized String toJson() {
+        var json = new StringBuilder();
+        json.append("{\n");
+        if (module != null)
+            json.append("  \"module\": ").append(quote(module)).append(",\n");
+        json.append("  \"wallNanos\": ").append(System.nanoTime() - startNanos).append(",\n");
+        json.append("  \"counters\": ");
+        appendCounters(json, FileCounters.snapshot().minus(startCounters));
+        json.append(",\n");
+        json.append("  \"phases\": [");
+        for (int i = 0; i < phases.size(); ++i) {
+            PhaseRecord phase = phases.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                .append("    {\"name\": ").append(quote(phase.name()))
+                .append(", \"wallNanos\": ").append(phase.wallNanos())
+                .append(", \"cpuNanos\": ").append(phase.cpuNanos())
+                .append(", \"allocatedBytes\": ").append(phase.allocatedBytes())
+                .append(", \"counters\": ");
+            appendCounters(json, phase.counters());
+            json.append('}');
+        }
+        json.append(phases.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static void appendCounters(StringBuilder json, FileCounters.Snapshot counters) {
+        json.append("{\"filesScanned\": ").append(counters.filesScanned())
+            .append(", \"statCalls\": ").append(counters.statCalls())
+            .append(", \"bytesRead\": ").append(counters.bytesRead())
+            .append(", \"bytesWritten\": ").append(counters.bytesWritten())
+            .append('}');
+    }
+
+    private static String quote(String string) {
+        var quoted = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append("\\u%04x".formatted((int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static long cpuNanos() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean &&
+            sunThreadMXBean.isThreadAllocatedMemorySupported() &&
+            sunThreadMXBean.isThreadAllocatedMemoryEnabled())
+            return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
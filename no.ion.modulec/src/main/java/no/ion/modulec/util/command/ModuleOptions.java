@@ -15,6 +15,8 @@ public class ModuleOptions {
     private String moduleName;
     private List<Path> sources = new ArrayList<>();
     private List<Path> resources = new ArrayList<>();
+    private List<Path> testSources = new ArrayList<>();
+    private List<Path> testResources = new ArrayList<>();
     private ModuleDescriptor.Version version;
 
     public ModuleOptions(TopLevelOptions topLevelOptions) {
@@ -28,6 +30,8 @@ public class ModuleOptions {
     public Optional<String> moduleName() { return Optional.ofNullable(moduleName); }
     public List<Path> sources() { return sources; }
     public List<Path> resources() { return resources; }
+    public List<Path> testSources() { return testSources; }
+    public List<Path> testResources() { return testResources; }
     public Optional<ModuleDescriptor.Version> version() {
         return version == null ?
                 topLevelOptions.version() :
@@ -69,6 +73,16 @@ public class ModuleOptions {
         return this;
     }
 
+    public ModuleOptions addTestSource(Path testSource) {
+        this.testSources.add(testSource);
+        return this;
+    }
+
+    public ModuleOptions addTestResource(Path testResourceDirectory) {
+        this.testResources.add(testResourceDirectory);
+        return this;
+    }
+
     public ModuleOptions setVersion(ModuleDescriptor.Version version) {
         this.version = version;
         return this;
@@ -77,6 +91,8 @@ public class ModuleOptions {
     public ModuleOptions validate() {
         if (sources.isEmpty())
             throw new ArgumentException("Missing --source for module");
+        if (testSources.isEmpty() && !testResources.isEmpty())
+            throw new ArgumentException("--test-resource requires --test-source");
         return this;
     }
 }
@@ -64,6 +64,10 @@ public class ProgramArgumentParser {
                 case "--warnings":
                     options.topLevelOptions().setWarnings(nextOptionArgument());
                     break;
+                case "-j":
+                case "--workers":
+                    options.topLevelOptions().setWorkers(nextAsIntArgument());
+                    break;
 
                 case "-m":
                 case "--module":
@@ -129,6 +133,14 @@ public class ProgramArgumentParser {
                 case "--resource":
                     moduleOptions.addResource(nextAsPathArgument());
                     break;
+                case "-t":
+                case "--test-source":
+                    moduleOptions.addTestSource(nextAsPathArgument());
+                    break;
+                case "-R":
+                case "--test-resource":
+                    moduleOptions.addTestResource(nextAsPathArgument());
+                    break;
                 case "-v":
                 case "--version":
                     moduleOptions.setVersion(nextAsVersionArgument());
@@ -165,6 +177,14 @@ public class ProgramArgumentParser {
         }
     }
 
+    private int nextAsIntArgument() {
+        try {
+            return Integer.parseInt(nextOptionArgument());
+        } catch (NumberFormatException e) {
+            throw new ArgumentException("Invalid integer: " + arg());
+        }
+    }
+
     private Path nextAsPathArgument() {
         return fileSystem.getPath(nextOptionArgument());
     }
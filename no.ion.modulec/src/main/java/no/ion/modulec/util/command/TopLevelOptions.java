@@ -17,6 +17,7 @@ public class TopLevelOptions {
     private Path buildDirectory;
     private String warnings = "all";
     private String debug;
+    private int workers = Runtime.getRuntime().availableProcessors();
 
     public TopLevelOptions(FileSystem fileSystem) {
         this.buildDirectory = fileSystem.getPath("target");
@@ -25,6 +26,7 @@ public class TopLevelOptions {
     public ModulePath modulePath() { return modulePath; }
     public Optional<ModuleDescriptor.Version> version() { return Optional.ofNullable(version); }
     public Path buildDirectory() { return buildDirectory; }
+    public int workers() { return workers; }
     public List<String> options() {
         var options = new ArrayList<String>();
         options.add("-Werror");
@@ -65,6 +67,13 @@ public class TopLevelOptions {
         return this;
     }
 
+    public TopLevelOptions setWorkers(int workers) {
+        if (workers < 1)
+            throw new ArgumentException("Invalid number of workers: " + workers);
+        this.workers = workers;
+        return this;
+    }
+
     /** @param warnings is the same as in javac's {@code -Xlint:WARNINGS}, by default "all". */
     public TopLevelOptions setWarnings(String warnings) {
         this.warnings = Objects.requireNonNull(warnings, "warnings cannot be null");
@@ -0,0 +1,122 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildCacheTest {
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void storeAndRestore() {
+        Pathname out = tempDir.resolve("out").makeDirectories();
+        out.resolve("classes/a").makeDirectories();
+        out.resolve("classes/a/A.class").writeUtf8("A");
+        out.resolve("compile.sum").writeUtf8("17");
+
+        String key = new Digest().addTree(out.resolve("classes")).hex();
+        var cache = new BuildCache(tempDir.resolve("cache"), BuildCache.DEFAULT_MAX_SIZE);
+        assertFalse(cache.restore(key, out, List.of("classes", "compile.sum")));
+        assertEquals(Optional.of("A"), out.resolve("classes/a/A.class").readUtf8IfExists());
+
+        cache.store(key, out, List.of("classes", "compile.sum"));
+
+        out.resolve("classes/a/A.class").writeUtf8("modified");
+        out.resolve("classes/a/B.class").writeUtf8("B");
+        assertTrue(cache.restore(key, out, List.of("classes", "compile.sum")));
+        assertEquals(Optional.of("A"), out.resolve("classes/a/A.class").readUtf8IfExists());
+        assertFalse(out.resolve("classes/a/B.class").exists());
+        assertEquals(Optional.of("17"), out.resolve("compile.sum").readUtf8IfExists());
+    }
+
+    @Test
+    void digestOfTree() {
+        Pathname tree = tempDir.resolve("tree").makeDirectories();
+        tree.resolve("ab").writeUtf8("c");
+        String digest1 = new Digest().addTree(tree).hex();
+        assertEquals(digest1, new Digest().addTree(tree).hex());
+
+        tree.resolve("ab").delete();
+        tree.resolve("a").writeUtf8("bc");
+        assertNotEquals(digest1, new Digest().addTree(tree).hex());
+    }
+
+    @Test
+    void changedCompilerOptionMissesCache() {
+        var project = new TestProject(tempDir.path());
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a {}")
+               .writeClass("package no.ion.a;\nclass A {}\n");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            moduleCompiler.make(makeParams(project, "out1"));
+            assertFalse(project.log().contains("from build cache"), project.log());
+
+            project.clearLog();
+            moduleCompiler.make(makeParams(project, "out2"));
+            assertTrue(project.log().contains("from build cache"), project.log());
+
+            // -g:lines instead of -g
+            project.clearLog();
+            moduleCompiler.make(makeParams(project, "out3").setDebug("lines"));
+            assertFalse(project.log().contains("from build cache"), project.log());
+            assertTrue(project.log().contains("-g:lines"), project.log());
+        }
+    }
+
+    @Test
+    void upToDateOutputsAreNotRestored() {
+        var project = new TestProject(tempDir.path());
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a {}")
+               .writeClass("package no.ion.a;\nclass A {}\n");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            moduleCompiler.make(makeParams(project, "out"));
+            Pathname classFile = tempDir.resolve("out/classes/no/ion/a/A.class");
+            Instant lastModified = classFile.readAttributes(true).lastModified();
+
+            // The class directory is up to date, and the build cache entry stored by the first make is not restored.
+            project.clearLog();
+            moduleCompiler.make(makeParams(project, "out"));
+            assertTrue(project.log().contains("[skipped: already up to date]"), project.log());
+            assertFalse(project.log().contains("from build cache"), project.log());
+            assertEquals(lastModified, classFile.readAttributes(true).lastModified());
+            assertFalse(tempDir.resolve("out/build-report.json").readUtf8().contains("\"cache-"));
+        }
+    }
+
+    private ModuleCompiler.MakeParams makeParams(TestProject project, String out) {
+        return project.makeParams("a")
+                      .setOut(tempDir.resolve(out))
+                      .setBuildCacheDirectory(tempDir.resolve("cache"));
+    }
+
+    @Test
+    void eviction() {
+        Pathname out = tempDir.resolve("out").makeDirectories();
+        var cache = new BuildCache(tempDir.resolve("cache"), 1);
+        out.resolve("file").writeUtf8("content");
+        String key = new Digest().add("key").hex();
+        cache.store(key, out, List.of("file"));
+        assertFalse(cache.restore(key, out, List.of("file")));
+    }
+}
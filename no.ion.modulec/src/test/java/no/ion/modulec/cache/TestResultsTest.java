@@ -0,0 +1,62 @@
+package no.ion.modulec.cache;
+
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestResultsTest {
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void runResultsAreMergedPerTopLevelClassAndPersisted() {
+        Pathname runResults = tempDir.resolve("run-results").writeUtf8("a.ATest ok 10\n" +
+                                                                       "a.ATest$Nested failed 5\n" +
+                                                                       "b.BTest ok 7\n" +
+                                                                       "c.Removed ok 1\n");
+        Map<String, String> keys = Map.of("a.ATest", "k1", "b.BTest", "k2");
+        TestResults results = new TestResults().putRunResults(runResults, keys);
+        assertEquals(List.of(new TestResults.Result("a.ATest", "k1", false, 15),
+                             new TestResults.Result("b.BTest", "k2", true, 7)),
+                     List.copyOf(results.results()));
+
+        Pathname file = tempDir.resolve("test-results");
+        results.write(file);
+        TestResults read = TestResults.readIfExists(file);
+        assertEquals(List.copyOf(results.results()), List.copyOf(read.results()));
+        assertFalse(read.passed("a.ATest", "k1"));
+        assertTrue(read.passed("b.BTest", "k2"));
+        assertFalse(read.passed("b.BTest", "changed"));
+
+        file.writeUtf8("no.ion.modulec.test-results 0\nb.BTest k2 ok 7\n");
+        assertTrue(TestResults.readIfExists(file).results().isEmpty());
+        assertTrue(TestResults.readIfExists(tempDir.resolve("missing")).results().isEmpty());
+    }
+
+    @Test
+    void orderAndPartitionFollowPreviousResults() {
+        TestResults results = new TestResults().put(new TestResults.Result("a.ATest", "k", true, 900))
+                                               .put(new TestResults.Result("b.BTest", "k", true, 500))
+                                               .put(new TestResults.Result("c.CTest", "k", false, 400))
+                                               .put(new TestResults.Result("d.DTest", "k", true, 100));
+        // e.ETest is assumed to take the mean 475 ms.
+        List<String> classes = List.of("e.ETest", "d.DTest", "c.CTest", "b.BTest", "a.ATest");
+        assertEquals(List.of(List.of("c.CTest", "a.ATest"), List.of("b.BTest", "e.ETest", "d.DTest")),
+                     results.partition(classes, 2));
+        assertEquals(List.of(List.of("c.CTest", "a.ATest", "b.BTest", "e.ETest", "d.DTest")), results.partition(classes, 1));
+        assertEquals(List.of(List.of("a.ATest"), List.of("b.BTest")), results.partition(List.of("a.ATest", "b.BTest"), 4));
+    }
+}
@@ -0,0 +1,85 @@
+package no.ion.modulec.classfile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassFileTest {
+    private static final long LONG_CONSTANT = 0x123456789L;
+
+    static class Nested {
+        Map<String, List<Integer>> map;
+        String className = "a.b.C";
+    }
+
+    @Test
+    void readsThisClass() throws IOException {
+        ClassFile classFile = ClassFile.read(classBytes(ClassFileTest.class));
+        assertEquals("no/ion/modulec/classfile/ClassFileTest", classFile.name());
+        assertTrue(classFile.referencedClasses().contains("java/lang/Object"));
+        assertTrue(classFile.referencedClasses().contains("no/ion/modulec/classfile/ClassFileTest$Nested"));
+        // Only in the descriptor of an annotation
+        assertTrue(classFile.referencedClasses().contains("org/junit/jupiter/api/Test"));
+        assertFalse(classFile.referencedClasses().contains(classFile.name()));
+        assertTrue(classFile.hasAttribute("InnerClasses"));
+        assertTrue(classFile.isConcrete());
+        ClassFile.Method method = classFile.methods()
+                                           .stream()
+                                           .filter(m -> m.name().equals("readsThisClass"))
+                                           .findFirst()
+                                           .orElseThrow();
+        assertEquals("()V", method.descriptor());
+        assertEquals(Set.of("org/junit/jupiter/api/Test"), method.annotations());
+        assertEquals(0x123456789L, LONG_CONSTANT);
+    }
+
+    @Test
+    void readsSignatures() throws IOException {
+        ClassFile classFile = ClassFile.read(classBytes(Nested.class));
+        assertEquals("no/ion/modulec/classfile/ClassFileTest$Nested", classFile.name());
+        assertTrue(classFile.referencedClasses().contains("java/util/Map"));
+        assertTrue(classFile.referencedClasses().contains("java/lang/String"));
+        assertTrue(classFile.referencedClasses().contains("java/lang/Integer"));
+        assertEquals(Set.of("a.b.C"), classFile.stringConstants());
+    }
+
+    @Test
+    void setsModuleVersion() throws IOException {
+        byte[] moduleInfo;
+        try (InputStream inputStream = Test.class.getModule().getResourceAsStream("module-info.class")) {
+            moduleInfo = inputStream.readAllBytes();
+        }
+        ModuleDescriptor descriptor = ModuleDescriptor.read(ByteBuffer.wrap(moduleInfo));
+        ModuleDescriptor versioned = ModuleDescriptor.read(ByteBuffer.wrap(ClassFile.withModuleVersion(moduleInfo, "1.2+modco.3")));
+        assertEquals(Optional.of(ModuleDescriptor.Version.parse("1.2+modco.3")), versioned.version());
+        assertEquals(descriptor.name(), versioned.name());
+        assertEquals(descriptor.exports(), versioned.exports());
+        assertEquals(descriptor.requires(), versioned.requires());
+        assertThrows(IllegalArgumentException.class, () -> ClassFile.withModuleVersion(classBytes(Nested.class), "1"));
+    }
+
+    @Test
+    void rejectsInvalidClassFiles() {
+        assertThrows(IllegalArgumentException.class, () -> ClassFile.read(new byte[] {1, 2, 3, 4}));
+        assertThrows(IllegalArgumentException.class, () -> ClassFile.read(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}));
+    }
+
+    private static byte[] classBytes(Class<?> klass) throws IOException {
+        String resource = "/" + klass.getName().replace('.', '/') + ".class";
+        try (InputStream inputStream = klass.getResourceAsStream(resource)) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
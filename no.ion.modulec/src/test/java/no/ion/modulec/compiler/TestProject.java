@@ -0,0 +1,83 @@
+package no.ion.modulec.compiler;
+
+import no.ion.modulec.Context;
+import no.ion.modulec.MessageSink;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A directory of modules for tests that make them with a {@link ModuleCompiler}, with a context that logs to a buffer.
+ * The module in the directory D below the project directory has its sources in D/src, its tests in D/test, and is
+ * made to D/out.
+ */
+public class TestProject {
+    private final StringBuffer log = new StringBuffer();
+    private final Context context = new Context() {
+        @Override public FileSystem fileSystem() { return FileSystems.getDefault(); }
+        @Override public MessageSink log() { return (type, message) -> log.append(message.get()).append('\n'); }
+    };
+    private final Pathname directory;
+
+    public TestProject(Path directory) {
+        this.directory = Pathname.of(directory);
+    }
+
+    public Context context() { return context; }
+    public Pathname resolve(String relative) { return directory.resolve(relative); }
+
+    /** Returns the messages logged since the last {@link #clearLog()}. */
+    public String log() { return log.toString(); }
+
+    public TestProject clearLog() {
+        log.setLength(0);
+        return this;
+    }
+
+    /** Returns a writer of the sources D/src of the module in the directory D. */
+    public SourceWriter sources(String module) {
+        return SourceWriter.rootedAt(resolve(module + "/src"));
+    }
+
+    /**
+     * Writes the tests D/test of the module in the directory D:  An open module moduleName exporting the package of the
+     * test class and reading JUnit, and the test class with a test method with the body.
+     */
+    public TestProject writeTest(String module, String moduleName, String testClass, String body) {
+        int dotIndex = testClass.lastIndexOf('.');
+        String packageName = testClass.substring(0, dotIndex);
+        SourceWriter.rootedAt(resolve(module + "/test"))
+                    .writeModuleInfoJava("open module " + moduleName + " { exports " + packageName + "; requires org.junit.jupiter.api; }")
+                    .writeClass("package " + packageName + ";\n" +
+                                "import org.junit.jupiter.api.Test;\n" +
+                                "class " + testClass.substring(dotIndex + 1) + " {\n" +
+                                "    @Test\n" +
+                                "    void test() { " + body + " }\n" +
+                                "}\n");
+        return this;
+    }
+
+    /** The parameters of making the module in the directory D, without testing. */
+    public ModuleCompiler.MakeParams makeParams(String module) {
+        return new ModuleCompiler.MakeParams(context).addSourceDirectories(List.of(resolve(module + "/src")))
+                                                     .setOut(resolve(module + "/out"))
+                                                     .setTesting(false);
+    }
+
+    /**
+     * The parameters of making and testing the module in the directory D, with the test runner on the module path.  The
+     * test is skipped if the runner has not been built, see {@link TestRunnerModulePath}.
+     */
+    public ModuleCompiler.MakeParams makeParamsWithTests(String module) {
+        var modulePath = new ModulePath();
+        TestRunnerModulePath.get().forEach(modulePath::addEntry);
+        return new ModuleCompiler.MakeParams(context).addSourceDirectories(List.of(resolve(module + "/src")))
+                                                     .addTestSourceDirectories(List.of(resolve(module + "/test")))
+                                                     .addToModulePath(modulePath)
+                                                     .setOut(resolve(module + "/out"));
+    }
+}
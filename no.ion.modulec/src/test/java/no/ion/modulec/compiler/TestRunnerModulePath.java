@@ -0,0 +1,24 @@
+package no.ion.modulec.compiler;
+
+import no.ion.modulec.file.Pathname;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The module path of the no.ion.modulec.junit runner and the hybrid modular JUnit JARs it requires, for tests that
+ * run tests.  The runner is built by the no.ion.modulec.junit project, after this one, so a test using it is skipped
+ * until the runner has been built.
+ */
+public class TestRunnerModulePath {
+    private static final Pathname JUNIT_PROJECT = Pathname.of(Path.of("../no.ion.modulec.junit").toAbsolutePath().normalize());
+    private static final Pathname RUNNER_JAR = JUNIT_PROJECT.resolve("target/no.ion.modulec.junit-5.9.1.jar");
+    private static final Pathname JUNIT_MODULES = JUNIT_PROJECT.resolve("junit/5.9.1/mod");
+
+    public static List<Path> get() {
+        assumeTrue(RUNNER_JAR.isFile(), "The no.ion.modulec.junit runner has not been built: " + RUNNER_JAR);
+        return List.of(RUNNER_JAR.path(), JUNIT_MODULES.path());
+    }
+}
@@ -1,7 +1,11 @@
 package no.ion.modulec.compiler.multi;
 
+import no.ion.modulec.Context;
+import no.ion.modulec.MessageSink;
+import no.ion.modulec.ModuleCompiler2;
 import no.ion.modulec.compiler.Release;
 import no.ion.modulec.compiler.SourceWriter;
+import no.ion.modulec.compiler.TestRunnerModulePath;
 import no.ion.modulec.file.FileMode;
 import no.ion.modulec.file.Pathname;
 import no.ion.modulec.file.TemporaryDirectory;
@@ -9,9 +13,15 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.module.ModuleDescriptor;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MultiModuleCompilationAndPackagingTest {
@@ -20,7 +30,13 @@ public class MultiModuleCompilationAndPackagingTest {
     private final SourceWriter srcA = SourceWriter.rootedAt(workDirectory.resolve("srcA"));
     private final SourceWriter srcB = SourceWriter.rootedAt(workDirectory.resolve("srcB"));
     private final SourceWriter srcC = SourceWriter.rootedAt(workDirectory.resolve("srcC"));
-    private final MultiModuleCompiler compiler = new MultiModuleCompiler();
+    private final SourceWriter testA = SourceWriter.rootedAt(workDirectory.resolve("testA"));
+    private final SourceWriter testB = SourceWriter.rootedAt(workDirectory.resolve("testB"));
+    private final StringBuffer log = new StringBuffer();
+    private final MultiModuleCompiler compiler = new MultiModuleCompiler(new Context() {
+        @Override public FileSystem fileSystem() { return FileSystems.getDefault(); }
+        @Override public MessageSink log() { return (type, message) -> log.append(message.get()); }
+    });
 
     @AfterEach
     void tearDown() {
@@ -101,4 +117,156 @@ public class MultiModuleCompilationAndPackagingTest {
         assertEquals("", result.cResult().message(), "Unexpected message: " + result.cResult().message());
         assertTrue(result.cResult().success());
     }
+
+    @Test
+    void testsOfDependentModules() {
+        writeModulesWithTests("1");
+
+        for (int workers : List.of(1, 4)) {
+            MultiModuleCompilationAndPackagingResult result = compiler.make(compilationWithTests(workers));
+
+            assertTrue(result.cResult().success(), result.cResult().message());
+            assertEquals(Set.of("no.ion.exampleA", "no.ion.exampleB"), result.tResults().keySet());
+            result.tResults().forEach((name, tResult) -> assertTrue(tResult.success(), name + ": " + tResult.out()));
+        }
+    }
+
+    @Test
+    void failingTest() {
+        writeModulesWithTests("2");
+
+        MultiModuleCompilationAndPackagingResult result = compiler.make(compilationWithTests(2));
+
+        assertTrue(result.cResult().success(), result.cResult().message());
+        assertTrue(result.tResults().get("no.ion.exampleA").success(), result.tResults().get("no.ion.exampleA").out());
+        ModuleTestResult tResultB = result.tResults().get("no.ion.exampleB");
+        assertFalse(tResultB.success());
+        assertTrue(tResultB.out().contains("expected: <2> but was: <1>"), tResultB.out());
+
+        String modulePath = TestRunnerModulePath.get().stream().map(Path::toString).collect(Collectors.joining(":"));
+        assertEquals(1, ModuleCompiler2.mainWithExitCode("-b", workDirectory.resolve("modc").toString(), "-p", modulePath,
+                                                         "-m", "-s", srcA.path().toString(), "-t", testA.path().toString(),
+                                                         "-m", "-s", srcB.path().toString(), "-t", testB.path().toString()));
+    }
+
+    @Test
+    void dependencyFailedToPackage() {
+        writeModulesWithTests("1");
+
+        MultiModuleCompilationAndPackaging compilation = compilationWithTests(1);
+        compilation.modules().get(0).addManifest(workDirectory.resolve("missing.mf").path());
+        MultiModuleCompilationAndPackagingResult result = compiler.make(compilation);
+
+        assertTrue(result.cResult().success(), result.cResult().message());
+        assertFalse(result.pResults().get("no.ion.exampleA").success());
+        assertTrue(result.pResults().get("no.ion.exampleB").success());
+        assertEquals(new ModuleTestResult(false, "Not testing no.ion.exampleA: Failed to package no.ion.exampleA\n"),
+                     result.tResults().get("no.ion.exampleA"));
+        assertEquals(new ModuleTestResult(false, "Not testing no.ion.exampleB: Failed to package no.ion.exampleA\n"),
+                     result.tResults().get("no.ion.exampleB"));
+    }
+
+    @Test
+    void testSourcesWithoutModuleInfo() {
+        writeModulesWithTests("1");
+        testA.pathname().resolve("module-info.java").delete();
+
+        MultiModuleCompilationAndPackagingResult result = compiler.make(compilationWithTests(2));
+
+        assertTrue(result.cResult().success(), result.cResult().message());
+        assertEquals(new ModuleTestResult(false, "Failed to compile the tests of no.ion.exampleA\n"),
+                     result.tResults().get("no.ion.exampleA"));
+        assertTrue(log.toString().contains("error: no module-info.java for module no.ion.exampleA found in the test " +
+                                           "source directories [" + testA.path() + "]\n"), log.toString());
+        assertTrue(result.tResults().get("no.ion.exampleB").success(), result.tResults().get("no.ion.exampleB").out());
+    }
+
+    @Test
+    void testCompilationDiagnosticsAreLogged() {
+        writeModulesWithTests("B.noSuchMethod()");
+
+        MultiModuleCompilationAndPackagingResult result = compiler.make(compilationWithTests(2));
+
+        assertTrue(result.cResult().success(), result.cResult().message());
+        assertEquals(new ModuleTestResult(false, "Failed to compile the tests of no.ion.exampleB\n"),
+                     result.tResults().get("no.ion.exampleB"));
+        assertTrue(log.toString().contains(testB.path() + "/no/ion/b/BTest.java:6: error: cannot find symbol\n"), log.toString());
+        assertTrue(log.toString().contains("\n1 error\n"), log.toString());
+    }
+
+    /** Writes module B requiring module A, each with a test, where the test of B expects B.foo(), i.e. 1, to be expected. */
+    private void writeModulesWithTests(String expected) {
+        srcA.writeModuleInfoJava("""
+                                 module no.ion.exampleA {
+                                   exports no.ion.a;
+                                 }
+                                 """)
+            .writeClass("""
+                        package no.ion.a;
+                        public class A {
+                          public static final int a = 1;
+                        }
+                        """);
+        testA.writeModuleInfoJava("""
+                                  open module no.ion.exampleA {
+                                    exports no.ion.a;
+                                    requires org.junit.jupiter.api;
+                                  }
+                                  """)
+             .writeClass("""
+                         package no.ion.a;
+                         import org.junit.jupiter.api.Test;
+                         import static org.junit.jupiter.api.Assertions.assertEquals;
+                         class ATest {
+                           @Test
+                           void a() { assertEquals(1, A.a); }
+                         }
+                         """);
+
+        srcB.writeModuleInfoJava("""
+                                 module no.ion.exampleB {
+                                   requires no.ion.exampleA;
+                                   exports no.ion.b;
+                                 }
+                                 """)
+            .writeClass("""
+                        package no.ion.b;
+                        import no.ion.a.A;
+                        public class B {
+                          public static int foo() {
+                            return A.a;
+                          }
+                        }
+                        """);
+        testB.writeModuleInfoJava("""
+                                  open module no.ion.exampleB {
+                                    requires no.ion.exampleA;
+                                    exports no.ion.b;
+                                    requires org.junit.jupiter.api;
+                                  }
+                                  """)
+             .writeClass("""
+                         package no.ion.b;
+                         import org.junit.jupiter.api.Test;
+                         import static org.junit.jupiter.api.Assertions.assertEquals;
+                         class BTest {
+                           @Test
+                           void foo() { assertEquals(%s, B.foo()); }
+                         }
+                         """.formatted(expected));
+    }
+
+    private MultiModuleCompilationAndPackaging compilationWithTests(int workers) {
+        var compilation = new MultiModuleCompilationAndPackaging(Release.ofJre())
+                .setBuildDirectory(workDirectory.resolve("out").path())
+                .setWorkers(workers);
+        TestRunnerModulePath.get().forEach(compilation.modulePath()::addEntry);
+        compilation.addModule()
+                   .addSourceDirectories(List.of(srcA.path()))
+                   .addTestSourceDirectories(List.of(testA.path()));
+        compilation.addModule()
+                   .addSourceDirectories(List.of(srcB.path()))
+                   .addTestSourceDirectories(List.of(testB.path()));
+        return compilation;
+    }
 }
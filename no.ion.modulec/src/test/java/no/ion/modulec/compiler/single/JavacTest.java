@@ -0,0 +1,130 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.modulec.Context;
+import no.ion.modulec.MessageSink;
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.processing.Processor;
+import javax.lang.model.SourceVersion;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JavacTest {
+    private final List<String> events = new ArrayList<>();
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void diagnosticsAreLoggedBeforeJavacReturns() {
+        Pathname source = tempDir.resolve("src/no/ion/Foo.java").makeParentDirectories();
+        source.writeUtf8("""
+                         package no.ion;
+                         class Foo {
+                           int foo() { return bar; }
+                         }
+                         """);
+
+        var javac = new Javac(new RecordingContext(), new RecordingJavaCompiler(ToolProvider.getSystemJavaCompiler()));
+        Javac.Result result = javac.javac(List.of("-d", tempDir.resolve("classes").toString()), List.of(source.toString()),
+                                          Locale.ROOT, StandardCharsets.UTF_8);
+
+        assertFalse(result.success());
+        assertEquals(List.of("COMMAND", "INFO " + source + ":3: error: cannot find symbol", "returned", "INFO 1 error"),
+                     firstLinesOfEvents());
+        assertTrue(result.message().startsWith(source + ":3: error: cannot find symbol\n"), result.message());
+        assertTrue(result.message().endsWith("1 error\n"), result.message());
+    }
+
+    @Test
+    void invalidOptionIsLogged() {
+        var javac = new Javac(new RecordingContext(), ToolProvider.getSystemJavaCompiler());
+        Javac.Result result = javac.javac(List.of("--no-such-option"), List.of(), Locale.ROOT, StandardCharsets.UTF_8);
+
+        assertFalse(result.success());
+        assertEquals("javac: error: invalid flag: --no-such-option\n", result.message());
+        assertEquals(List.of("COMMAND", "INFO javac: error: invalid flag: --no-such-option"), firstLinesOfEvents());
+    }
+
+    /** The first line of each event, with the type of the event, and only the type of a command. */
+    private List<String> firstLinesOfEvents() {
+        synchronized (events) {
+            return events.stream().map(event -> event.startsWith("COMMAND") ? "COMMAND" : event.lines().findFirst().orElseThrow()).toList();
+        }
+    }
+
+    private class RecordingContext implements Context, MessageSink {
+        @Override public FileSystem fileSystem() { return FileSystems.getDefault(); }
+        @Override public MessageSink log() { return this; }
+
+        @Override
+        public void log(Type type, Supplier<String> message) {
+            synchronized (events) {
+                events.add(type + " " + message.get());
+            }
+        }
+    }
+
+    /** Records when a compilation task returns. */
+    private class RecordingJavaCompiler implements JavaCompiler {
+        private final JavaCompiler delegate;
+
+        private RecordingJavaCompiler(JavaCompiler delegate) { this.delegate = delegate; }
+
+        @Override
+        public CompilationTask getTask(Writer out, JavaFileManager fileManager, DiagnosticListener<? super JavaFileObject> diagnosticListener,
+                                       Iterable<String> options, Iterable<String> classes, Iterable<? extends JavaFileObject> compilationUnits) {
+            CompilationTask task = delegate.getTask(out, fileManager, diagnosticListener, options, classes, compilationUnits);
+            return new CompilationTask() {
+                @Override public void addModules(Iterable<String> moduleNames) { task.addModules(moduleNames); }
+                @Override public void setProcessors(Iterable<? extends Processor> processors) { task.setProcessors(processors); }
+                @Override public void setLocale(Locale locale) { task.setLocale(locale); }
+
+                @Override
+                public Boolean call() {
+                    Boolean success = task.call();
+                    synchronized (events) {
+                        events.add("returned");
+                    }
+                    return success;
+                }
+            };
+        }
+
+        @Override
+        public StandardJavaFileManager getStandardFileManager(DiagnosticListener<? super JavaFileObject> diagnosticListener, Locale locale, Charset charset) {
+            return delegate.getStandardFileManager(diagnosticListener, locale, charset);
+        }
+
+        @Override public int isSupportedOption(String option) { return delegate.isSupportedOption(option); }
+        @Override public int run(InputStream in, OutputStream out, OutputStream err, String... arguments) { return delegate.run(in, out, err, arguments); }
+        @Override public Set<SourceVersion> getSourceVersions() { return delegate.getSourceVersions(); }
+    }
+}
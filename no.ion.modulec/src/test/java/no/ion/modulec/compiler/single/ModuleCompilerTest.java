@@ -0,0 +1,99 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.modulec.compiler.ModulePath;
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.modco.ProgramLayout;
+import no.ion.modulec.modco.ProgramSpec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModuleCompilerTest {
+    private static final String SKIPPED = "[skipped: already up to date]";
+
+    private TestProject project;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDir) {
+        project = new TestProject(tempDir);
+    }
+
+    @Test
+    void recompilesWhenModulePathChanges() {
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a { exports no.ion.a; }")
+               .writeClass("package no.ion.a;\npublic class A {\n    public static final int VALUE = 1;\n    private A() {}\n}\n");
+        project.sources("b")
+               .writeModuleInfoJava("module no.ion.b { requires no.ion.a; }")
+               .writeClass("package no.ion.b;\nclass B { int value() { return no.ion.a.A.VALUE; } }\n");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            moduleCompiler.make(project.makeParams("a"));
+            Pathname jarA = project.resolve("a/out/no.ion.a.jar");
+            assertTrue(jarA.isFile());
+            ModuleCompiler.MakeParams paramsB = project.makeParams("b").addToModulePath(new ModulePath().addModularJar(jarA.path()));
+
+            moduleCompiler.make(paramsB);
+            assertFalse(project.log().contains(SKIPPED), project.log());
+
+            project.clearLog();
+            moduleCompiler.make(paramsB);
+            assertTrue(project.log().contains(SKIPPED), project.log());
+
+            // The constant A.VALUE is embedded in B.class, so B must be recompiled when A changes.
+            jarA.setLastModified(Instant.now());
+            project.clearLog();
+            moduleCompiler.make(paramsB);
+            assertFalse(project.log().contains(SKIPPED), project.log());
+
+            project.clearLog();
+            moduleCompiler.make(paramsB);
+            assertTrue(project.log().contains(SKIPPED), project.log());
+        }
+    }
+
+    @Test
+    void jlinkProgram() throws InterruptedException {
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a { requires java.logging; }")
+               .writeClass("""
+                           package no.ion.a;
+                           class Main {
+                               public static void main(String... args) {
+                                   System.out.println(java.util.logging.Level.INFO + " " + String.join(",", args));
+                               }
+                           }
+                           """);
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            moduleCompiler.make(project.makeParams("a").addProgram(new ProgramSpec("hello", ".Main"))
+                                                       .setProgramLayout(ProgramLayout.JLINK)
+                                                       .setJlinkStripDebug(true));
+        }
+
+        Pathname image = project.resolve("a/out/image");
+        assertTrue(project.log().contains("runtime image " + image), project.log());
+        assertFalse(project.resolve("a/out/fat.jar").exists());
+        try {
+            Process process = new ProcessBuilder(image.resolve("bin/hello").toString(), "x", "y")
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(0, process.waitFor(), output);
+            assertEquals("INFO x,y\n", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package no.ion.modulec.compiler.single;
+
+import no.ion.modulec.compiler.ModulePath;
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.compiler.TestRunnerModulePath;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.jar.Jar;
+import no.ion.modulec.jar.ModulePackaging;
+import no.ion.modulec.jar.PackagingResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestContainersTest {
+    private static final String GENERATION_PROPERTY = "no.ion.modulec.compiler.single.TestContainersTest.generation";
+
+    private TestProject project;
+    private Pathname testJar;
+    private Pathname copies;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDir) {
+        project = new TestProject(tempDir);
+        testJar = project.resolve("no.ion.t.jar");
+        copies = project.resolve("copies");
+    }
+
+    @Test
+    void generationVersion() {
+        assertEquals("1.2+modco.3", TestContainers.generationVersion(Optional.of(ModuleDescriptor.Version.parse("1.2")), 3).toString());
+        assertEquals("1.2+b.modco.3", TestContainers.generationVersion(Optional.of(ModuleDescriptor.Version.parse("1.2+b")), 3).toString());
+        assertEquals("0+modco.3", TestContainers.generationVersion(Optional.empty(), 3).toString());
+    }
+
+    @Test
+    void generations() {
+        ModulePath modulePath = testRunnerModulePath();
+        Optional<ModuleDescriptor.Version> version = Optional.of(ModuleDescriptor.Version.parse("1.2"));
+
+        try (var testContainers = new TestContainers()) {
+            writeTestJar(1, version);
+            TestContainers.Lease lease = testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies);
+            assertFalse(lease.warm());
+            assertEquals(1, valueOf(lease));
+
+            // Unchanged dependency key and test JAR
+            TestContainers.Lease reused = testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies);
+            assertTrue(reused.warm());
+            assertSame(lease.module(), reused.module());
+            assertSame(lease.testBooter(), reused.testBooter());
+
+            // Changed test JAR
+            writeTestJar(2, version);
+            TestContainers.Lease generation2 = testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies);
+            assertTrue(generation2.warm());
+            assertSame(lease.testBooter(), generation2.testBooter());
+            assertEquals(2, valueOf(generation2));
+            assertEquals(Set.of("no.ion.t@1.2+modco.2.jar"), filenamesIn(copies));
+
+            // The previous copy is deleted
+            writeTestJar(3, version);
+            assertEquals(3, valueOf(testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies)));
+            assertEquals(Set.of("no.ion.t@1.2+modco.3.jar"), filenamesIn(copies));
+
+            // Changed dependency key
+            TestContainers.Lease replaced = testContainers.acquire("no.ion.t", version, modulePath, "key2", testJar, copies);
+            assertFalse(replaced.warm());
+            assertEquals(3, valueOf(replaced));
+        }
+    }
+
+    @Test
+    void versionlessModule() {
+        ModulePath modulePath = testRunnerModulePath();
+
+        try (var testContainers = new TestContainers()) {
+            writeTestJar(1, Optional.empty());
+            assertEquals(1, valueOf(testContainers.acquire("no.ion.t", Optional.empty(), modulePath, "key", testJar, copies)));
+
+            writeTestJar(2, Optional.empty());
+            assertEquals(2, valueOf(testContainers.acquire("no.ion.t", Optional.empty(), modulePath, "key", testJar, copies)));
+            assertEquals(Set.of("no.ion.t@0+modco.2.jar"), filenamesIn(copies));
+        }
+    }
+
+    @Test
+    void replacedAfterMaxGenerations() {
+        ModulePath modulePath = testRunnerModulePath();
+        Optional<ModuleDescriptor.Version> version = Optional.of(ModuleDescriptor.Version.parse("1"));
+
+        try (var testContainers = new TestContainers()) {
+            for (int generation = 1; generation <= TestContainers.MAX_GENERATIONS; ++generation) {
+                writeTestJar(generation, version);
+                TestContainers.Lease lease = testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies);
+                assertEquals(generation > 1, lease.warm());
+                assertEquals(generation, valueOf(lease));
+            }
+
+            writeTestJar(0, version);
+            TestContainers.Lease lease = testContainers.acquire("no.ion.t", version, modulePath, "key", testJar, copies);
+            assertFalse(lease.warm());
+            assertEquals(0, valueOf(lease));
+            assertEquals(Set.of(), filenamesIn(copies));
+        }
+    }
+
+    @Test
+    void secondMakeRunsChangedTest() {
+        project.sources("t")
+               .writeModuleInfoJava("module no.ion.t { exports no.ion.t; }")
+               .writeClass("package no.ion.t;\npublic class T {\n    private T() {}\n}\n");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            for (int generation = 1; generation <= 2; ++generation) {
+                project.writeTest("t", "no.ion.t", "no.ion.t.TTest",
+                                  "System.setProperty(\"" + GENERATION_PROPERTY + "\", \"" + generation + "\");");
+                project.clearLog();
+                moduleCompiler.make(project.makeParamsWithTests("t"));
+                assertEquals(Integer.toString(generation), System.getProperty(GENERATION_PROPERTY), project.log());
+            }
+            assertTrue(project.log().contains("Reusing the test container of no.ion.t"), project.log());
+        } finally {
+            System.clearProperty(GENERATION_PROPERTY);
+        }
+    }
+
+    private static ModulePath testRunnerModulePath() {
+        var modulePath = new ModulePath();
+        TestRunnerModulePath.get().forEach(modulePath::addEntry);
+        return modulePath;
+    }
+
+    /** Writes the test JAR of module no.ion.t with a class T with VALUE set to value. */
+    private void writeTestJar(int value, Optional<ModuleDescriptor.Version> version) {
+        Pathname src = project.resolve("t/src");
+        Pathname classes = project.resolve("t/classes");
+        classes.deleteRecursively();
+        project.sources("t")
+               .writeModuleInfoJava("module no.ion.t { exports no.ion.t; }")
+               .writeClass("package no.ion.t;\npublic class T {\n    public static final int VALUE = " + value + ";\n}\n");
+        var err = new ByteArrayOutputStream();
+        int exitCode = ToolProvider.getSystemJavaCompiler().run(null, err, err, "-d", classes.toString(),
+                                                                src.resolve("module-info.java").toString(),
+                                                                src.resolve("no/ion/t/T.java").toString());
+        assertEquals(0, exitCode, err.toString());
+
+        ModulePackaging packaging = ModulePackaging.forCreatingJar(testJar.path()).addDirectoryTree(classes.path());
+        version.ifPresent(packaging::setVersion);
+        testJar.delete();
+        PackagingResult result = new Jar(project.context()).pack(packaging);
+        assertTrue(result.success(), result.out());
+    }
+
+    private static int valueOf(TestContainers.Lease lease) {
+        try {
+            return lease.module().loadClass("no.ion.t.T").getField("VALUE").getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Set<String> filenamesIn(Pathname directory) {
+        var filenames = new HashSet<String>();
+        if (directory.isDirectory())
+            directory.forEachDirectoryEntry(entry -> filenames.add(entry.filename()));
+        return filenames;
+    }
+}
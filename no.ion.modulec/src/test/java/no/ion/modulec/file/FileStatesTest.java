@@ -0,0 +1,125 @@
+package no.ion.modulec.file;
+
+import no.ion.modulec.compiler.SourceWriter;
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class FileStatesTest {
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void snapshotFollowsChanges() {
+        Pathname root = tempDir.resolve("src").makeDirectories();
+        root.resolve("a/b").makeDirectories();
+        root.resolve("a/b/Foo.java").writeUtf8("foo");
+        root.resolve("Bar.java").writeUtf8("bar");
+
+        try (var fileStates = new FileStates(tempDir)) {
+            FileStates.Snapshot snapshot = fileStates.snapshot(root, true);
+            assertEquals(FileStates.scan(root, true).keySet(), snapshot.entries().keySet());
+            assertEquals(Set.of("Bar.java", "a", "a/b", "a/b/Foo.java"), snapshot.entries().keySet());
+            long version = snapshot.version();
+            assertEquals(version, fileStates.snapshot(root, true).version());
+
+            root.resolve("a/b/Foo.java").writeUtf8("foo2").setLastModified(Instant.now().plusSeconds(10));
+            snapshot = awaitNewVersion(fileStates, root, version);
+            assertEquals(FileStates.scan(root, true).get("a/b/Foo.java").lastModified(),
+                         snapshot.entries().get("a/b/Foo.java").lastModified());
+
+            root.resolve("a/c").makeDirectories().resolve("Baz.java").writeUtf8("baz");
+            snapshot = awaitEntries(fileStates, root, Set.of("Bar.java", "a", "a/b", "a/b/Foo.java", "a/c", "a/c/Baz.java"));
+
+            root.resolve("a").deleteRecursively();
+            snapshot = awaitEntries(fileStates, root, Set.of("Bar.java"));
+            assertEquals(FileStates.scan(root, true).keySet(), snapshot.entries().keySet());
+        }
+    }
+
+    @Test
+    void snapshotHasEntriesCreatedAndRemovedBeforeNotification() {
+        Pathname root = tempDir.resolve("src").makeDirectories();
+        root.resolve("a").makeDirectories().resolve("Foo.java").writeUtf8("foo");
+
+        try (var fileStates = new FileStates(tempDir)) {
+            long version = fileStates.snapshot(root, true).version();
+
+            // No waiting for the notifications:  The modification times of the directories have changed, or they were
+            // modified too recently to tell.
+            root.resolve("a/Bar.java").writeUtf8("bar");
+            root.resolve("b").makeDirectories().resolve("Baz.java").writeUtf8("baz");
+            FileStates.Snapshot snapshot = fileStates.snapshot(root, true);
+            assertEquals(Set.of("a", "a/Bar.java", "a/Foo.java", "b", "b/Baz.java"), snapshot.entries().keySet());
+            assertNotEquals(version, snapshot.version());
+
+            root.resolve("a/Foo.java").delete();
+            assertEquals(Set.of("a", "a/Bar.java", "b", "b/Baz.java"), fileStates.snapshot(root, true).entries().keySet());
+        }
+    }
+
+    @Test
+    void makeCompilesSourceFileAddedJustBefore() {
+        var project = new TestProject(tempDir.path());
+        SourceWriter sources = project.sources("a");
+        sources.writeModuleInfoJava("module no.ion.a {}");
+        sources.writeClass("package no.ion.a;\nclass A {}\n");
+        Pathname out = project.resolve("a/out");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context()).keepFileStates()) {
+            moduleCompiler.make(project.makeParams("a"));
+            assertTrue(out.resolve("classes/no/ion/a/A.class").isFile());
+
+            project.clearLog();
+            moduleCompiler.make(project.makeParams("a"));
+            assertTrue(project.log().contains("[skipped: already up to date]"), project.log());
+
+            sources.writeClass("package no.ion.a;\nclass B {}\n");
+            moduleCompiler.make(project.makeParams("a"));
+            assertTrue(out.resolve("classes/no/ion/a/B.class").isFile(), project.log());
+        }
+    }
+
+    private static FileStates.Snapshot awaitNewVersion(FileStates fileStates, Pathname root, long version) {
+        for (long deadline = System.currentTimeMillis() + 10_000; System.currentTimeMillis() < deadline; sleep()) {
+            FileStates.Snapshot snapshot = fileStates.snapshot(root, true);
+            if (snapshot.version() != version)
+                return snapshot;
+        }
+        return fail("Timed out waiting for a change to " + root);
+    }
+
+    private static FileStates.Snapshot awaitEntries(FileStates fileStates, Pathname root, Set<String> entries) {
+        FileStates.Snapshot snapshot = null;
+        for (long deadline = System.currentTimeMillis() + 10_000; System.currentTimeMillis() < deadline; sleep()) {
+            snapshot = fileStates.snapshot(root, true);
+            if (snapshot.entries().keySet().equals(entries))
+                return snapshot;
+        }
+        assertEquals(entries, snapshot.entries().keySet());
+        return snapshot;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
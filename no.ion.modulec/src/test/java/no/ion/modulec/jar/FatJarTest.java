@@ -0,0 +1,94 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class FatJarTest {
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void storedAlignedModulesWithIndex() throws IOException {
+        Pathname baseJar = writeJar(tempDir.resolve("base.jar"), "a/Main.class", "abc");
+        Pathname aJar = writeJar(tempDir.resolve("a.jar"), "a/A.class", "A");
+        Pathname bJar = writeJar(tempDir.resolve("b.jar"), "b/B.class", "BB");
+        ModuleDescriptor a = ModuleDescriptor.newModule("a").version("1.2.3").packages(Set.of("a", "a.x")).requires("b").build();
+        ModuleDescriptor b = ModuleDescriptor.newModule("b").packages(Set.of("b")).build();
+
+        for (byte[] header : List.of(new byte[0], new byte[] {'#', '!', '\n'})) {
+            Pathname fatJar = tempDir.resolve("fat.jar");
+            new FatJar().extend(new FatJarSpec(baseJar, fatJar)
+                                        .addHeader(header)
+                                        .addDirectory(FatJar.MODULE_DIRECTORY)
+                                        .addModule(bJar, FatJar.MODULE_DIRECTORY + "b.jar", b)
+                                        .addModule(aJar, FatJar.MODULE_DIRECTORY + "a@1.2.3.jar", a));
+
+            ModuleIndex index;
+            try (JarFile jarFile = new JarFile(fatJar.file())) {
+                JarEntry indexEntry = jarFile.getJarEntry(ModuleIndex.PATH);
+                assertNotNull(indexEntry);
+                try (InputStream inputStream = jarFile.getInputStream(indexEntry)) {
+                    index = ModuleIndex.fromUtf8(inputStream.readAllBytes());
+                }
+                for (var entry : index.entries())
+                    assertEquals(ZipEntry.STORED, jarFile.getJarEntry(entry.pathInJar()).getMethod());
+            }
+
+            assertEquals(List.of(new ModuleIndex.Entry("a", Optional.of("1.2.3"), "META-INF/mod/a@1.2.3.jar",
+                                                       index.entries().get(0).offset(), Files.size(aJar.path()),
+                                                       Set.of("a", "a.x"), Set.of("b", "java.base")),
+                                 new ModuleIndex.Entry("b", Optional.empty(), "META-INF/mod/b.jar",
+                                                       index.entries().get(1).offset(), Files.size(bJar.path()),
+                                                       Set.of("b"), Set.of("java.base"))),
+                         index.entries());
+
+            byte[] fatJarBytes = Files.readAllBytes(fatJar.path());
+            assertContentAt(fatJarBytes, index.entries().get(0), aJar);
+            assertContentAt(fatJarBytes, index.entries().get(1), bJar);
+        }
+    }
+
+    private static void assertContentAt(byte[] fatJarBytes, ModuleIndex.Entry entry, Pathname jar) throws IOException {
+        assertEquals(0, entry.offset() % FatJar.ALIGNMENT);
+        byte[] content = Arrays.copyOfRange(fatJarBytes, (int) entry.offset(), (int) (entry.offset() + entry.size()));
+        assertArrayEquals(Files.readAllBytes(jar.path()), content);
+    }
+
+    private static Pathname writeJar(Pathname pathname, String entryName, String content) {
+        try (OutputStream outputStream = Files.newOutputStream(pathname.path());
+             var jarOutputStream = new JarOutputStream(outputStream)) {
+            jarOutputStream.putNextEntry(new JarEntry(entryName));
+            jarOutputStream.write(content.getBytes());
+            jarOutputStream.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return pathname;
+    }
+}
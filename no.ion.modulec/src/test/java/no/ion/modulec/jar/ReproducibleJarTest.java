@@ -0,0 +1,100 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.Context;
+import no.ion.modulec.MessageSink;
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReproducibleJarTest {
+    private final Context context = new Context() {
+        @Override public FileSystem fileSystem() { return FileSystems.getDefault(); }
+        @Override public MessageSink log() { return (type, message) -> {}; }
+    };
+    private Pathname tempDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+    }
+
+    @Test
+    void jarsAreIndependentOfModificationTimes() {
+        for (Optional<String> sourceDateEpoch : List.of(Optional.<String>empty(), Optional.of("1700000000"))) {
+            LocalDateTime timestamp = ReproducibleJar.timestampFromSourceDateEpoch(sourceDateEpoch);
+
+            Pathname first = make(sourceDateEpoch.orElse("none") + "-1", timestamp, Instant.parse("2001-02-03T04:05:06Z"));
+            Pathname second = make(sourceDateEpoch.orElse("none") + "-2", timestamp, Instant.parse("2011-12-13T14:15:16Z"));
+
+            for (String filename : List.of("a.jar", "fat.jar")) {
+                assertArrayEquals(readAllBytes(first.resolve(filename)), readAllBytes(second.resolve(filename)), filename);
+                assertEntryTimes(first.resolve(filename), timestamp);
+            }
+        }
+    }
+
+    /** Packs a JAR and a fat JAR with it, of files with the given modification time, to a new directory. */
+    private Pathname make(String name, LocalDateTime timestamp, Instant modificationTime) {
+        Pathname directory = tempDir.resolve(name).makeDirectories();
+        Pathname classes = directory.resolve("classes").makeDirectories();
+        classes.resolve("a/b").makeDirectories();
+        classes.resolve("a/b/data.txt").writeUtf8("data");
+        classes.resolve("a/text.txt").writeUtf8("text");
+        Pathname extra = directory.resolve("extra.txt").writeUtf8("extra");
+        for (Pathname pathname : List.of(classes.resolve("a/b/data.txt"), classes.resolve("a/b"), classes.resolve("a/text.txt"),
+                                         classes.resolve("a"), extra))
+            pathname.setLastModified(modificationTime);
+
+        Pathname jar = directory.resolve("a.jar");
+        PackagingResult result = new Jar(context).pack(ModulePackaging.forCreatingJar(jar.path())
+                                                                      .addDirectoryTree(classes.path())
+                                                                      .setReproducibleTimestamp(timestamp));
+        assertTrue(result.success(), result.out());
+
+        ModuleDescriptor descriptor = ModuleDescriptor.newModule("a").packages(Set.of("a", "a.b")).build();
+        new FatJar().extend(new FatJarSpec(jar, directory.resolve("fat.jar"))
+                                    .addDirectory(FatJar.MODULE_DIRECTORY)
+                                    .addModule(jar, FatJar.MODULE_DIRECTORY + "a.jar", descriptor)
+                                    .addFile(extra, "extra.txt")
+                                    .setReproducibleTimestamp(timestamp));
+        return directory;
+    }
+
+    private static void assertEntryTimes(Pathname jar, LocalDateTime timestamp) {
+        try (JarFile jarFile = new JarFile(jar.file(), false)) {
+            for (JarEntry entry : Collections.list(jarFile.entries()))
+                assertEquals(timestamp, entry.getTimeLocal(), entry.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readAllBytes(Pathname pathname) {
+        try {
+            return Files.readAllBytes(pathname.path());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package no.ion.modulec.jar;
+
+import no.ion.modulec.compiler.SourceWriter;
+import no.ion.modulec.file.Pathname;
+import no.ion.modulec.file.SourceDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeShakerTest {
+    private static final Set<String> B_ENTRIES = Set.of("META-INF/", "META-INF/MANIFEST.MF", "module-info.class",
+                                                        "no/", "no/ion/", "no/ion/b/", "no/ion/b/ByName.class",
+                                                        "no/ion/b/Unused.class", "no/ion/b/Used.class", "no/ion/b/data.txt",
+                                                        "no/ion/b/kept/", "no/ion/b/kept/Kept.class",
+                                                        "no/ion/b/kept/sub/", "no/ion/b/kept/sub/Deep.class",
+                                                        "no/ion/b/open/", "no/ion/b/open/Reflected.class");
+
+    private Pathname tempDir;
+    private Pathname shaken;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDirPath) {
+        tempDir = Pathname.of(tempDirPath);
+        shaken = tempDir.resolve("out/shaken").makeDirectories();
+    }
+
+    @Test
+    void rootsOpenPackagesAndStringConstants() {
+        List<TreeShaker.Module> modules = writeModules(true);
+
+        TreeShaker.Result result = new TreeShaker().addRoot("no.ion.a.Main").shake(modules, shaken);
+
+        assertEquals(List.of(shaken.resolve("no.ion.a.jar"), shaken.resolve("no.ion.b.jar")), result.jars());
+        assertEquals(8, result.classes());
+        assertEquals(4, result.keptClasses());
+        // Main is a root, Used is referenced by Main, ByName is named by a string constant of Main, and Reflected is
+        // in an open package.  Directories, resources, and module-info.class are always kept.
+        assertEquals(Set.of("META-INF/", "META-INF/MANIFEST.MF", "module-info.class", "no/", "no/ion/", "no/ion/a/",
+                            "no/ion/a/Main.class"),
+                     entriesOf(shaken.resolve("no.ion.a.jar")));
+        assertEquals(Set.of("META-INF/", "META-INF/MANIFEST.MF", "module-info.class", "no/", "no/ion/", "no/ion/b/",
+                            "no/ion/b/ByName.class", "no/ion/b/Used.class", "no/ion/b/data.txt", "no/ion/b/kept/",
+                            "no/ion/b/kept/sub/", "no/ion/b/open/", "no/ion/b/open/Reflected.class"),
+                     entriesOf(shaken.resolve("no.ion.b.jar")));
+    }
+
+    @Test
+    void keepRules() {
+        List<TreeShaker.Module> modules = writeModules(true);
+
+        new TreeShaker().addRoot("no.ion.a.Main").addKeepRule("no.ion.b.kept.*").shake(modules, shaken);
+        Set<String> entries = entriesOf(shaken.resolve("no.ion.b.jar"));
+        assertTrue(entries.contains("no/ion/b/kept/Kept.class"), entries.toString());
+        assertFalse(entries.contains("no/ion/b/kept/sub/Deep.class"), entries.toString());
+
+        shaken.deleteRecursively();
+        new TreeShaker().addRoot("no.ion.a.Main").addKeepRule("no.ion.b.kept.**").shake(modules, shaken);
+        entries = entriesOf(shaken.resolve("no.ion.b.jar"));
+        assertTrue(entries.contains("no/ion/b/kept/Kept.class"), entries.toString());
+        assertTrue(entries.contains("no/ion/b/kept/sub/Deep.class"), entries.toString());
+        assertFalse(entries.contains("no/ion/b/Unused.class"), entries.toString());
+    }
+
+    @Test
+    void keepRulePattern() {
+        Pattern pattern = TreeShaker.keepRulePattern("a.b.*");
+        assertTrue(pattern.matcher("a.b.C").matches());
+        assertTrue(pattern.matcher("a.b.C$D").matches());
+        assertFalse(pattern.matcher("a.b.c.D").matches());
+        assertFalse(pattern.matcher("a.bc.D").matches());
+
+        pattern = TreeShaker.keepRulePattern("a.b.**");
+        assertTrue(pattern.matcher("a.b.C").matches());
+        assertTrue(pattern.matcher("a.b.c.D").matches());
+        assertFalse(pattern.matcher("a.bc.D").matches());
+
+        pattern = TreeShaker.keepRulePattern("a.*.C$*");
+        assertTrue(pattern.matcher("a.b.C$D").matches());
+        assertFalse(pattern.matcher("a.b.C").matches());
+        assertFalse(pattern.matcher("aXb.C$D").matches());
+
+        assertThrows(IllegalArgumentException.class, () -> TreeShaker.keepRulePattern(""));
+    }
+
+    @Test
+    void moduleWithoutModulePackagesIsKeptWhole() {
+        List<TreeShaker.Module> modules = writeModules(false);
+
+        TreeShaker.Result result = new TreeShaker().addRoot("no.ion.a.Main").shake(modules, shaken);
+
+        assertEquals(List.of(shaken.resolve("no.ion.a.jar"), modules.get(1).jar()), result.jars());
+        assertEquals(7, result.keptClasses());
+        assertFalse(shaken.resolve("no.ion.b.jar").exists());
+        assertEquals(B_ENTRIES, entriesOf(modules.get(1).jar()));
+    }
+
+    /**
+     * Writes module no.ion.a with a main class using no.ion.b, and no.ion.b with an open package.  The JAR of no.ion.b
+     * is made with the jar tool, which adds the ModulePackages attribute to module-info.class, if withModulePackages,
+     * and otherwise with the class files from javac.
+     */
+    private List<TreeShaker.Module> writeModules(boolean withModulePackages) {
+        SourceWriter.rootedAt(tempDir.resolve("b/src"))
+                    .writeModuleInfoJava("module no.ion.b { exports no.ion.b; exports no.ion.b.kept; opens no.ion.b.open; }")
+                    .writeClass("package no.ion.b;\npublic class Used { public static void use() {} }\n")
+                    .writeClass("package no.ion.b;\npublic class Unused {}\n")
+                    .writeClass("package no.ion.b;\npublic class ByName {}\n")
+                    .writeClass("package no.ion.b.kept;\npublic class Kept {}\n")
+                    .writeClass("package no.ion.b.kept.sub;\npublic class Deep {}\n")
+                    .writeClass("package no.ion.b.open;\npublic class Reflected {}\n");
+        SourceWriter.rootedAt(tempDir.resolve("a/src"))
+                    .writeModuleInfoJava("module no.ion.a { requires no.ion.b; }")
+                    .writeClass("""
+                                package no.ion.a;
+                                public class Main {
+                                    public static void main(String... args) throws Exception {
+                                        no.ion.b.Used.use();
+                                        Class.forName("no.ion.b.ByName");
+                                    }
+                                }
+                                """)
+                    .writeClass("package no.ion.a;\nclass Dead {}\n");
+
+        javac(tempDir.resolve("b/src"), tempDir.resolve("b/classes"));
+        tempDir.resolve("b/classes/no/ion/b/data.txt").writeUtf8("data");
+        javac(tempDir.resolve("a/src"), tempDir.resolve("a/classes"), "-p", tempDir.resolve("b/classes").toString());
+
+        Pathname aJar = jar(tempDir.resolve("a/classes"), tempDir.resolve("no.ion.a.jar"));
+        Pathname bJar = tempDir.resolve("no.ion.b.jar");
+        if (withModulePackages) {
+            jar(tempDir.resolve("b/classes"), bJar);
+        } else {
+            writeJar(tempDir.resolve("b/classes"), bJar);
+        }
+
+        return List.of(new TreeShaker.Module(descriptorOf(aJar), aJar), new TreeShaker.Module(descriptorOf(bJar), bJar));
+    }
+
+    private static void javac(Pathname sourceDirectory, Pathname classDirectory, String... options) {
+        List<String> arguments = new ArrayList<>(List.of("-d", classDirectory.toString()));
+        arguments.addAll(List.of(options));
+        SourceDirectory.resolveSource(sourceDirectory).forEach(path -> arguments.add(path.toString()));
+        var err = new ByteArrayOutputStream();
+        int exitCode = ToolProvider.getSystemJavaCompiler().run(null, err, err, arguments.toArray(String[]::new));
+        assertEquals(0, exitCode, err.toString());
+    }
+
+    private static Pathname jar(Pathname classDirectory, Pathname jar) {
+        var out = new StringWriter();
+        java.util.spi.ToolProvider jarTool = java.util.spi.ToolProvider.findFirst("jar").orElseThrow();
+        int exitCode = jarTool.run(new PrintWriter(out), new PrintWriter(out), "-c", "-f", jar.toString(), "-C", classDirectory.toString(), ".");
+        assertEquals(0, exitCode, out.toString());
+        return jar;
+    }
+
+    /** Writes the files of the class directory to the JAR, with a manifest, as the jar tool does. */
+    private static void writeJar(Pathname classDirectory, Pathname jar) {
+        try (OutputStream outputStream = Files.newOutputStream(jar.path());
+             var jarOutputStream = new JarOutputStream(outputStream)) {
+            jarOutputStream.putNextEntry(new JarEntry("META-INF/"));
+            jarOutputStream.closeEntry();
+            jarOutputStream.putNextEntry(new JarEntry("META-INF/MANIFEST.MF"));
+            jarOutputStream.write("Manifest-Version: 1.0\r\n\r\n".getBytes());
+            jarOutputStream.closeEntry();
+            classDirectory.visit(true, false, (pathname, attributes) -> {
+                String name = pathname.relative(classDirectory).toString() + (attributes.isDirectory() ? "/" : "");
+                try {
+                    jarOutputStream.putNextEntry(new JarEntry(name));
+                    if (attributes.isFile())
+                        jarOutputStream.write(Files.readAllBytes(pathname.path()));
+                    jarOutputStream.closeEntry();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return Pathname.VisitHint.CONTINUE;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ModuleDescriptor descriptorOf(Pathname jar) {
+        return ModuleFinder.of(jar.path()).findAll().iterator().next().descriptor();
+    }
+
+    private static Set<String> entriesOf(Pathname jar) {
+        try (JarFile jarFile = new JarFile(jar.file(), false)) {
+            var entries = new TreeSet<String>();
+            Collections.list(jarFile.entries()).forEach(entry -> entries.add(entry.getName()));
+            return entries;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
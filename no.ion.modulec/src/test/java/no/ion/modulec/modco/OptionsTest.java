@@ -13,6 +13,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -47,12 +48,19 @@ class OptionsTest {
                                         "-p", "a:b",
                                         "-o", "target",
                                         "-P", "foobin=no.ion.example.Main",
+                                        "--program-layout", "hardlink",
+                                        "--program-cds", " --help  -x ",
                                         "-l", "9",
                                         "-r", "src/main/resources",
                                         "-s", "src/main/java",
                                         "-R", "src/test/resources",
                                         "-t", "src/test/java",
                                         "-t", "src/test/module-info.java",
+                                        "--test-parallelism", "4",
+                                        "--test-shards", "3",
+                                        "-A",
+                                        "--fail-fast",
+                                        "--watch",
                                         "-b",
                                         "-v", "1.2.3",
                                         "-w", "-serial");
@@ -62,11 +70,18 @@ class OptionsTest {
         assertEquals("a:b", params.modulePath().toColonSeparatedString());
         assertEquals(context.pathname("target"), params.out());
         assertEquals(List.of(new ProgramSpec("foobin", "no.ion.example.Main")), params.programs());
+        assertEquals(ProgramLayout.HARDLINK, params.programLayout());
+        assertEquals(Optional.of(List.of("--help", "-x")), params.programCdsTrainingArguments());
         assertEquals(Release.fromFeatureReleaseCounter(9), params.release());;
         assertEquals(List.of(context.pathname("src/main/resources")), params.resourceDirectories());
         assertEquals(List.of(context.pathname("src/main/java")), params.sourceDirectories());
         assertEquals(List.of(context.pathname("src/test/resources")), params.testResourceDirectories());
         assertEquals(List.of(context.pathname("src/test/java"), context.pathname("src/test/module-info.java")), params.testSourceDirectories());
+        assertEquals(4, params.testParallelism());
+        assertEquals(3, params.testShards());
+        assertTrue(params.allTests());
+        assertTrue(params.failFast());
+        assertTrue(options.watch());
         assertTrue(context.showCommands());
         assertTrue(context.showDebug());
         assertEquals(Optional.of(ModuleDescriptor.Version.parse("1.2.3")), params.version());
@@ -91,14 +106,40 @@ class OptionsTest {
         assertEquals(".", params.modulePath().toColonSeparatedString());
         assertEquals(context.pathname("out"), params.out());
         assertEquals(List.of(), params.programs());
+        assertEquals(ProgramLayout.SELF_CONTAINED, params.programLayout());
+        assertEquals(Optional.empty(), params.programCdsTrainingArguments());
         assertEquals(Release.ofJre(), params.release());;
         assertEquals(List.of(context.pathname("src/main/resources")), params.resourceDirectories());
         assertEquals(List.of(context.pathname("src/main/java")), params.sourceDirectories());
         assertEquals(List.of(context.pathname("src/test/resources")), params.testResourceDirectories());
         assertEquals(List.of(context.pathname("src/test/java"), context.pathname("src/test/module-info.java")), params.testSourceDirectories());
+        assertEquals(1, params.testParallelism());
+        assertEquals(1, params.testShards());
+        assertFalse(params.allTests());
+        assertFalse(params.failFast());
+        assertFalse(options.watch());
         assertFalse(context.showCommands());
         assertFalse(context.showDebug());
         assertEquals(Optional.of(ModuleDescriptor.Version.parse("1.2.3")), params.version());
         assertEquals(Optional.of("all"), params.warnings());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testJlinkLayout() {
+        Options options = Options.parse(context,
+                                        "-P", "foobin=no.ion.example.Main",
+                                        "--program-layout", "jlink",
+                                        "--strip-debug",
+                                        "-v", "1.2.3");
+        ModuleCompiler.MakeParams params = options.params();
+        assertEquals(ProgramLayout.JLINK, params.programLayout());
+        assertTrue(params.jlinkStripDebug());
+
+        UserErrorException e = assertThrows(UserErrorException.class, () -> Options.parse(context,
+                                                                                          "-P", "foobin=no.ion.example.Main",
+                                                                                          "--program-layout", "jlink",
+                                                                                          "--program-cds", "",
+                                                                                          "-v", "1.2.3"));
+        assertEquals("--program-cds conflicts with --program-layout jlink", e.getMessage());
+    }
+}
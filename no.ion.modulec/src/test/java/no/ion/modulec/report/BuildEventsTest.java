@@ -0,0 +1,93 @@
+package no.ion.modulec.report;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildEventsTest {
+    private static final Set<String> NAMES = Set.of("no.ion.modulec.Scan", "no.ion.modulec.Javac",
+                                                    "no.ion.modulec.JarPack", "no.ion.modulec.TestRun");
+
+    @Test
+    void makeEmitsEvents(@TempDir Path tempDir) {
+        assertTrue(FlightRecorder.isAvailable());
+        var project = new TestProject(tempDir);
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a { exports no.ion.a; }")
+               .writeClass("package no.ion.a;\npublic class A {\n    private A() {}\n}\n");
+        project.writeTest("a", "no.ion.a", "no.ion.a.ATest", "");
+        ModuleCompiler.MakeParams params = project.makeParamsWithTests("a");
+        Pathname out = project.resolve("a/out");
+        Pathname recordingFile = project.resolve("make.jfr");
+
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            NAMES.forEach(name -> recording.enable(name).withoutThreshold());
+            recording.start();
+
+            try (var moduleCompiler = new ModuleCompiler(project.context())) {
+                // The test class passed in the first make, and is skipped in the second.
+                moduleCompiler.make(params);
+                moduleCompiler.make(params);
+            }
+
+            recording.stop();
+            recording.dump(recordingFile.path());
+            events = RecordingFile.readAllEvents(recordingFile.path());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // The event classes are @Registered(false), and are registered by BuildEvents once Flight Recorder is initialized.
+        Set<String> registered = FlightRecorder.getFlightRecorder()
+                                               .getEventTypes()
+                                               .stream()
+                                               .map(EventType::getName)
+                                               .collect(Collectors.toSet());
+        assertTrue(registered.containsAll(NAMES), registered.toString());
+
+        assertTrue(events.stream().anyMatch(event -> is(event, "no.ion.modulec.Scan", "no.ion.a") &&
+                                                     event.getLong("files") >= 2),
+                   events.toString());
+        // The main compilation of module-info.java and A.java
+        assertTrue(events.stream().anyMatch(event -> is(event, "no.ion.modulec.Javac", "no.ion.a") &&
+                                                     event.getLong("files") == 2),
+                   events.toString());
+        long jarSize = out.resolve("no.ion.a.jar").readAttributes(true).size();
+        assertTrue(events.stream().anyMatch(event -> is(event, "no.ion.modulec.JarPack", "no.ion.a") &&
+                                                     event.getLong("bytes") == jarSize),
+                   events.toString());
+        long testJarSize = out.resolve("test/no.ion.a.jar").readAttributes(true).size();
+        List<RecordedEvent> testRuns = events.stream()
+                                             .filter(event -> is(event, "no.ion.modulec.TestRun", "no.ion.a"))
+                                             .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                                             .toList();
+        assertEquals(2, testRuns.size(), events.toString());
+        assertEquals(1, testRuns.get(0).getLong("files"));
+        assertEquals(testJarSize, testRuns.get(0).getLong("bytes"));
+        assertTrue(testRuns.get(0).getDuration().toNanos() > 0);
+        assertEquals(0, testRuns.get(1).getLong("files"));
+    }
+
+    private static boolean is(RecordedEvent event, String name, String module) {
+        return event.getEventType().getName().equals(name) && module.equals(event.getString("module"));
+    }
+}
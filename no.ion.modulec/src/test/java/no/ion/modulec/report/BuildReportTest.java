@@ -0,0 +1,84 @@
+package no.ion.modulec.report;
+
+import no.ion.modulec.compiler.TestProject;
+import no.ion.modulec.compiler.single.ModuleCompiler;
+import no.ion.modulec.file.Pathname;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildReportTest {
+    private static final Pattern PHASE_NAME = Pattern.compile("^ *\\{\"name\": \"([^\"]+)\"", Pattern.MULTILINE);
+
+    @Test
+    void reportOfMake(@TempDir Path tempDir) {
+        var project = new TestProject(tempDir);
+        project.sources("a")
+               .writeModuleInfoJava("module no.ion.a {}")
+               .writeClass("package no.ion.a;\n/** Blåbærsyltetøy */\nclass A {}\n");
+        Pathname out = project.resolve("a/out");
+
+        try (var moduleCompiler = new ModuleCompiler(project.context())) {
+            moduleCompiler.make(project.makeParams("a"));
+            String report = out.resolve("build-report.json").readUtf8();
+            assertTrue(report.startsWith("{\n  \"module\": \"no.ion.a\",\n"), report);
+            assertEquals(List.of("scan", "javac", "name-resolution", "pack"), phaseNames(report));
+
+            // The JAR is written by jar(1), and only its size is counted.
+            long jarSize = out.resolve("no.ion.a.jar").readAttributes(true).size();
+            assertEquals(jarSize, field(phase(report, "pack"), "bytesWritten"));
+            assertTrue(field(phase(report, "javac"), "wallNanos") > 0, report);
+            assertTrue(field(report, "bytesWritten") >= jarSize, report);
+
+            // No compilation in the second make, where the class directory is checked for being up to date.
+            moduleCompiler.make(project.makeParams("a"));
+            report = out.resolve("build-report.json").readUtf8();
+            assertEquals(List.of("scan", "up-to-date", "name-resolution", "pack"), phaseNames(report));
+            assertTrue(field(phase(report, "scan"), "filesScanned") >= 4, report);
+            assertTrue(field(phase(report, "up-to-date"), "bytesRead") > 0, report);
+        }
+    }
+
+    @Test
+    void utf8BytesAreCounted(@TempDir Path tempDir) {
+        Pathname file = Pathname.of(tempDir).resolve("file");
+        String content = "blåbær";  // 8 bytes in UTF-8
+
+        var report = new BuildReport();
+        report.time("write", () -> file.writeUtf8(content));
+        report.time("read", () -> {
+            assertEquals(content, file.readUtf8());
+            assertEquals(content, file.readUtf8IfExists().orElseThrow());
+        });
+
+        assertEquals(8, report.phases().get(0).counters().bytesWritten());
+        assertEquals(16, report.phases().get(1).counters().bytesRead());
+        assertFalse(Pathname.of(tempDir).resolve("missing").readUtf8IfExists().isPresent());
+    }
+
+    private static List<String> phaseNames(String report) {
+        return PHASE_NAME.matcher(report).results().map(result -> result.group(1)).toList();
+    }
+
+    /** Returns the line of the phase in the report, a JSON object. */
+    private static String phase(String report, String name) {
+        Matcher matcher = Pattern.compile("^ *\\{\"name\": \"" + Pattern.quote(name) + "\".*$", Pattern.MULTILINE).matcher(report);
+        assertTrue(matcher.find(), report);
+        return matcher.group();
+    }
+
+    /** Returns the first integer field with the name in the JSON. */
+    private static long field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + Pattern.quote(name) + "\": (-?[0-9]+)").matcher(json);
+        assertTrue(matcher.find(), json);
+        return Long.parseLong(matcher.group(1));
+    }
+}
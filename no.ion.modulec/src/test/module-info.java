@@ -2,6 +2,8 @@ open module no.ion.modulec {
     exports no.ion.modulec;
 
     requires jdk.compiler;
+    requires jdk.jfr;
+    requires jdk.management;
     requires no.ion.jhms;
 
     requires org.junit.jupiter.api /*@5.9.1*/;